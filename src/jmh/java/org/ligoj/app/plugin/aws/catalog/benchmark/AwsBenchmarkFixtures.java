@@ -0,0 +1,114 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Deterministic synthetic price files for the benchmarks, sized as the production ones. The CSV files repeat the data
+ * rows of the mock server fixtures with distinct SKUs, so the accepted and the filtered rows keep the same ratio.
+ */
+public final class AwsBenchmarkFixtures {
+
+	private AwsBenchmarkFixtures() {
+		// Factory class
+	}
+
+	/**
+	 * Build a CSV price file from a mock server fixture.
+	 *
+	 * @param resource The class path of the fixture CSV file.
+	 * @param rows     The amount of data rows of the built file.
+	 * @return The CSV content.
+	 * @throws IOException When the fixture cannot be read.
+	 */
+	public static byte[] csv(final String resource, final int rows) throws IOException {
+		final var head = new StringBuilder();
+		final var data = new ArrayList<String>();
+		try (var reader = new BufferedReader(new InputStreamReader(
+				AwsBenchmarkFixtures.class.getClassLoader().getResourceAsStream(resource), StandardCharsets.UTF_8))) {
+			var header = false;
+			for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (header) {
+					if (line.indexOf(',') > 0) {
+						data.add(line.substring(line.indexOf(',')));
+					}
+				} else {
+					head.append(line).append('\n');
+					header = line.startsWith("SKU,") || line.startsWith("\"SKU\",");
+				}
+			}
+		}
+		final var csv = new StringBuilder(head);
+		for (var i = 0; i < rows; i++) {
+			csv.append(String.format(Locale.ENGLISH, "SKU%013d", i)).append(data.get(i % data.size())).append('\n');
+		}
+		return csv.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Build a Savings Plan price file. Each product has a single term.
+	 *
+	 * @param products The amount of Savings Plan products.
+	 * @param rates    The amount of rates of each term.
+	 * @return The JSON content.
+	 */
+	public static byte[] savingsPlan(final int products, final int rates) {
+		final var json = new StringBuilder("{\"version\":\"20200220220300\",\"products\":[");
+		for (var p = 0; p < products; p++) {
+			json.append(p == 0 ? "" : ",").append("{\"sku\":\"").append(toSku(p))
+					.append("\",\"productFamily\":\"EC2InstanceSavingsPlans\",\"serviceCode\":\"ComputeSavingsPlans\",")
+					.append("\"usageType\":\"EU-EC2SP:c1.1yrNoUpfront\",\"attributes\":{\"purchaseOption\":")
+					.append("\"No Upfront\",\"purchaseTerm\":\"1yr\",\"location\":\"EU (Ireland)\"}}");
+		}
+		json.append("],\"terms\":{\"savingsPlan\":[");
+		for (var p = 0; p < products; p++) {
+			json.append(p == 0 ? "" : ",").append("{\"sku\":\"").append(toSku(p))
+					.append("\",\"description\":\"1 year No Upfront c1 EC2 Instance Savings Plan in eu-west-1\",")
+					.append("\"leaseContractLength\":{\"duration\":1,\"unit\":\"year\"},\"rates\":[");
+			for (var r = 0; r < rates; r++) {
+				json.append(r == 0 ? "" : ",").append("{\"discountedSku\":\"").append(toSku(r))
+						.append("\",\"discountedServiceCode\":\"").append(r % 4 == 0 ? "AmazonRDS" : "AmazonEC2")
+						.append("\",\"discountedUsageType\":\"EUW1-BoxUsage:c1.medium\",\"rateCode\":\"")
+						.append(toSku(p)).append('.').append(toSku(r))
+						.append("\",\"discountedRate\":{\"price\":\"0.087\",\"currency\":\"USD\"}}");
+			}
+			json.append("]}");
+		}
+		return json.append("]}}").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Build an EC2 spot price file, JSONP wrapped as the published one.
+	 *
+	 * @param regions The amount of regions.
+	 * @param sizes   The amount of instance sizes of each region.
+	 * @return The JSONP content.
+	 */
+	public static byte[] spot(final int regions, final int sizes) {
+		final var json = new StringBuilder("callback({\"vers\":0.01,\"config\":{\"rate\":\"perhr\",")
+				.append("\"valueColumns\":[\"linux\",\"mswin\"],\"currencies\":[\"USD\"],\"regions\":[");
+		for (var r = 0; r < regions; r++) {
+			json.append(r == 0 ? "" : ",").append("{\"region\":\"region-").append(r)
+					.append("\",\"footnotes\":{\"*\":\"notAvailableForCCorCGPU\"},\"instanceTypes\":[{")
+					.append("\"type\":\"generalCurrentGen\",\"sizes\":[");
+			for (var s = 0; s < sizes; s++) {
+				json.append(s == 0 ? "" : ",").append("{\"size\":\"m").append(s / 10).append('.').append(s % 10)
+						.append("xlarge\",\"valueColumns\":[{\"name\":\"linux\",\"prices\":{\"USD\":\"0.0127\"}},")
+						.append("{\"name\":\"mswin\",\"prices\":{\"USD\":\"N/A*\"}}]}");
+			}
+			json.append("]}]}");
+		}
+		return json.append("]}});").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String toSku(final int index) {
+		return String.format(Locale.ENGLISH, "SP%014d", index);
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog.benchmark;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+import org.ligoj.app.plugin.aws.catalog.AbstractAwsCsvForBean;
+import org.ligoj.app.plugin.aws.catalog.efs.CsvForBeanEfs;
+import org.ligoj.app.plugin.aws.catalog.lambda.CsvForBeanLambda;
+import org.ligoj.app.plugin.aws.catalog.s3.CsvForBeanS3;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.CsvForBeanEc2;
+import org.ligoj.app.plugin.aws.catalog.vm.fargate.CsvForBeanFargate;
+import org.ligoj.app.plugin.aws.catalog.vm.rds.CsvForBeanRds;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parse throughput of the CSV price readers. An operation reads a whole price file. The <code>rows</code> and
+ * <code>bytes</code> secondary results are the read rows and bytes per second. With the <code>gc</code> profiler,
+ * <code>gc.alloc.rate.norm</code> is the allocation of a whole file, to divide by the <code>rows</code> parameter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class AwsCsvBenchmark {
+
+	private static final String OFFERS = "mock-server/aws/offers/v1.0/aws/";
+
+	/**
+	 * The parsed service.
+	 */
+	@Param({ "ec2", "rds", "fargate", "lambda", "s3", "efs" })
+	public String service;
+
+	/**
+	 * The amount of data rows of the price file. A regional EC2 file has about 500k rows.
+	 */
+	@Param({ "500000" })
+	public int rows;
+
+	/**
+	 * When <code>true</code>, a single mutable record is reused by the reads.
+	 */
+	@Param({ "false", "true" })
+	public boolean reuse;
+
+	private byte[] csv;
+
+	/**
+	 * The read rows and bytes, reported per second.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+
+		/**
+		 * Read rows, accepted or not.
+		 */
+		public long rows;
+
+		/**
+		 * Read bytes.
+		 */
+		public long bytes;
+
+		/**
+		 * Reset the counters.
+		 */
+		@Setup(Level.Iteration)
+		public void reset() {
+			rows = 0;
+			bytes = 0;
+		}
+	}
+
+	/**
+	 * Build the price file.
+	 *
+	 * @throws IOException When the fixture cannot be read.
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		csv = AwsBenchmarkFixtures.csv(OFFERS + switch (service) {
+		case "ec2" -> "AmazonEC2/current/eu-west-1/index.csv";
+		case "rds" -> "AmazonRDS/current/eu-west-1/index.csv";
+		case "fargate" -> "AmazonECS/current/eu-west-1/index.csv";
+		case "lambda" -> "AWSLambda/current/eu-west-1/index.csv";
+		case "s3" -> "AmazonS3/current/index.csv";
+		case "efs" -> "AmazonEFS/current/index.csv";
+		default -> throw new IllegalArgumentException(service);
+		}, rows);
+	}
+
+	/**
+	 * Read a whole price file.
+	 *
+	 * @param counters The read rows and bytes.
+	 * @param hole     The consumer of the read prices.
+	 * @throws IOException When the CSV content cannot be read.
+	 */
+	@Benchmark
+	public void read(final Counters counters, final Blackhole hole) throws IOException {
+		final var reader = newReader(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(csv))));
+		reader.setReuse(reuse);
+		for (var price = reader.read(); price != null; price = reader.read()) {
+			hole.consume(price);
+		}
+		counters.rows += reader.getRows();
+		counters.bytes += csv.length;
+	}
+
+	private AbstractAwsCsvForBean<?> newReader(final BufferedReader reader) throws IOException {
+		return switch (service) {
+		case "ec2" -> new CsvForBeanEc2(reader);
+		case "rds" -> new CsvForBeanRds(reader);
+		case "fargate" -> new CsvForBeanFargate(reader);
+		case "lambda" -> new CsvForBeanLambda(reader);
+		case "s3" -> new CsvForBeanS3(reader);
+		default -> new CsvForBeanEfs(reader);
+		};
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.ligoj.app.plugin.aws.catalog.AwsPriceMirror;
+import org.ligoj.app.plugin.aws.catalog.AwsRegionPricesReader;
+import org.ligoj.app.plugin.aws.catalog.vm.SavingsPlanInstaller;
+import org.ligoj.app.plugin.aws.catalog.vm.SavingsPlanReader;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanProduct;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanRate;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanTerm;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SpotRegion;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Parse throughput of the JSON price files: the streamed Savings Plan binding, and the region streaming of the spot
+ * prices as done by <code>installJsonPrices</code>. An operation reads a whole price file. The <code>rows</code> and
+ * <code>bytes</code> secondary results are the bound rates or spot sizes, and the read bytes, per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class AwsJsonBenchmark {
+
+	private static final String URL = "https://pricing.us-east-1.amazonaws.com/savingsPlan/index.json";
+
+	/**
+	 * The amount of Savings Plan products, each with a single term.
+	 */
+	@Param({ "2000" })
+	public int products;
+
+	/**
+	 * The amount of rates of each Savings Plan term.
+	 */
+	@Param({ "200" })
+	public int rates;
+
+	/**
+	 * The amount of spot regions.
+	 */
+	@Param({ "30" })
+	public int regions;
+
+	/**
+	 * The amount of spot instance sizes of each region.
+	 */
+	@Param({ "800" })
+	public int sizes;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private byte[] savingsPlan;
+
+	private byte[] spot;
+
+	private AwsPriceMirror mirror;
+
+	/**
+	 * The bound rows and the read bytes, reported per second.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+
+		/**
+		 * Bound rates or spot sizes.
+		 */
+		public long rows;
+
+		/**
+		 * Read bytes.
+		 */
+		public long bytes;
+
+		/**
+		 * Reset the counters.
+		 */
+		@Setup(Level.Iteration)
+		public void reset() {
+			rows = 0;
+			bytes = 0;
+		}
+	}
+
+	/**
+	 * Build the price files.
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		savingsPlan = AwsBenchmarkFixtures.savingsPlan(products, rates);
+		spot = AwsBenchmarkFixtures.spot(regions, sizes);
+		mirror = new AwsPriceMirror() {
+			@Override
+			public InputStream open(final String url) {
+				return new ByteArrayInputStream(savingsPlan);
+			}
+		};
+	}
+
+	/**
+	 * Read a whole Savings Plan price file, accepting all products and the EC2 rates.
+	 *
+	 * @param counters The bound rates and the read bytes.
+	 * @param hole     The consumer of the read terms.
+	 * @throws IOException When the JSON content cannot be read.
+	 */
+	@Benchmark
+	public void savingsPlan(final Counters counters, final Blackhole hole) throws IOException {
+		final var installer = new SavingsPlanInstaller() {
+
+			@Override
+			public String getEndpoint() {
+				return URL;
+			}
+
+			@Override
+			public boolean accept(final SavingsPlanProduct product) {
+				return true;
+			}
+
+			@Override
+			public boolean accept(final SavingsPlanRate rate) {
+				return "AmazonEC2".equals(rate.getDiscountedServiceCode());
+			}
+
+			@Override
+			public void install(final SavingsPlanTerm term) {
+				counters.rows += term.getRates().size();
+				hole.consume(term);
+			}
+
+			@Override
+			public void complete() {
+				// Nothing to complete
+			}
+
+			@Override
+			public void fail(final Exception e) {
+				throw new IllegalStateException(e);
+			}
+		};
+		new SavingsPlanReader(mapper, List.of(installer)).read(URL, mirror);
+		counters.bytes += savingsPlan.length;
+	}
+
+	/**
+	 * Read a whole spot price file, region by region.
+	 *
+	 * @param counters The bound spot sizes and the read bytes.
+	 * @param hole     The consumer of the read regions.
+	 * @throws IOException When the JSON content cannot be read.
+	 */
+	@Benchmark
+	public void spot(final Counters counters, final Blackhole hole) throws IOException {
+		new AwsRegionPricesReader<>(mapper, SpotRegion.class).read(new ByteArrayInputStream(spot), r -> {
+			r.getInstanceTypes().forEach(t -> counters.rows += t.getSizes().size());
+			hole.consume(r);
+		});
+		counters.bytes += spot.length;
+	}
+}
@@ -9,6 +9,7 @@ import java.io.Reader;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.AwsEc2Price;
 import org.ligoj.bootstrap.core.csv.AbstractCsvManager;
@@ -25,6 +26,20 @@ public abstract class AbstractAwsCsvForBean<T> extends AbstractCsvManager {
 
 	private final CsvBeanReader<T> beanReader;
 
+	private final char separator;
+
+	private final Class<T> beanType;
+
+	/**
+	 * The bean property of each column, resolved from the header row.
+	 */
+	private String[] headers;
+
+	/**
+	 * The row filter compiled from the header row.
+	 */
+	private Predicate<AwsCsvTokenizer> filter;
+
 	/**
 	 * Standard CSV Mapping to Java bean property
 	 */
@@ -64,6 +79,9 @@ public abstract class AbstractAwsCsvForBean<T> extends AbstractCsvManager {
 	protected AbstractAwsCsvForBean(final BufferedReader reader, final Map<String, String> mapping,
 			final Class<T> beanType, final char separator) throws IOException {
 
+		this.separator = separator;
+		this.beanType = beanType;
+
 		// Complete the standard mappings
 		final var mMapping = new HashMap<>(HEADERS_MAPPING);
 		mMapping.putAll(mapping);
@@ -79,8 +97,10 @@ public abstract class AbstractAwsCsvForBean<T> extends AbstractCsvManager {
 			}
 			if (isHeaderRow(values)) {
 				// The real CSV header has be reached
-				this.beanReader = newCsvReader(reader,
-						values.stream().map(v -> mMapping.getOrDefault(v, "drop")).toArray(String[]::new), beanType);
+				this.filter = newFilter().compile(values);
+				this.headers = values.stream().map(v -> mMapping.getOrDefault(v, AwsCsvBinder.DROP))
+						.toArray(String[]::new);
+				this.beanReader = newCsvReader(reader, headers, beanType);
 				break;
 			}
 		} while (true);
@@ -97,8 +117,43 @@ public abstract class AbstractAwsCsvForBean<T> extends AbstractCsvManager {
 		return values.getFirst().equals("SKU");
 	}
 
-	protected abstract CsvBeanReader<T> newCsvReader(final Reader reader, final String[] headers,
-			final Class<T> beanType);
+	/**
+	 * Return the row filter definition, compiled against the header row. By default, all rows are accepted.
+	 *
+	 * @return The row filter definition.
+	 */
+	protected AwsCsvFilter newFilter() {
+		return new AwsCsvFilter();
+	}
+
+	/**
+	 * Return the CSV bean reader of the rows following the header row.
+	 *
+	 * @param reader   The CSV input, starting from the first row after the header row.
+	 * @param headers  The bean property of each column.
+	 * @param beanType The target bean type.
+	 * @return The CSV bean reader.
+	 */
+	protected CsvBeanReader<T> newCsvReader(final Reader reader, final String[] headers, final Class<T> beanType) {
+		return new AbstractAwsCsvReader<>(reader, headers, beanType, separator) {
+
+			@Override
+			protected boolean isValidRaw(final AwsCsvTokenizer record) {
+				return filter.test(record);
+			}
+		};
+	}
+
+	/**
+	 * Return a new CSV bean reader of another part of the same CSV content, reusing the resolved header and the row
+	 * filter. The returned reader is independent of this one, and can be used concurrently.
+	 *
+	 * @param reader The CSV input, without header and starting from a record.
+	 * @return The CSV bean reader.
+	 */
+	public CsvBeanReader<T> newReader(final Reader reader) {
+		return newCsvReader(reader, headers, beanType);
+	}
 
 	/**
 	 * Return a list of JPA bean re ad from the given CSV input. Headers are expected.
@@ -110,4 +165,36 @@ public abstract class AbstractAwsCsvForBean<T> extends AbstractCsvManager {
 		return beanReader.read();
 	}
 
+	/**
+	 * Enable or disable the reuse of a single mutable record by the following reads, instead of a new bean for each
+	 * row. The returned record is then only valid until the next read: a record retained longer must be copied with
+	 * {@link AwsCsvBinder#copy(Object)}. The readers returned by {@link #newReader(Reader)} are not affected.
+	 *
+	 * @param reuse When <code>true</code>, the same record is returned by each read.
+	 */
+	public void setReuse(final boolean reuse) {
+		if (beanReader instanceof AbstractAwsCsvReader<T> r) {
+			r.setReuse(reuse);
+		}
+	}
+
+	/**
+	 * Return the amount of rows read by this reader, accepted or not.
+	 *
+	 * @return The amount of read rows.
+	 */
+	public long getRows() {
+		return getRows(beanReader);
+	}
+
+	/**
+	 * Return the amount of rows read by a CSV bean reader, accepted or not.
+	 *
+	 * @param reader The CSV bean reader.
+	 * @return The amount of read rows. <code>0</code> when this reader does not count its rows.
+	 */
+	public static long getRows(final CsvBeanReader<?> reader) {
+		return reader instanceof AbstractAwsCsvReader<?> r ? r.getRows() : 0;
+	}
+
 }
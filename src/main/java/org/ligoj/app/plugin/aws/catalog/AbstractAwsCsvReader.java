@@ -5,14 +5,15 @@ package org.ligoj.app.plugin.aws.catalog;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.util.List;
+import java.io.UncheckedIOException;
 
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.AwsEc2Price;
 import org.ligoj.bootstrap.core.csv.CsvBeanReader;
-import org.ligoj.bootstrap.core.csv.CsvReader;
 
 /**
- * Read CSV reader skipping the useless rows.
+ * Read CSV reader skipping the useless rows. The rows are filtered on the raw CSV content before any value
+ * allocation, and the accepted rows are bound to the target bean by a generated {@link AwsCsvBinder}: only the mapped
+ * columns are read.
  *
  * @param <T> Target bean type.
  */
@@ -21,7 +22,22 @@ public abstract class AbstractAwsCsvReader<T> extends CsvBeanReader<T> {
 	/**
 	 * CSV raw data reader.
 	 */
-	private final CsvReader csvReaderProxy;
+	private final AwsCsvTokenizer tokenizer;
+
+	/**
+	 * The bean binder generated from the header.
+	 */
+	private final AwsCsvBinder<T> binder;
+
+	/**
+	 * Amount of read rows, accepted or not.
+	 */
+	private long rows;
+
+	/**
+	 * The record filled by each read, when reused. <code>null</code> when a new bean is built for each row.
+	 */
+	private T record;
 
 	/**
 	 * Build a CSV reader to build {@link AwsEc2Price} objects.
@@ -47,31 +63,55 @@ public abstract class AbstractAwsCsvReader<T> extends CsvBeanReader<T> {
 		super(reader, beanType, headers);
 
 		// Makes visible this entry
-		this.csvReaderProxy = new CsvReader(reader, separator);
+		this.tokenizer = new AwsCsvTokenizer(reader, separator);
+		this.binder = new AwsCsvBinder<>(beanType, headers);
 	}
 
 	@Override
 	public T read() throws IOException {
-		// Read the raw entries to check the build/skip option
-		do {
-			final var rawValues = csvReaderProxy.read();
-			// Build only for AWS compute instance
-			if (rawValues.isEmpty()) {
-				// EOF
-				return null;
+		try {
+			// Read the raw entries to check the build/skip option
+			while (tokenizer.next()) {
+				rows++;
+				if (isValidRaw(tokenizer)) {
+					return record == null ? binder.bind(tokenizer) : binder.bind(tokenizer, record);
+				}
+				// Skip this entry
 			}
-			if (isValidRaw(rawValues)) {
-				return build(rawValues, null);
-			}
-			// Skip this entry
-		} while (true);
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		// EOF
+		return null;
+	}
+
+	/**
+	 * Enable or disable the reuse of a single mutable record by the following reads, instead of a new bean for each
+	 * row. The returned record is then only valid until the next read: a record retained longer must be copied with
+	 * {@link AwsCsvBinder#copy(Object)}.
+	 *
+	 * @param reuse When <code>true</code>, the same record is returned by each read.
+	 */
+	public void setReuse(final boolean reuse) {
+		this.record = reuse ? binder.newBean() : null;
+	}
+
+	/**
+	 * Return the amount of read rows, accepted or not.
+	 *
+	 * @return The amount of read rows.
+	 */
+	public long getRows() {
+		return rows;
 	}
 
 	/**
-	 * Check the given raw is valid to build an AWS Price. When invalid, the record is dropped.
+	 * Check the given raw is valid to build an AWS Price. When invalid, the record is dropped. The columns are
+	 * delimited on demand, so the filter should check the most selective columns first.
 	 *
-	 * @param rawValues The column of the current record.
+	 * @param record The current record.
 	 * @return <code>true</code> when this record can be used to build a bean.
 	 */
-	protected abstract boolean isValidRaw(final List<String> rawValues);
+	protected abstract boolean isValidRaw(final AwsCsvTokenizer record);
 }
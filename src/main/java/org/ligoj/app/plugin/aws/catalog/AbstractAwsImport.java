@@ -3,23 +3,35 @@
  */
 package org.ligoj.app.plugin.aws.catalog;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.ligoj.app.plugin.prov.ProvResource;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.ligoj.app.plugin.aws.ProvAwsPluginResource;
+import org.ligoj.app.plugin.aws.catalog.vm.SavingsPlanInstaller;
+import org.ligoj.app.plugin.aws.catalog.vm.SavingsPlanReader;
 import org.ligoj.app.plugin.prov.catalog.AbstractImportCatalogResource;
+import org.ligoj.app.plugin.prov.catalog.AbstractUpdateContext;
 import org.ligoj.app.plugin.prov.model.ImportCatalogStatus;
-import org.ligoj.bootstrap.core.curl.CurlProcessor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.regex.Pattern;
 
 /**
  * The provisioning price service for AWS. Manage install or update of prices.
@@ -27,8 +39,67 @@ import java.util.stream.Stream;
 @Slf4j
 public abstract class AbstractAwsImport extends AbstractImportCatalogResource {
 
+	/**
+	 * Configuration key prefix of the last imported version of each service, region and price kind.
+	 */
+	public static final String CONF_VERSION = ProvAwsPluginResource.KEY + ":version";
+
+	/**
+	 * Configuration key of the chunk size in MB of the parallel parsing of the regional CSV price files, decimals
+	 * allowed. When <code>0</code>, the default, the CSV files are parsed sequentially while being downloaded.
+	 */
+	public static final String CONF_CSV_CHUNK = ProvAwsPluginResource.KEY + ":csv-chunk-size";
+
+	/**
+	 * Configuration key enabling the reuse of a single mutable record by the sequential CSV price readers, instead of
+	 * a new bean for each row. When <code>0</code>, the default, a new bean is built for each accepted row.
+	 */
+	public static final String CONF_CSV_REUSE = ProvAwsPluginResource.KEY + ":csv-reuse";
+
+	/**
+	 * Configuration key of the amount of changed prices written by a single JDBC batch.
+	 */
+	public static final String CONF_BATCH_SIZE = ProvAwsPluginResource.KEY + ":batch-size";
+
+	/**
+	 * Default amount of changed prices written by a single JDBC batch.
+	 */
+	private static final int DEFAULT_BATCH_SIZE = 500;
+
+	/**
+	 * Maximal amount of price identifiers of a purge statement.
+	 */
+	private static final int PURGE_CHUNK = 1000;
+
+	/**
+	 * OnDemand/Reserved price kind.
+	 */
+	protected static final String KIND_ON_DEMAND = "OnDemand";
+
+	/**
+	 * Savings Plan price kind.
+	 */
+	protected static final String KIND_SAVINGS_PLAN = "SavingsPlan";
+
+	/**
+	 * Region code used for the services having all regions in a single file.
+	 */
+	protected static final String ALL_REGIONS = "all";
+
 	@Autowired
-	private ProvResource provResource;
+	private AwsRegionExecutor regionExecutor;
+
+	@Autowired
+	protected AwsPriceMirror mirror;
+
+	@Autowired
+	protected AwsImportMetrics metrics;
+
+	@Autowired
+	private PlatformTransactionManager txManager;
+
+	@PersistenceContext
+	protected EntityManager entityManager;
 
 	protected double toInteger(final String value) {
 		 var strNull = StringUtils.trimToNull(value);
@@ -43,14 +114,183 @@ public abstract class AbstractAwsImport extends AbstractImportCatalogResource {
 	}
 
 	/**
-	 * Return a parallel stream if allowed.
+	 * Run a task for each given region on the dedicated regional executor, or sequentially when the parallel import
+	 * is disabled, and wait for their completion.
+	 *
+	 * @param <T>      The region item type.
+	 * @param regions  The region items to process.
+	 * @param toRegion The API region code of an item.
+	 * @param task     The task to run for each region.
+	 */
+	protected <T> void forEachRegion(final Collection<T> regions, final Function<T, String> toRegion,
+			final Consumer<T> task) {
+		regionExecutor.forEach(regions, toRegion, task);
+	}
+
+	/**
+	 * Return the pool parsing the CSV chunks, shared by all regions.
+	 *
+	 * @return The pool parsing the CSV chunks.
+	 */
+	protected ForkJoinPool getChunkParser() {
+		return regionExecutor.getParser();
+	}
+
+	/**
+	 * Return the chunk size of the parallel parsing of the regional CSV price files.
+	 *
+	 * @return The chunk size in bytes. <code>0</code> when the CSV files are parsed sequentially.
+	 */
+	protected long getCsvChunkSize() {
+		return (long) (NumberUtils.toDouble(configuration.get(CONF_CSV_CHUNK), 0) * 1024 * 1024);
+	}
+
+	/**
+	 * Run a phase of the import, timed by the import metrics.
+	 *
+	 * @param service The service, such as <code>ec2</code>.
+	 * @param region  The region name. <code>null</code> for the global prices.
+	 * @param phase   The import phase.
+	 * @param task    The phase to run.
+	 */
+	protected void timed(final String service, final String region, final String phase, final Runnable task) {
+		final var sample = metrics.start();
+		try {
+			task.run();
+		} finally {
+			metrics.stop(sample, service, region, phase);
+		}
+	}
+
+	/**
+	 * Return <code>true</code> when the sequential CSV price readers reuse a single mutable record.
+	 *
+	 * @return <code>true</code> when the CSV records are reused.
+	 */
+	protected boolean isCsvReuse() {
+		return configuration.get(CONF_CSV_REUSE, 0) != 0;
+	}
+
+	/**
+	 * Return a CSV price record to retain beyond the next read: a copy when the records are reused, the given record
+	 * otherwise.
+	 *
+	 * @param csv The current CSV price record.
+	 * @param <C> The CSV price type.
+	 * @return The record to retain.
+	 */
+	protected <C> C snapshot(final C csv) {
+		return isCsvReuse() ? AwsCsvBinder.copy(csv) : csv;
+	}
+
+	/**
+	 * Return a new transaction template, joining the current transaction of the single transaction import, or starting
+	 * a new one in the parallel import.
 	 *
-	 * @param <T>        The stream item type.
-	 * @param collection The collection to stream.
-	 * @return The parallel or sequential stream.
+	 * @return A new transaction template.
 	 */
-	protected <T> Stream<T> newStream(Collection<T> collection) {
-		return provResource.newStream(collection);
+	protected TransactionTemplate newTransaction() {
+		return new TransactionTemplate(txManager);
+	}
+
+	/**
+	 * Return a new bulk writer of the changed prices, bound to the current persistence context.
+	 *
+	 * @return A new bulk writer.
+	 */
+	protected AwsPriceWriter newWriter() {
+		return new AwsPriceWriter(entityManager, newTransaction(),
+				configuration.get(CONF_BATCH_SIZE, DEFAULT_BATCH_SIZE));
+	}
+
+	/**
+	 * Purge the local prices not seen during this import. The stale prices still used by a quote are retained, the
+	 * other ones are deleted by a single statement, without loading them. The deleted prices are removed from the
+	 * local prices, and detached from the persistence context. The purge joins the single transaction import, or runs
+	 * its own transaction in the parallel import.
+	 *
+	 * @param context    The update context holding the seen price codes.
+	 * @param region     The region name, only for log.
+	 * @param locals     The local prices, loaded before this import. Key is the price code.
+	 * @param quoteClass The quote entity type referencing the prices.
+	 * @return The amount of deleted prices.
+	 */
+	protected int purgeStalePrices(final AbstractUpdateContext context, final String region,
+			final AwsLocalPrices<?> locals, final Class<?> quoteClass) {
+		final var stale = locals.rows().filter(p -> p.id() != null && !context.getPrices().contains(p.code()))
+				.toList();
+		if (stale.isEmpty()) {
+			return 0;
+		}
+		final var priceEntity = locals.getEntity();
+		final var quoteEntity = entityManager.getMetamodel().entity(quoteClass).getName();
+		final var ids = stale.stream().map(AwsLocalPrice::id).toList();
+		final var used = new HashSet<Integer>();
+		final var deleted = newTransaction().execute(s -> {
+			final var unused = new HashSet<Integer>();
+			var count = 0;
+			for (var i = 0; i < ids.size(); i += PURGE_CHUNK) {
+				final var chunk = ids.subList(i, Math.min(ids.size(), i + PURGE_CHUNK));
+				used.addAll(entityManager
+						.createQuery("SELECT DISTINCT q.price.id FROM " + quoteEntity + " q WHERE q.price.id IN :ids",
+								Integer.class)
+						.setParameter("ids", chunk).getResultList());
+				final var chunkUnused = chunk.stream().filter(id -> !used.contains(id)).toList();
+				if (!chunkUnused.isEmpty()) {
+					count += entityManager.createQuery("DELETE FROM " + priceEntity + " WHERE id IN :ids")
+							.setParameter("ids", chunkUnused).executeUpdate();
+					unused.addAll(chunkUnused);
+				}
+			}
+			detach(locals.getPriceClass(), unused);
+			return count;
+		});
+		stale.stream().filter(p -> !used.contains(p.id())).forEach(p -> locals.remove(p.code()));
+		log.info("AWS {} purge @{}: {} stale prices, {} deleted, {} retained as used by quotes", priceEntity, region,
+				stale.size(), deleted, used.size());
+		return deleted;
+	}
+
+	/**
+	 * Detach the managed entities deleted by a bulk statement, bypassing the persistence context: they must neither be
+	 * flushed nor returned by a later lookup.
+	 *
+	 * @param entityClass The deleted entity type.
+	 * @param ids         The deleted identifiers.
+	 */
+	private void detach(final Class<?> entityClass, final Set<Integer> ids) {
+		final var persistence = entityManager.unwrap(SessionImplementor.class).getPersistenceContextInternal();
+		for (final var entry : persistence.reentrantSafeEntityEntries()) {
+			if (entityClass.isInstance(entry.getKey()) && ids.contains(entry.getValue().getId())) {
+				entityManager.detach(entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Open a remote price file, through the local mirror when enabled.
+	 *
+	 * @param url The price file URL.
+	 * @return The price file content.
+	 * @throws IOException When the price file cannot be read.
+	 */
+	protected InputStream openStream(final String url) throws IOException {
+		return mirror.open(url);
+	}
+
+	/**
+	 * Return the content of a small remote price file, through the local mirror when enabled.
+	 *
+	 * @param url The price file URL.
+	 * @return The price file content. <code>null</code> when the file cannot be read.
+	 */
+	protected String getText(final String url) {
+		try (var input = openStream(url)) {
+			return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (final IOException ioe) {
+			log.warn("AWS price file {} cannot be read", url, ioe);
+			return null;
+		}
 	}
 
 	/**
@@ -87,40 +327,49 @@ public abstract class AbstractAwsImport extends AbstractImportCatalogResource {
 	}
 
 	/**
-	 * Install AWS prices from a JSON file.
+	 * Install AWS prices from a JSON or JSONP file. The price file is first spooled to a temporary file, so the
+	 * connection is not held by the regional tasks. The regions are then streamed from this file and only the enabled
+	 * ones are bound and installed, one at a time per regional task: the memory does not grow with the amount of
+	 * regions.
 	 *
-	 * @param <R>      The region prices wrapper type.
-	 * @param <J>      The region price type.
+	 * @param <R>         The region prices type.
 	 *
-	 * @param context  The update context.
-	 * @param api      The API name, only for log.
-	 * @param endpoint The prices end-point JSON URL.
-	 * @param apiClass The mapping model from JSON at region level.
-	 * @param mapper   The mapping function from JSON at region level to JPA entity.
+	 * @param context     The update context.
+	 * @param api         The API name, only for log.
+	 * @param endpoint    The prices end-point JSON URL.
+	 * @param regionClass The mapping model from JSON at region level.
+	 * @param mapper      The mapping function from JSON at region level to JPA entity.
 	 * @throws IOException When JSON content cannot be parsed.
 	 */
-	protected <R extends AwsRegionPrices, J extends AwsPrices<R>> void installJsonPrices(final UpdateContext context,
-			final String api, final String endpoint, final Class<J> apiClass, final Consumer<R> mapper)
-			throws IOException {
+	protected <R extends AwsRegionPrices> void installJsonPrices(final UpdateContext context, final String api,
+			final String endpoint, final Class<R> regionClass, final Consumer<R> mapper) throws IOException {
 		log.info("AWS {} prices...", api);
-		try (var curl = new CurlProcessor()) {
-			// Get the remote prices stream
-			final var rawJson = Objects.toString(curl.get(endpoint), "any({\"config\":{\"regions\":[]}});");
-
-			// All regions are considered
-			final var configIndex = rawJson.indexOf('{');
-			final var configCloseIndex = rawJson.lastIndexOf('}');
-			final var prices = objectMapper.readValue(rawJson.substring(configIndex, configCloseIndex + 1), apiClass);
-
-			// Install the enabled regions as needed
-			final var eRegions = prices.getConfig().getRegions().stream()
-					.peek(r -> r.setRegion(context.getMapSpotToNewRegion().getOrDefault(r.getRegion(), r.getRegion())))
-					.filter(r -> isEnabledRegion(context, r)).toList();
-			eRegions.forEach(r -> installRegion(context, r.getRegion()));
-
-			// Install the prices for each region
-			newStream(eRegions).forEach(mapper);
+		final var spool = Files.createTempFile("ligoj-aws-", ".json");
+		try {
+			// Get the remote prices
+			try (var input = openStream(endpoint)) {
+				Files.copy(input, spool, StandardCopyOption.REPLACE_EXISTING);
+			} catch (final IOException ioe) {
+				log.warn("AWS {} prices file {} cannot be read", api, endpoint, ioe);
+				return;
+			}
+
+			// All regions are considered, only the enabled ones are installed
+			final var reader = new AwsRegionPricesReader<>(objectMapper, regionClass);
+			regionExecutor.forEach((Consumer<R> consumer) -> {
+				try (var input = Files.newInputStream(spool)) {
+					reader.read(input, r -> {
+						r.setRegion(context.getMapSpotToNewRegion().getOrDefault(r.getRegion(), r.getRegion()));
+						if (isEnabledRegion(context, r)) {
+							installRegion(context, r.getRegion());
+							consumer.accept(r);
+						}
+					});
+				}
+			}, AwsRegionPrices::getRegion, mapper);
 		} finally {
+			Files.deleteIfExists(spool);
+
 			// Report
 			log.info("AWS {} import finished", api);
 		}
@@ -138,7 +387,7 @@ public abstract class AbstractAwsImport extends AbstractImportCatalogResource {
 	protected Map<String, AwsPriceRegion> getRegionalPrices(final UpdateContext context, final String api,
 			final String serviceCode) throws IOException {
 		return getRegionalSPPrices(context, api, serviceCode, AwsPriceOffer::getCurrentRegionIndexUrl,
-				AwsPriceRegions.class, "OnDemand");
+				AwsPriceRegions.class, KIND_ON_DEMAND);
 	}
 
 	/**
@@ -153,7 +402,7 @@ public abstract class AbstractAwsImport extends AbstractImportCatalogResource {
 	protected Map<String, AwsPriceRegion> getRegionalSPPrices(final UpdateContext context, final String api,
 			final String serviceCode) throws IOException {
 		return getRegionalSPPrices(context, api, serviceCode, AwsPriceOffer::getCurrentSavingsPlanIndexUrl,
-				AwsSPPriceRegions.class, "SavingsPlan");
+				AwsSPPriceRegions.class, KIND_SAVINGS_PLAN);
 	}
 
 	/**
@@ -177,11 +426,117 @@ public abstract class AbstractAwsImport extends AbstractImportCatalogResource {
 		}
 		final var indexUrl = context.getUrl(path);
 		log.info("AWS {} import: download regional {} index >{}", api, classifier, indexUrl);
-		try (var reader2 = new BufferedReader(new InputStreamReader(URI.create(indexUrl).toURL().openStream()))) {
+		try (var reader2 = new BufferedReader(new InputStreamReader(openStream(indexUrl)))) {
 			return objectMapper.readValue(reader2, clazz).getPRegions().entrySet().stream()
 					.filter(e -> isEnabledRegion(context, e.getKey()))
 					.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
 		}
 	}
 
+	/**
+	 * Download and parse a Savings Plan price file once, and route its terms to the installers sharing this file.
+	 * Each installer receives only the terms of its accepted products.
+	 *
+	 * @param endpoint   The Savings Plan price file URL.
+	 * @param installers The installers sharing this price file.
+	 */
+	protected void installSavingsPlan(final String endpoint, final Collection<SavingsPlanInstaller> installers) {
+		try {
+			// Stream the remote prices: the Savings Plan index of some regions weighs hundreds of MB
+			new SavingsPlanReader(objectMapper, installers).read(endpoint, mirror);
+		} catch (final IOException | IllegalArgumentException use) {
+			// Something goes wrong for this file, stop for all related installers
+			installers.forEach(i -> i.fail(use));
+			return;
+		} catch (final RuntimeException re) {
+			// Unexpected failure, the installers release their contexts before the failure is reported
+			installers.forEach(i -> i.fail(re));
+			throw re;
+		}
+		installers.forEach(SavingsPlanInstaller::complete);
+	}
+
+	/**
+	 * Return the configuration key of the last imported version of a service, region and price kind.
+	 *
+	 * @param context     The update context.
+	 * @param serviceCode The AWS service code, like <code>AmazonEC2</code>.
+	 * @param region      The API region code.
+	 * @param kind        The price kind: {@value #KIND_ON_DEMAND} or {@value #KIND_SAVINGS_PLAN}.
+	 * @return The configuration key, scoped by node.
+	 */
+	protected String toVersionKey(final UpdateContext context, final String serviceCode, final String region,
+			final String kind) {
+		return String.join(":", CONF_VERSION, context.getNode().getId(), serviceCode, region, kind);
+	}
+
+	/**
+	 * Return the version of a price file: the versioned URL published by AWS, completed by the filters of this
+	 * service, the monthly hours and the reference datasets such as the CO2 ones. A change of one of these inputs
+	 * invalidates the previous import.
+	 *
+	 * @param context The update context.
+	 * @param url     The relative price file URL, including the AWS publication version.
+	 * @return The version of the price file.
+	 */
+	protected String toVersion(final UpdateContext context, final String url) {
+		return url + ";" + Integer.toHexString(getVersionFilters(context).stream()
+				.map(p -> p == null ? "" : p.pattern()).toList().hashCode()) + ";"
+				+ Long.toHexString(AwsFingerprint.hash(context.getReferenceFingerprint(), context.getHoursMonth()));
+	}
+
+	/**
+	 * Return the filters applied to the prices of this service.
+	 *
+	 * @param context The update context.
+	 * @return The filters applied to the prices of this service. Items may be <code>null</code>.
+	 */
+	protected List<Pattern> getVersionFilters(final UpdateContext context) {
+		return Collections.singletonList(context.getValidRegion());
+	}
+
+	/**
+	 * Indicate the given price file has already been imported. Always <code>false</code> in force mode.
+	 *
+	 * @param context     The update context.
+	 * @param serviceCode The AWS service code, like <code>AmazonEC2</code>.
+	 * @param region      The API region code.
+	 * @param kind        The price kind: {@value #KIND_ON_DEMAND} or {@value #KIND_SAVINGS_PLAN}.
+	 * @param url         The relative price file URL, including the AWS publication version.
+	 * @return <code>true</code> when the same version has been successfully imported by a previous import.
+	 */
+	protected boolean isUnchanged(final UpdateContext context, final String serviceCode, final String region,
+			final String kind, final String url) {
+		return !context.isForce() && toVersion(context, url)
+				.equals(configuration.get(toVersionKey(context, serviceCode, region, kind)));
+	}
+
+	/**
+	 * Record a price file skipped because unchanged since the previous import.
+	 *
+	 * @param context The update context.
+	 * @param api     The API name.
+	 * @param region  The API region code, or {@value #ALL_REGIONS} for the services having all regions in a single
+	 *                file.
+	 */
+	protected void setUnchanged(final UpdateContext context, final String api, final String region) {
+		context.getUnchanged().add(api + "@" + region);
+		metrics.skipped(api, ALL_REGIONS.equals(region) ? null : region);
+	}
+
+	/**
+	 * Record the successfully imported version of a price file. The version is persisted at the end of the whole
+	 * import.
+	 *
+	 * @param context     The update context.
+	 * @param serviceCode The AWS service code, like <code>AmazonEC2</code>.
+	 * @param region      The API region code.
+	 * @param kind        The price kind: {@value #KIND_ON_DEMAND} or {@value #KIND_SAVINGS_PLAN}.
+	 * @param url         The relative price file URL, including the AWS publication version.
+	 */
+	protected void setImported(final UpdateContext context, final String serviceCode, final String region,
+			final String kind, final String url) {
+		context.getVersions().put(toVersionKey(context, serviceCode, region, kind), toVersion(context, url));
+	}
+
 }
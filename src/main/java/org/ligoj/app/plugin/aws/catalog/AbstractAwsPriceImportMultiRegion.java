@@ -5,6 +5,7 @@ package org.ligoj.app.plugin.aws.catalog;
 
 import lombok.extern.slf4j.Slf4j;
 import org.ligoj.app.plugin.prov.catalog.ImportCatalog;
+import org.ligoj.app.plugin.prov.dao.ProvStoragePriceRepository;
 import org.ligoj.app.plugin.prov.model.ProvLocation;
 import org.ligoj.app.plugin.prov.model.ProvStoragePrice;
 import org.ligoj.app.plugin.prov.model.ProvStorageType;
@@ -12,7 +13,6 @@ import org.ligoj.app.plugin.prov.model.ProvStorageType;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.URI;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -24,7 +24,8 @@ public abstract class AbstractAwsPriceImportMultiRegion<C extends AbstractAwsSto
 		extends AbstractAwsImport implements ImportCatalog<UpdateContext> {
 
 	/**
-	 * Install the prices from a single CSV file.
+	 * Install the prices from a single CSV file. The file already imported by a previous import is skipped, unless the
+	 * force mode is enabled.
 	 *
 	 * @param context     The current global catalog context
 	 * @param api         The related API code.
@@ -35,6 +36,14 @@ public abstract class AbstractAwsPriceImportMultiRegion<C extends AbstractAwsSto
 			throws IOException {
 		log.info("AWS {} prices ...", api);
 		nextStep(context, api, null, 0);
+		final var version = context.getOffers().get(serviceCode).getCurrentVersionUrl();
+		if (isUnchanged(context, serviceCode, ALL_REGIONS, KIND_ON_DEMAND, version)) {
+			// Nothing to do for this service
+			log.info("AWS {} prices are unchanged since the previous import, skipped", api);
+			setUnchanged(context, api, ALL_REGIONS);
+			nextStep(context, api + " (unchanged)", null, 1);
+			return;
+		}
 
 		// Retrieve the previous storage prices
 		// See https://github.com/ligoj/plugin-prov-aws/issues/14
@@ -44,11 +53,15 @@ public abstract class AbstractAwsPriceImportMultiRegion<C extends AbstractAwsSto
 		flushAndClear();
 
 		var priceCounter = 0;
+		var rows = 0L;
+		final var sample = metrics.start();
 		// Get the remote prices stream
-		final var url = getCsvUrl(context, context.getOffers().get(serviceCode).getCurrentVersionUrl());
-		try (var reader = new BufferedReader(new InputStreamReader(URI.create(url).toURL().openStream()))) {
+		final var url = getCsvUrl(context, version);
+		final var repository = metrics.counted(spRepository, api, null);
+		try (var reader = new BufferedReader(new InputStreamReader(openStream(url)))) {
 			// Pipe to the CSV reader
 			final var csvReader = newReader(reader);
+			csvReader.setReuse(isCsvReuse());
 
 			// Build the AWS storage prices from the CSV
 			var csv = csvReader.read();
@@ -56,16 +69,20 @@ public abstract class AbstractAwsPriceImportMultiRegion<C extends AbstractAwsSto
 				final var location = getRegionByHumanName(context, csv.getLocation());
 				if (location != null) {
 					// Supported location
-					installPrice(context, api, csv, location);
+					installPrice(context, api, csv, location, repository);
 					priceCounter++;
 				}
 
 				// Read the next one
 				csv = csvReader.read();
 			}
+			rows = csvReader.getRows();
+			setImported(context, serviceCode, ALL_REGIONS, KIND_ON_DEMAND, version);
 		} finally {
 			// Report
 			log.info("AWS {} finished : {} prices", api, priceCounter);
+			metrics.rows(api, null, "prices", rows, priceCounter);
+			metrics.stop(sample, api, null, "prices");
 			nextStep(context, api, null, 1);
 		}
 	}
@@ -87,7 +104,8 @@ public abstract class AbstractAwsPriceImportMultiRegion<C extends AbstractAwsSto
 	 */
 	protected abstract void update(final C csv, final ProvStorageType t);
 
-	private void installPrice(final UpdateContext context, final String api, final C csv, final ProvLocation location) {
+	private void installPrice(final UpdateContext context, final String api, final C csv, final ProvLocation location,
+			final ProvStoragePriceRepository repository) {
 		// Resolve the type
 		final var apis = context.getMapStorageToApi();
 		final var name = apis.getOrDefault(api + "-" + csv.getStorageClass(),
@@ -110,6 +128,6 @@ public abstract class AbstractAwsPriceImportMultiRegion<C extends AbstractAwsSto
 			price.setLocation(location);
 			price.setType(type);
 		}
-		saveAsNeeded(context, price, csv.getPricePerUnit(), spRepository);
+		saveAsNeeded(context, price, csv.getPricePerUnit(), repository);
 	}
 }
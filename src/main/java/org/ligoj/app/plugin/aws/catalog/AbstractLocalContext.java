@@ -5,8 +5,7 @@ package org.ligoj.app.plugin.aws.catalog;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.ligoj.app.plugin.aws.catalog.vm.AbstractAwsVmPrice;
 import org.ligoj.app.plugin.prov.catalog.AbstractUpdateContext;
@@ -14,14 +13,13 @@ import org.ligoj.app.plugin.prov.dao.BaseProvInstanceTypeRepository;
 import org.ligoj.app.plugin.prov.dao.BaseProvQuoteRepository;
 import org.ligoj.app.plugin.prov.dao.BaseProvTermPriceRepository;
 import org.ligoj.app.plugin.prov.dao.ProvInstancePriceTermRepository;
-import org.ligoj.app.plugin.prov.model.AbstractCodedEntity;
 import org.ligoj.app.plugin.prov.model.AbstractInstanceType;
 import org.ligoj.app.plugin.prov.model.AbstractQuoteVm;
-import org.ligoj.app.plugin.prov.model.AbstractTermPrice;
 import org.ligoj.app.plugin.prov.model.AbstractTermPriceVm;
 import org.ligoj.app.plugin.prov.model.ProvInstancePriceTerm;
 import org.ligoj.app.plugin.prov.model.ProvLocation;
 
+import jakarta.persistence.EntityManager;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -47,22 +45,23 @@ public abstract class AbstractLocalContext<T extends AbstractInstanceType, P ext
 	private final Map<String, String> mapStorageToApi;
 
 	/**
-	 * The current partial cost for up-front options.
+	 * The current partial costs of the prices split by usage type, such as the Fargate ones. Key is the usage type.
 	 */
 	@Getter
 	private final Map<String, C> partialCost = new HashMap<>();
 
 	/**
-	 * The previous installed local prices. Key is the code.
+	 * The pairing of the up-front and the hourly rows of the reserved prices, created on demand.
 	 */
 	@Getter
-	private final Map<String, P> locals;
+	@Setter
+	private AwsPartialCostPairer<C> pairer;
 
 	/**
-	 * The previous installed types. Key is the code.
+	 * The previous installed local prices, materialized on demand. Key is the code.
 	 */
 	@Getter
-	private Map<String, T> previousTypes;
+	private final AwsLocalPrices<P> locals;
 
 	@Getter
 	private final BaseProvInstanceTypeRepository<T> tRepository;
@@ -74,18 +73,67 @@ public abstract class AbstractLocalContext<T extends AbstractInstanceType, P ext
 	private final BaseProvQuoteRepository<Q> qRepository;
 
 	/**
-	 * The locally (current transaction) installed types. Key is the database code.
+	 * The installed types of the node, shared by all regions. Key is the code.
 	 */
 	@Getter
 	@Setter
 	protected Map<String, T> localTypes;
 
 	/**
-	 * The previously installed price term's codes.
+	 * The installed price terms of the node, shared by all regions and services. Key is the code.
 	 */
 	@Getter
 	protected final Map<String, ProvInstancePriceTerm> localPriceTerms;
 
+	/**
+	 * The repositories counting the prices they save, created on demand. Key is the original repository.
+	 */
+	@Getter
+	private final Map<Object, Object> counted = new ConcurrentHashMap<>();
+
+	/**
+	 * The bulk writer of the changed prices. Built on demand.
+	 */
+	@Getter
+	@Setter
+	private AwsPriceWriter writer;
+
+	/**
+	 * The expected term name prefixes of the local prices.
+	 */
+	@Getter
+	private final String terms;
+
+	/**
+	 * The fingerprints of the previous import. Key is the price code. Loaded on demand.
+	 */
+	@Getter
+	@Setter
+	private Map<String, AwsFingerprint> previousFingerprints;
+
+	/**
+	 * The fingerprints of the checked prices. Key is the price code. <code>null</code> when the fingerprints are
+	 * disabled or not yet loaded.
+	 */
+	@Getter
+	@Setter
+	private Map<String, Long> fingerprints;
+
+	/**
+	 * Fingerprint of the reference datasets shared by all prices.
+	 *
+	 * @see UpdateContext#getReferenceFingerprint()
+	 */
+	@Getter
+	private final long referenceFingerprint;
+
+	/**
+	 * Amount of prices skipped because unchanged since the previous import.
+	 */
+	@Getter
+	@Setter
+	private int unchanged;
+
 	/**
 	 * Efficient baseline per instance type.
 	 */
@@ -96,35 +144,40 @@ public abstract class AbstractLocalContext<T extends AbstractInstanceType, P ext
 	 * Context from the parent.
 	 *
 	 * @param parent        The parent context.
+	 * @param em            The current persistence context.
 	 * @param ptRepository  The term repository.
 	 * @param tRepository   The type repository.
 	 * @param pRepository   The price repository.
 	 * @param qRepository   The quote repository.
 	 * @param region        The current region.
-	 * @param previousTypes The previous types.
 	 * @param term1         The expected term name prefix alternative 1.
 	 * @param term2         The expected term name prefix alternative 2. May be <code>null</code>.
 	 */
-	protected AbstractLocalContext(final UpdateContext parent, final ProvInstancePriceTermRepository ptRepository,
+	@SuppressWarnings("unchecked")
+	protected AbstractLocalContext(final UpdateContext parent, final EntityManager em,
+			final ProvInstancePriceTermRepository ptRepository,
 			final BaseProvInstanceTypeRepository<T> tRepository, final BaseProvTermPriceRepository<T, P> pRepository,
-			final BaseProvQuoteRepository<Q> qRepository, final ProvLocation region, final Map<String, T> previousTypes,
-			final String term1, final String term2) {
+			final BaseProvQuoteRepository<Q> qRepository, final ProvLocation region, final String term1,
+			final String term2) {
 		super(parent);
 		this.tRepository = tRepository;
 		this.pRepository = pRepository;
 		this.qRepository = qRepository;
 		this.region = region;
-		this.previousTypes = previousTypes;
-		this.localTypes = tRepository.findAllBy("node.id", node.getId()).stream()
-				.collect(Collectors.toMap(AbstractCodedEntity::getCode, Function.identity()));
+
+		// The types and the terms are loaded once per import
+		this.localTypes = parent.getRegistry((Class<T>) newType().getClass(),
+				() -> tRepository.findAllBy("node.id", node.getId()));
+		this.localPriceTerms = parent.getRegistry(ProvInstancePriceTerm.class,
+				() -> ptRepository.findAllBy("node.id", node.getId()));
 
 		final var term2B = term2 == null ? term1 : term2;
-		this.localPriceTerms = ptRepository.findByName(node.getId(), term1, term2B).stream()
-				.collect(Collectors.toMap(ProvInstancePriceTerm::getCode, Function.identity()));
-		this.locals = pRepository.findByLocation(node.getId(), region.getName(), term1, term2B).stream()
-				.collect(Collectors.toMap(AbstractTermPrice::getCode, Function.identity()));
+		this.terms = term1 + "," + term2B;
+		this.locals = new AwsLocalPrices<>(em, (Class<P>) newPrice().getClass(), node.getId(), region.getName(), term1,
+				term2B);
 		this.mapStorageToApi = parent.getMapStorageToApi();
 		this.baselines = parent.getBaselines();
+		this.referenceFingerprint = parent.getReferenceFingerprint();
 	}
 
 	/**
@@ -153,6 +206,13 @@ public abstract class AbstractLocalContext<T extends AbstractInstanceType, P ext
 	 */
 	public abstract T newType();
 
+	/**
+	 * Return the quote type referencing the prices of this context.
+	 *
+	 * @return The quote type.
+	 */
+	public abstract Class<Q> getQuoteClass();
+
 	/**
 	 * Release pointers.
 	 */
@@ -160,7 +220,13 @@ public abstract class AbstractLocalContext<T extends AbstractInstanceType, P ext
 	public void cleanup() {
 		this.locals.clear();
 		this.partialCost.clear();
+		if (this.pairer != null) {
+			this.pairer.clear();
+			this.pairer = null;
+		}
+		this.previousFingerprints = null;
+		this.fingerprints = null;
+		this.unchanged = 0;
 		this.region = null;
-		this.previousTypes = null;
 	}
 }
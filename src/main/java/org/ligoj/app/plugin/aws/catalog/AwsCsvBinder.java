@@ -0,0 +1,413 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ligoj.bootstrap.core.resource.TechnicalException;
+
+/**
+ * CSV record to bean binder, generated once the header row is resolved. The bean properties are set through generated
+ * setters: {@link LambdaMetafactory} functions for the {@link String} and <code>double</code> properties, the latter
+ * being parsed without {@link String} allocation. The unmapped columns are skipped, and the empty values are ignored.
+ * The generated setters are shared by all binders of the same bean type.<br>
+ * A binder can also fill a reused bean: all mapped properties are then set, the empty values being reset to the
+ * property default. A reused bean retained beyond the next row must be copied with {@link #copy(Object)}.<br>
+ * The read/write properties of a bean can be hashed with {@link #hash(long, Object)}, in the property name order.
+ *
+ * @param <T> The target bean type.
+ */
+public class AwsCsvBinder<T> {
+
+	/**
+	 * Unmapped column header.
+	 */
+	public static final String DROP = "drop";
+
+	/**
+	 * A bean property setter from a column of a CSV record.
+	 *
+	 * @param <T> The target bean type.
+	 */
+	@FunctionalInterface
+	private interface Setter<T> {
+
+		/**
+		 * Set the bean property from a column of the current record.
+		 *
+		 * @param bean   The target bean.
+		 * @param record The current record.
+		 * @param column The column index.
+		 */
+		void set(T bean, AwsCsvTokenizer record, int column);
+	}
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	/**
+	 * Generated bean factories.
+	 */
+	private static final ClassValue<Supplier<?>> FACTORIES = new ClassValue<>() {
+		@Override
+		protected Supplier<?> computeValue(final Class<?> type) {
+			return newFactory(type);
+		}
+	};
+
+	/**
+	 * Generated setters of each bean type.
+	 */
+	private static final ClassValue<Map<String, Setter<?>>> SETTERS = new ClassValue<>() {
+		@Override
+		protected Map<String, Setter<?>> computeValue(final Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	/**
+	 * Generated property resets of each bean type.
+	 */
+	private static final ClassValue<Map<String, Consumer<?>>> RESETS = new ClassValue<>() {
+		@Override
+		protected Map<String, Consumer<?>> computeValue(final Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	/**
+	 * A read/write bean property.
+	 *
+	 * @param getter The generic getter.
+	 * @param setter The generic setter.
+	 * @param method The setter method, for the error messages.
+	 */
+	private record Property(MethodHandle getter, MethodHandle setter, Method method) {
+	}
+
+	/**
+	 * Read/write properties of each bean type, in the property name order.
+	 */
+	private static final ClassValue<List<Property>> PROPERTIES = new ClassValue<>() {
+		@Override
+		protected List<Property> computeValue(final Class<?> type) {
+			return newProperties(type);
+		}
+	};
+
+	private final Supplier<T> factory;
+
+	private final int[] columns;
+
+	private final Setter<T>[] setters;
+
+	private final Consumer<T>[] resets;
+
+	/**
+	 * Build a binder.
+	 *
+	 * @param beanType The target bean type.
+	 * @param headers  The bean property of each column, {@value #DROP} for the unmapped columns.
+	 */
+	@SuppressWarnings("unchecked")
+	public AwsCsvBinder(final Class<T> beanType, final String[] headers) {
+		this.factory = (Supplier<T>) FACTORIES.get(beanType);
+		final var mapped = new ArrayList<Integer>();
+		final var mSetters = new ArrayList<Setter<T>>();
+		final var mResets = new ArrayList<Consumer<T>>();
+		for (var i = 0; i < headers.length; i++) {
+			if (!DROP.equals(headers[i])) {
+				mapped.add(i);
+				mSetters.add((Setter<T>) SETTERS.get(beanType).computeIfAbsent(headers[i],
+						p -> newSetter(beanType, p)));
+				mResets.add((Consumer<T>) RESETS.get(beanType).computeIfAbsent(headers[i],
+						p -> newReset(beanType, p)));
+			}
+		}
+		this.columns = mapped.stream().mapToInt(Integer::intValue).toArray();
+		this.setters = mSetters.toArray(Setter[]::new);
+		this.resets = mResets.toArray(Consumer[]::new);
+	}
+
+	/**
+	 * Return a new bean, without property set.
+	 *
+	 * @return The new bean.
+	 */
+	public T newBean() {
+		return factory.get();
+	}
+
+	/**
+	 * Build a new bean from the current record.
+	 *
+	 * @param record The current record.
+	 * @return The new bean.
+	 */
+	public T bind(final AwsCsvTokenizer record) {
+		final var bean = factory.get();
+		for (var i = 0; i < columns.length; i++) {
+			final var column = columns[i];
+			if (!record.isEmpty(column)) {
+				setters[i].set(bean, record, column);
+			}
+		}
+		return bean;
+	}
+
+	/**
+	 * Fill a reused bean from the current record. The properties of the empty values are reset.
+	 *
+	 * @param record The current record.
+	 * @param bean   The reused bean.
+	 * @return The given bean.
+	 */
+	public T bind(final AwsCsvTokenizer record, final T bean) {
+		for (var i = 0; i < columns.length; i++) {
+			final var column = columns[i];
+			if (record.isEmpty(column)) {
+				resets[i].accept(bean);
+			} else {
+				setters[i].set(bean, record, column);
+			}
+		}
+		return bean;
+	}
+
+	/**
+	 * Return a copy of a bean, such as a reused one to retain.
+	 *
+	 * @param bean The bean to copy.
+	 * @param <B>  The bean type.
+	 * @return The new bean, with the same property values.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <B> B copy(final B bean) {
+		final var copy = (B) FACTORIES.get(bean.getClass()).get();
+		for (final var property : PROPERTIES.get(bean.getClass())) {
+			try {
+				property.setter().invokeExact((Object) copy, (Object) property.getter().invokeExact((Object) bean));
+			} catch (final RuntimeException e) {
+				throw e;
+			} catch (final Throwable e) {
+				throw new TechnicalException("Unable to copy the CSV bean property " + property.method(), e);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Combine a hash with the read/write property values of a bean, in the property name order. The order does not
+	 * depend on the JVM, so the hash can be persisted.
+	 *
+	 * @param hash The current hash.
+	 * @param bean The bean to hash.
+	 * @return The combined hash.
+	 * @see AwsFingerprint
+	 */
+	public static long hash(final long hash, final Object bean) {
+		var result = hash;
+		for (final var property : PROPERTIES.get(bean.getClass())) {
+			final Object value;
+			try {
+				value = property.getter().invokeExact((Object) bean);
+			} catch (final RuntimeException e) {
+				throw e;
+			} catch (final Throwable e) {
+				throw new TechnicalException("Unable to read the CSV bean property " + property.method(), e);
+			}
+			if (value instanceof Double d) {
+				result = AwsFingerprint.hash(result, d.doubleValue());
+			} else if (value != null && value.getClass().isArray()) {
+				result = AwsFingerprint.hash(result, Arrays.deepToString(new Object[] { value }));
+			} else {
+				result = AwsFingerprint.hash(result, value == null ? null : value.toString());
+			}
+		}
+		return result;
+	}
+
+	private static Supplier<?> newFactory(final Class<?> type) {
+		try {
+			return (Supplier<?>) LambdaMetafactory
+					.metafactory(LOOKUP, "get", MethodType.methodType(Supplier.class),
+							MethodType.methodType(Object.class),
+							LOOKUP.findConstructor(type, MethodType.methodType(void.class)),
+							MethodType.methodType(type))
+					.getTarget().invoke();
+		} catch (final Throwable e) {
+			throw new TechnicalException("Unable to build the CSV bean factory of " + type.getName(), e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Setter<T> newSetter(final Class<T> type, final String property) {
+		final var method = findSetter(type, property);
+		final var param = method.getParameterTypes()[0];
+		try {
+			final var handle = LOOKUP.unreflect(method);
+			if (param == String.class) {
+				final var setter = (BiConsumer<T, String>) newFunction(BiConsumer.class, "accept", method, handle,
+						Object.class, Object.class);
+				return (b, r, c) -> setter.accept(b, r.get(c));
+			}
+			if (param == double.class) {
+				// Primitive fast path: no String allocation, no boxing
+				final var setter = (ObjDoubleConsumer<T>) newFunction(ObjDoubleConsumer.class, "accept", method,
+						handle, Object.class, double.class);
+				return (b, r, c) -> setter.accept(b, r.getDouble(c));
+			}
+			return newConvertedSetter(method, handle, param);
+		} catch (final TechnicalException e) {
+			throw e;
+		} catch (final Throwable e) {
+			throw new TechnicalException("Unable to build the CSV bean setter " + method, e);
+		}
+	}
+
+	private static Method findSetter(final Class<?> type, final String property) {
+		final var name = "set" + StringUtils.capitalize(property);
+		return Arrays.stream(type.getMethods()).filter(m -> m.getName().equals(name) && m.getParameterCount() == 1)
+				.findFirst().orElseThrow(() -> new TechnicalException(
+						"Unknown CSV bean property " + type.getName() + "#" + property));
+	}
+
+	/**
+	 * Return the function resetting a property to its default value: <code>null</code>, or <code>0</code> for the
+	 * primitive types.
+	 */
+	private static <T> Consumer<T> newReset(final Class<T> type, final String property) {
+		final var method = findSetter(type, property);
+		final var value = Array.get(Array.newInstance(method.getParameterTypes()[0], 1), 0);
+		try {
+			final var generic = LOOKUP.unreflect(method)
+					.asType(MethodType.methodType(void.class, Object.class, Object.class));
+			return b -> {
+				try {
+					generic.invokeExact((Object) b, value);
+				} catch (final RuntimeException e) {
+					throw e;
+				} catch (final Throwable e) {
+					throw new TechnicalException("Unable to reset the CSV bean property " + method, e);
+				}
+			};
+		} catch (final IllegalAccessException e) {
+			throw new TechnicalException("Unable to build the CSV bean reset " + method, e);
+		}
+	}
+
+	/**
+	 * Return the properties having both a getter and a setter, sorted by name.
+	 */
+	private static List<Property> newProperties(final Class<?> type) {
+		final var properties = new TreeMap<String, Property>();
+		for (final var getter : type.getMethods()) {
+			final var name = getter.getName();
+			final var prefix = name.startsWith("get") ? 3 : name.startsWith("is") ? 2 : 0;
+			if (prefix == 0 || getter.getParameterCount() > 0 || getter.getDeclaringClass() == Object.class
+					|| Modifier.isStatic(getter.getModifiers())) {
+				continue;
+			}
+			try {
+				final var setter = type.getMethod("set" + name.substring(prefix), getter.getReturnType());
+				final var get = LOOKUP.unreflect(getter).asType(MethodType.methodType(Object.class, Object.class));
+				final var set = LOOKUP.unreflect(setter)
+						.asType(MethodType.methodType(void.class, Object.class, Object.class));
+				properties.put(name.substring(prefix), new Property(get, set, setter));
+			} catch (final NoSuchMethodException | IllegalAccessException e) {
+				// Read only property, not copied
+			}
+		}
+		return List.copyOf(properties.values());
+	}
+
+	/**
+	 * Return a function instance implemented by the given setter.
+	 */
+	private static Object newFunction(final Class<?> function, final String sam, final Method method,
+			final MethodHandle handle, final Class<?>... samParameters) throws Throwable {
+		return LambdaMetafactory
+				.metafactory(LOOKUP, sam, MethodType.methodType(function),
+						MethodType.methodType(void.class, samParameters), handle,
+						MethodType.methodType(void.class, method.getDeclaringClass(), method.getParameterTypes()[0]))
+				.getTarget().invoke();
+	}
+
+	/**
+	 * Return a setter of the less common property types, converted from the {@link String} value: the other numbers,
+	 * the booleans, the enumerations, and the types having a <code>valueOf(String)</code> factory or a
+	 * {@link String} constructor.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <T> Setter<T> newConvertedSetter(final Method method, final MethodHandle handle,
+			final Class<?> type) {
+		final BiFunction<AwsCsvTokenizer, String, Object> converter;
+		if (type == int.class || type == Integer.class) {
+			converter = (r, v) -> Integer.valueOf(v);
+		} else if (type == long.class || type == Long.class) {
+			converter = (r, v) -> Long.valueOf(v);
+		} else if (type == Double.class) {
+			converter = AwsCsvTokenizer::parseDouble;
+		} else if (type == float.class || type == Float.class) {
+			converter = (r, v) -> (float) r.parseDouble(v);
+		} else if (type == boolean.class || type == Boolean.class) {
+			converter = (r, v) -> Boolean.valueOf(v);
+		} else if (type.isEnum()) {
+			converter = (r, v) -> Enum.valueOf((Class<Enum>) type, v);
+		} else {
+			final var factory = newValueOf(method, type);
+			converter = (r, v) -> {
+				try {
+					return factory.invoke(v);
+				} catch (final RuntimeException e) {
+					throw e;
+				} catch (final Throwable e) {
+					throw new TechnicalException("Unable to convert the CSV bean property " + method, e);
+				}
+			};
+		}
+		final var generic = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+		return (b, r, c) -> {
+			try {
+				generic.invokeExact((Object) b, converter.apply(r, r.get(c)));
+			} catch (final RuntimeException e) {
+				throw e;
+			} catch (final Throwable e) {
+				throw new TechnicalException("Unable to set the CSV bean property " + method, e);
+			}
+		};
+	}
+
+	/**
+	 * Return the <code>valueOf(String)</code> factory of a type, or its {@link String} constructor.
+	 */
+	private static MethodHandle newValueOf(final Method method, final Class<?> type) {
+		try {
+			return LOOKUP.findStatic(type, "valueOf", MethodType.methodType(type, String.class));
+		} catch (final NoSuchMethodException | IllegalAccessException e) {
+			try {
+				return LOOKUP.findConstructor(type, MethodType.methodType(void.class, String.class));
+			} catch (final NoSuchMethodException | IllegalAccessException e2) {
+				throw new TechnicalException("Unsupported CSV bean property type " + method, e2);
+			}
+		}
+	}
+}
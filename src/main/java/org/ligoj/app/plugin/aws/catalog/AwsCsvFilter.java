@@ -0,0 +1,158 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.ligoj.bootstrap.core.resource.TechnicalException;
+
+/**
+ * CSV row filter definition, where each condition targets a column by its header name. The definition is compiled
+ * once the header row is read into column index conditions, evaluated by increasing column index: the row is no more
+ * tokenized after the first failing condition. A row without a filtered column is rejected.
+ */
+public class AwsCsvFilter {
+
+	/**
+	 * A condition on a column value.
+	 */
+	@FunctionalInterface
+	private interface Condition {
+
+		/**
+		 * Evaluate the condition on a column of the current record.
+		 *
+		 * @param record The current record.
+		 * @param column The column index.
+		 * @return <code>true</code> when the condition is verified.
+		 */
+		boolean test(AwsCsvTokenizer record, int column);
+	}
+
+	/**
+	 * A condition with its header name, and its column index once compiled. Without header name, the column index is
+	 * fixed.
+	 */
+	private record HeaderCondition(String header, Condition condition, int column) {
+	}
+
+	private final List<HeaderCondition> conditions = new ArrayList<>();
+
+	private AwsCsvFilter add(final String header, final Condition condition) {
+		conditions.add(new HeaderCondition(header, condition, -1));
+		return this;
+	}
+
+	/**
+	 * Accept the rows where the given column is equal to the given value.
+	 *
+	 * @param header The column header name.
+	 * @param value  The expected value.
+	 * @return This filter.
+	 */
+	public AwsCsvFilter eq(final String header, final String value) {
+		return add(header, (r, c) -> r.equals(c, value));
+	}
+
+	/**
+	 * Accept the rows where the given column exists and is not equal to the given value.
+	 *
+	 * @param header The column header name.
+	 * @param value  The rejected value.
+	 * @return This filter.
+	 */
+	public AwsCsvFilter ne(final String header, final String value) {
+		return add(header, (r, c) -> r.has(c) && !r.equals(c, value));
+	}
+
+	/**
+	 * Accept the rows where the given column is equal to one of the given values.
+	 *
+	 * @param header The column header name.
+	 * @param values The accepted values.
+	 * @return This filter.
+	 */
+	public AwsCsvFilter in(final String header, final Collection<String> values) {
+		return add(header, (r, c) -> r.in(c, values));
+	}
+
+	/**
+	 * Accept the rows where the given column is equal to one of the given values.
+	 *
+	 * @param header The column header name.
+	 * @param values The accepted values.
+	 * @return This filter.
+	 */
+	public AwsCsvFilter in(final String header, final String... values) {
+		return in(header, Set.of(values));
+	}
+
+	/**
+	 * Accept the rows where the given column exists and does not contain the given value.
+	 *
+	 * @param header The column header name.
+	 * @param value  The rejected value part.
+	 * @return This filter.
+	 */
+	public AwsCsvFilter notContains(final String header, final String value) {
+		return add(header, (r, c) -> r.has(c) && !r.contains(c, value));
+	}
+
+	/**
+	 * Accept the rows where the given column exists.
+	 *
+	 * @param header The column header name.
+	 * @return This filter.
+	 */
+	public AwsCsvFilter exists(final String header) {
+		return add(header, AwsCsvTokenizer::has);
+	}
+
+	/**
+	 * Accept the rows having at least the given amount of columns, whatever the header row. Rejects the truncated
+	 * rows.
+	 *
+	 * @param size The minimal amount of columns.
+	 * @return This filter.
+	 */
+	public AwsCsvFilter minSize(final int size) {
+		conditions.add(new HeaderCondition(null, AwsCsvTokenizer::has, size - 1));
+		return this;
+	}
+
+	/**
+	 * Compile this filter against the header row.
+	 *
+	 * @param headers The header row values.
+	 * @return The predicate accepting the rows.
+	 * @throws TechnicalException When a filtered column is not in the header row.
+	 */
+	public Predicate<AwsCsvTokenizer> compile(final List<String> headers) {
+		final var compiled = conditions.stream().map(c -> {
+			if (c.header() == null) {
+				return c;
+			}
+			final var column = headers.indexOf(c.header());
+			if (column == -1) {
+				throw new TechnicalException("Unsupported CSV header, missing filtered column: " + c.header());
+			}
+			return new HeaderCondition(c.header(), c.condition(), column);
+		}).sorted(Comparator.comparingInt(HeaderCondition::column)).toList();
+		final var columns = compiled.stream().mapToInt(HeaderCondition::column).toArray();
+		final var tests = compiled.stream().map(HeaderCondition::condition).toArray(Condition[]::new);
+		return r -> {
+			for (var i = 0; i < columns.length; i++) {
+				if (!tests[i].test(r, columns[i])) {
+					return false;
+				}
+			}
+			return true;
+		};
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV content spooled to a local file, and split into chunks of complete records. The chunk boundaries are found by a
+ * single scan: a chunk ends at the first line break outside a quoted value after the chunk size is reached. Only ASCII
+ * bytes are involved, so the boundaries are safe for the UTF-8 content. The first chunk contains the headers.<br>
+ * The content is either downloaded to a temporary file, deleted when this spool is closed, or an already local file
+ * read through its channel.
+ */
+public class AwsCsvSpool implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Size of the memory-mapped windows of a local file.
+	 */
+	private static final long MAP_SIZE = 256L * 1024L * 1024L;
+
+	private final FileChannel channel;
+
+	/**
+	 * The temporary file to delete. May be <code>null</code>.
+	 */
+	private final Path temporary;
+
+	/**
+	 * The start offset of each chunk, followed by the end offset of the last one.
+	 */
+	private final List<Long> offsets;
+
+	private AwsCsvSpool(final FileChannel channel, final Path temporary, final List<Long> offsets) {
+		this.channel = channel;
+		this.temporary = temporary;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Chunk boundaries scanner.
+	 */
+	private static class Scanner {
+
+		private final List<Long> offsets = new ArrayList<>();
+
+		private final long chunkSize;
+
+		private boolean quoted;
+
+		private long position;
+
+		private long next;
+
+		private Scanner(final long chunkSize) {
+			this.chunkSize = chunkSize;
+			this.next = chunkSize;
+			offsets.add(0L);
+		}
+
+		/**
+		 * Scan the next bytes of the content.
+		 */
+		private void scan(final ByteBuffer buffer) {
+			final var length = buffer.remaining();
+			for (var i = 0; i < length; i++) {
+				final var b = buffer.get();
+				if (b == '"') {
+					quoted = !quoted;
+				} else if (b == '\n' && !quoted && position + i >= next) {
+					// End of record after the chunk size
+					offsets.add(position + i + 1);
+					next = position + i + 1 + chunkSize;
+				}
+			}
+			position += length;
+		}
+
+		/**
+		 * Return the start offset of each chunk, followed by the end offset of the last one.
+		 */
+		private List<Long> complete() {
+			if (offsets.size() > 1 && offsets.getLast() == position) {
+				// No empty last chunk
+				offsets.removeLast();
+			}
+			offsets.add(position);
+			return offsets;
+		}
+	}
+
+	/**
+	 * Spool the given CSV content to a temporary file, and split it into chunks.
+	 *
+	 * @param input     The CSV content. Closed by this method.
+	 * @param chunkSize The minimal size of a chunk, in bytes.
+	 * @return The spooled content.
+	 * @throws IOException When the CSV content cannot be read or spooled.
+	 */
+	public static AwsCsvSpool download(final InputStream input, final long chunkSize) throws IOException {
+		final var file = Files.createTempFile("ligoj-aws-", ".csv");
+		try (input; var output = Files.newOutputStream(file)) {
+			final var scanner = new Scanner(chunkSize);
+			final var buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				scanner.scan(ByteBuffer.wrap(buffer, 0, read));
+				output.write(buffer, 0, read);
+			}
+			output.close();
+			return new AwsCsvSpool(FileChannel.open(file, StandardOpenOption.READ), file, scanner.complete());
+		} catch (final IOException | RuntimeException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+	}
+
+	/**
+	 * Split the given local CSV content into chunks. The content is scanned through memory-mapped windows.
+	 *
+	 * @param channel   The CSV content. Closed with this spool.
+	 * @param chunkSize The minimal size of a chunk, in bytes.
+	 * @return The spooled content.
+	 * @throws IOException When the CSV content cannot be read.
+	 */
+	public static AwsCsvSpool of(final FileChannel channel, final long chunkSize) throws IOException {
+		try {
+			final var scanner = new Scanner(chunkSize);
+			final var size = channel.size();
+			for (var start = 0L; start < size; start += MAP_SIZE) {
+				scanner.scan(channel.map(MapMode.READ_ONLY, start, Math.min(MAP_SIZE, size - start)));
+			}
+			return new AwsCsvSpool(channel, null, scanner.complete());
+		} catch (final IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Return the amount of chunks.
+	 *
+	 * @return The amount of chunks, at least <code>1</code>.
+	 */
+	public int size() {
+		return offsets.size() - 1;
+	}
+
+	/**
+	 * Open a chunk. The content is fully loaded in memory, and can be read concurrently to the other chunks.
+	 *
+	 * @param chunk The chunk index, starting from <code>0</code>.
+	 * @return The chunk reader, starting from a record.
+	 * @throws IOException When the spooled content cannot be read.
+	 */
+	public BufferedReader open(final int chunk) throws IOException {
+		final var start = offsets.get(chunk);
+		final var buffer = ByteBuffer.allocate(Math.toIntExact(offsets.get(chunk + 1) - start));
+		while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) != -1) {
+			// Read until the end of this chunk
+		}
+		return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(buffer.array(), 0, buffer.position())));
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			channel.close();
+		} finally {
+			if (temporary != null) {
+				Files.deleteIfExists(temporary);
+			}
+		}
+	}
+}
@@ -0,0 +1,445 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Lazy CSV tokenizer reading the records of a character stream into a reusable buffer. The columns of the current
+ * record are only delimited on demand, by their position in this buffer: the row filters are evaluated without
+ * allocation, and a {@link String} is only built when a column value is requested.<br>
+ * Quoted values with escaped quotes (<code>""</code>), separators and line breaks are supported. Blank lines are
+ * ignored. A read failure while delimiting the columns is reported as an {@link UncheckedIOException}.<br>
+ * When the separator is not a comma, such as in the <code>;</code> separated CO2 datasets, the comma is also accepted
+ * as a decimal mark by {@link #getDouble(int)}.
+ */
+public class AwsCsvTokenizer {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final int COLUMNS = 128;
+
+	private static final char QUOTE = '"';
+
+	/**
+	 * Maximal amount of digits of a mantissa exactly represented by a <code>double</code>.
+	 */
+	private static final int MAX_EXACT_DIGITS = 15;
+
+	/**
+	 * Powers of ten exactly represented by a <code>double</code>, up to the maximal amount of digits.
+	 */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15 };
+
+	private final Reader reader;
+
+	private final char separator;
+
+	/**
+	 * When <code>true</code>, the comma is accepted as a decimal mark.
+	 */
+	private final boolean decimalComma;
+
+	private char[] buffer = new char[BUFFER_SIZE];
+
+	/**
+	 * End of the valid characters in the buffer.
+	 */
+	private int limit;
+
+	/**
+	 * Current scan position in the buffer.
+	 */
+	private int position;
+
+	/**
+	 * Start position of the current record in the buffer.
+	 */
+	private int recordStart;
+
+	private boolean eof;
+
+	/**
+	 * When <code>true</code>, all columns of the current record are delimited.
+	 */
+	private boolean endOfRecord = true;
+
+	/**
+	 * Amount of delimited columns of the current record.
+	 */
+	private int count;
+
+	private int[] starts = new int[COLUMNS];
+
+	private int[] ends = new int[COLUMNS];
+
+	/**
+	 * When <code>true</code>, the column contains escaped quotes.
+	 */
+	private boolean[] escaped = new boolean[COLUMNS];
+
+	/**
+	 * Build a tokenizer.
+	 *
+	 * @param reader    The CSV input, starting from a record.
+	 * @param separator The CSV separator.
+	 */
+	public AwsCsvTokenizer(final Reader reader, final char separator) {
+		this.reader = reader;
+		this.separator = separator;
+		this.decimalComma = separator != ',';
+	}
+
+	/**
+	 * Move to the next record. The remaining columns of the current record are skipped without being delimited.
+	 *
+	 * @return <code>true</code> when a record is available, <code>false</code> at the end of the stream.
+	 * @throws IOException When the CSV content cannot be read.
+	 */
+	public boolean next() throws IOException {
+		try {
+			skipRecord();
+			// Skip the blank lines
+			var c = peek();
+			while (c == '\r' || c == '\n') {
+				position++;
+				c = peek();
+			}
+			recordStart = position;
+			count = 0;
+			endOfRecord = c == -1;
+			return !endOfRecord;
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Indicate the given column exists in the current record. The columns are delimited up to this one.
+	 *
+	 * @param column The column index, starting from <code>0</code>.
+	 * @return <code>true</code> when the given column exists in the current record.
+	 */
+	public boolean has(final int column) {
+		while (count <= column && !endOfRecord) {
+			delimit();
+		}
+		return column < count;
+	}
+
+	/**
+	 * Return the amount of columns of the current record. All columns are delimited.
+	 *
+	 * @return The amount of columns of the current record.
+	 */
+	public int size() {
+		while (!endOfRecord) {
+			delimit();
+		}
+		return count;
+	}
+
+	/**
+	 * Indicate the given column is empty or does not exist.
+	 *
+	 * @param column The column index, starting from <code>0</code>.
+	 * @return <code>true</code> when the given column is empty or does not exist.
+	 */
+	public boolean isEmpty(final int column) {
+		return !has(column) || starts[column] == ends[column];
+	}
+
+	/**
+	 * Indicate the given column exists and is equal to the given value.
+	 *
+	 * @param column The column index, starting from <code>0</code>.
+	 * @param value  The expected value.
+	 * @return <code>true</code> when the given column exists and is equal to the given value.
+	 */
+	public boolean equals(final int column, final String value) {
+		if (!has(column)) {
+			return false;
+		}
+		if (escaped[column]) {
+			return value.equals(get(column));
+		}
+		final var start = starts[column];
+		final var length = value.length();
+		if (ends[column] - start != length) {
+			return false;
+		}
+		for (var i = 0; i < length; i++) {
+			if (buffer[start + i] != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Indicate the given column exists and is equal to one of the given values.
+	 *
+	 * @param column The column index, starting from <code>0</code>.
+	 * @param values The accepted values.
+	 * @return <code>true</code> when the given column exists and is equal to one of the given values.
+	 */
+	public boolean in(final int column, final Collection<String> values) {
+		for (final var value : values) {
+			if (equals(column, value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Indicate the given column exists and contains the given value.
+	 *
+	 * @param column The column index, starting from <code>0</code>.
+	 * @param value  The value to find.
+	 * @return <code>true</code> when the given column exists and contains the given value.
+	 */
+	public boolean contains(final int column, final String value) {
+		if (!has(column)) {
+			return false;
+		}
+		if (escaped[column]) {
+			return get(column).contains(value);
+		}
+		final var length = value.length();
+		final var last = ends[column] - length;
+		for (var i = starts[column]; i <= last; i++) {
+			var j = 0;
+			while (j < length && buffer[i + j] == value.charAt(j)) {
+				j++;
+			}
+			if (j == length) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return the value of the given column.
+	 *
+	 * @param column The column index, starting from <code>0</code>.
+	 * @return The value of the given column. <code>null</code> when this column does not exist.
+	 */
+	public String get(final int column) {
+		if (!has(column)) {
+			return null;
+		}
+		final var value = new String(buffer, starts[column], ends[column] - starts[column]);
+		return escaped[column] ? value.replace("\"\"", "\"") : value;
+	}
+
+	/**
+	 * Return the <code>double</code> value of the given column. The plain decimal values are parsed from the buffer
+	 * without {@link String} allocation when the result is exact, the other ones are delegated to
+	 * {@link Double#parseDouble(String)}. The comma is accepted as a decimal mark when it is not the separator.
+	 *
+	 * @param column The column index, starting from <code>0</code>.
+	 * @return The <code>double</code> value of the given column.
+	 * @throws NumberFormatException When the value is not a number, or this column does not exist.
+	 */
+	public double getDouble(final int column) {
+		if (!has(column) || escaped[column]) {
+			return parseDouble(get(column));
+		}
+		final var end = ends[column];
+		var i = starts[column];
+		final var negative = i < end && buffer[i] == '-';
+		if (negative) {
+			i++;
+		}
+		var mantissa = 0L;
+		var digits = 0;
+		var decimals = -1;
+		for (; i < end; i++) {
+			final var c = buffer[i];
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + c - '0';
+				digits++;
+				if (decimals >= 0) {
+					decimals++;
+				}
+			} else if ((c == '.' || c == ',' && decimalComma) && decimals == -1) {
+				decimals = 0;
+			} else {
+				digits = Integer.MAX_VALUE;
+				break;
+			}
+		}
+		if (digits == 0 || digits > MAX_EXACT_DIGITS) {
+			// Not a plain decimal value, or not an exact mantissa
+			return parseDouble(get(column));
+		}
+		// Both operands are exact, the division is correctly rounded
+		final var value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parse a <code>double</code> value, accepting the comma as a decimal mark when it is not the separator.
+	 *
+	 * @param value The value to parse.
+	 * @return The <code>double</code> value.
+	 * @throws NumberFormatException When the value is not a number.
+	 */
+	public double parseDouble(final String value) {
+		if (value == null) {
+			throw new NumberFormatException("Missing CSV number");
+		}
+		return Double.parseDouble(decimalComma ? value.replace(',', '.') : value);
+	}
+
+	/**
+	 * Delimit the next column of the current record.
+	 */
+	private void delimit() {
+		if (count == starts.length) {
+			starts = Arrays.copyOf(starts, count * 2);
+			ends = Arrays.copyOf(ends, count * 2);
+			escaped = Arrays.copyOf(escaped, count * 2);
+		}
+		var c = peek();
+		var escape = false;
+		if (c == QUOTE) {
+			// Quoted value, ends with a single quote
+			position++;
+			starts[count] = position;
+			c = peek();
+			while (c != -1) {
+				if (c == QUOTE) {
+					if (peek(position + 1) != QUOTE) {
+						break;
+					}
+					escape = true;
+					position++;
+				}
+				position++;
+				c = peek();
+			}
+			ends[count] = position;
+
+			// Skip the closing quote and the garbage until the end of the column
+			c = peek();
+			while (c != -1 && c != separator && c != '\r' && c != '\n') {
+				position++;
+				c = peek();
+			}
+		} else {
+			starts[count] = position;
+			while (c != -1 && c != separator && c != '\r' && c != '\n') {
+				position++;
+				c = peek();
+			}
+			ends[count] = position;
+		}
+		escaped[count] = escape;
+		count++;
+		endOfRecord(c);
+	}
+
+	/**
+	 * Consume the column terminator and update the end of record flag.
+	 */
+	private void endOfRecord(final int c) {
+		if (c == separator) {
+			position++;
+		} else {
+			endOfRecord = true;
+			if (c == '\r') {
+				position++;
+				if (peek() == '\n') {
+					position++;
+				}
+			} else if (c == '\n') {
+				position++;
+			}
+		}
+	}
+
+	/**
+	 * Skip the remaining columns of the current record without delimiting them.
+	 */
+	private void skipRecord() {
+		if (endOfRecord) {
+			return;
+		}
+		var quoted = false;
+		var c = peek();
+		while (c != -1) {
+			if (c == QUOTE) {
+				quoted = !quoted;
+			} else if (!quoted && (c == '\r' || c == '\n')) {
+				break;
+			}
+			position++;
+			c = peek();
+		}
+		endOfRecord(c);
+	}
+
+	private int peek() {
+		return peek(position);
+	}
+
+	/**
+	 * Return the character at the given position, filling the buffer as needed.
+	 */
+	private int peek(final int index) {
+		var i = index;
+		while (i >= limit) {
+			if (eof) {
+				return -1;
+			}
+			i -= fill();
+		}
+		return buffer[i];
+	}
+
+	/**
+	 * Read more characters. The current record is moved to the start of the buffer, that is enlarged when this record
+	 * fills the whole buffer.
+	 *
+	 * @return The shift applied to the positions in the buffer.
+	 */
+	private int fill() {
+		final var shift = recordStart;
+		if (shift > 0) {
+			System.arraycopy(buffer, shift, buffer, 0, limit - shift);
+			limit -= shift;
+			position -= shift;
+			recordStart = 0;
+			// Including the start of the column being delimited
+			for (var i = 0; i < count; i++) {
+				starts[i] -= shift;
+				ends[i] -= shift;
+			}
+			if (count < starts.length) {
+				starts[count] -= shift;
+			}
+		} else if (limit == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		try {
+			final var read = reader.read(buffer, limit, buffer.length - limit);
+			if (read == -1) {
+				eof = true;
+			} else {
+				limit += read;
+			}
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return shift;
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+/**
+ * Fingerprint of an imported price: a 64-bit FNV-1a hash of the source columns of the price, and the cost written
+ * from these columns. The cost allows to detect a price changed in the database since its fingerprint was saved.
+ *
+ * @param hash The hash of the source columns.
+ * @param cost The cost of the price when its fingerprint was saved.
+ */
+public record AwsFingerprint(long hash, double cost) {
+
+	/**
+	 * Initial hash value.
+	 */
+	public static final long SEED = 0xcbf29ce484222325L;
+
+	private static final long PRIME = 0x100000001b3L;
+
+	/**
+	 * Combine a hash with a string value. A <code>null</code> value is not equivalent to an empty one.
+	 *
+	 * @param hash  The current hash.
+	 * @param value The value to combine.
+	 * @return The combined hash.
+	 */
+	public static long hash(final long hash, final String value) {
+		if (value == null) {
+			return hash(hash, -1L);
+		}
+		var result = hash;
+		for (var i = 0; i < value.length(); i++) {
+			result = (result ^ value.charAt(i)) * PRIME;
+		}
+		// Length as separator of the consecutive values
+		return hash(result, (long) value.length());
+	}
+
+	/**
+	 * Combine a hash with a numeric value.
+	 *
+	 * @param hash  The current hash.
+	 * @param value The value to combine.
+	 * @return The combined hash.
+	 */
+	public static long hash(final long hash, final double value) {
+		return hash(hash, Double.doubleToLongBits(value));
+	}
+
+	/**
+	 * Combine a hash with a long value, such as another hash.
+	 *
+	 * @param hash  The current hash.
+	 * @param value The value to combine.
+	 * @return The combined hash.
+	 */
+	public static long hash(final long hash, final long value) {
+		var result = hash;
+		for (var i = 0; i < Long.BYTES; i++) {
+			result = (result ^ ((value >>> (i * 8)) & 0xff)) * PRIME;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ligoj.app.plugin.aws.ProvAwsPluginResource;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local store of the price fingerprints, one compact file per node, region and price scope. The price entities are
+ * owned by the provisioning plugin, so the fingerprints are kept next to them in this store. A missing or unreadable
+ * file is equivalent to an empty one: the prices are then fully checked.
+ */
+@Slf4j
+@Component
+public class AwsFingerprintStore {
+
+	/**
+	 * Configuration key of the fingerprint directory. When <code>null</code>, the fingerprints are disabled.
+	 */
+	public static final String CONF_FINGERPRINT_PATH = ProvAwsPluginResource.KEY + ":fingerprint-path";
+
+	/**
+	 * File format version.
+	 */
+	private static final int VERSION = 2;
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	/**
+	 * Load the fingerprints of a scope.
+	 *
+	 * @param scope The price scope, such as the node, the region and the terms.
+	 * @return The fingerprints of this scope. Key is the price code. <code>null</code> when the fingerprints are
+	 *         disabled.
+	 */
+	public Map<String, AwsFingerprint> load(final String scope) {
+		final var file = toFile(scope);
+		if (file == null) {
+			return null;
+		}
+		final var fingerprints = new HashMap<String, AwsFingerprint>();
+		if (Files.exists(file)) {
+			try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+				if (input.readInt() == VERSION) {
+					final var size = input.readInt();
+					for (var i = 0; i < size; i++) {
+						fingerprints.put(input.readUTF(), new AwsFingerprint(input.readLong(), input.readDouble()));
+					}
+				}
+			} catch (final IOException e) {
+				log.warn("AWS price fingerprints {} cannot be read, prices are fully checked", file, e);
+				fingerprints.clear();
+			}
+		}
+		return fingerprints;
+	}
+
+	/**
+	 * Save the fingerprints of a scope, replacing the previous ones.
+	 *
+	 * @param scope        The price scope, such as the node, the region and the terms.
+	 * @param fingerprints The fingerprints to save. Key is the price code.
+	 */
+	public void save(final String scope, final Map<String, AwsFingerprint> fingerprints) {
+		final var file = toFile(scope);
+		if (file == null) {
+			return;
+		}
+		try {
+			Files.createDirectories(file.getParent());
+			final var temp = file.resolveSibling(file.getFileName() + ".tmp");
+			try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				output.writeInt(VERSION);
+				output.writeInt(fingerprints.size());
+				for (final var entry : fingerprints.entrySet()) {
+					output.writeUTF(entry.getKey());
+					output.writeLong(entry.getValue().hash());
+					output.writeDouble(entry.getValue().cost());
+				}
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException e) {
+			// The next import fully checks these prices
+			log.warn("AWS price fingerprints {} cannot be saved", file, e);
+		}
+	}
+
+	/**
+	 * Return the fingerprint file of a scope, <code>null</code> when the fingerprints are disabled.
+	 */
+	private Path toFile(final String scope) {
+		final var root = configuration.get(CONF_FINGERPRINT_PATH);
+		if (StringUtils.isBlank(root)) {
+			return null;
+		}
+		return Path.of(root).resolve(scope.replaceAll("[^A-Za-z0-9._-]", "_") + ".fp");
+	}
+}
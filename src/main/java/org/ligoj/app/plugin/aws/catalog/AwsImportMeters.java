@@ -0,0 +1,108 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.ApplicationContext;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer meters of the AWS price import. Only loaded by {@link AwsImportMetrics} when Micrometer is available, so
+ * this is the only class referencing Micrometer.
+ */
+class AwsImportMeters {
+
+	/**
+	 * Region tag value of the global prices.
+	 */
+	private static final String GLOBAL = "global";
+
+	private final MeterRegistry registry;
+
+	/**
+	 * Resolve the meter registry, and bind the download and the regional executor meters.
+	 *
+	 * @param context  The application context, providing the meter registry of the application when available.
+	 * @param fetcher  The price fetcher.
+	 * @param executor The regional executor.
+	 */
+	AwsImportMeters(final ApplicationContext context, final AwsPriceFetcher fetcher, final AwsRegionExecutor executor) {
+		this.registry = context.getBeanProvider(MeterRegistry.class).getIfAvailable(() -> Metrics.globalRegistry);
+		final var prefix = AwsImportMetrics.PREFIX;
+		FunctionCounter.builder(prefix + ".download.bytes", fetcher, AwsPriceFetcher::getBytesReceived)
+				.description("Bytes received over the network").baseUnit("bytes").tag("stage", "received")
+				.register(registry);
+		FunctionCounter.builder(prefix + ".download.bytes", fetcher, AwsPriceFetcher::getBytesRead)
+				.description("Bytes read once decompressed").baseUnit("bytes").tag("stage", "read").register(registry);
+		FunctionCounter.builder(prefix + ".download.requests", fetcher, AwsPriceFetcher::getRequests)
+				.description("Sent download requests").register(registry);
+		Gauge.builder(prefix + ".region.tasks", executor, AwsRegionExecutor::getQueueDepth)
+				.description("Regional tasks").tag("state", "queued").register(registry);
+		Gauge.builder(prefix + ".region.tasks", executor, AwsRegionExecutor::getRunning)
+				.description("Regional tasks").tag("state", "running").register(registry);
+		Gauge.builder(prefix + ".region.tasks", executor, AwsRegionExecutor::getRegionWaiting)
+				.description("Regional tasks").tag("state", "waiting").register(registry);
+	}
+
+	/**
+	 * Return the meter registry: the one of the application when available, the global one otherwise.
+	 *
+	 * @return The meter registry.
+	 */
+	MeterRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Record the duration of a phase.
+	 */
+	void record(final long nanos, final String service, final String region, final String phase) {
+		Timer.builder(AwsImportMetrics.PREFIX + ".import.duration").description("Duration of an import phase")
+				.tags(toTags(service, region, phase)).register(registry).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Increment a counter of the import, tagged by service, region and phase, and by state when not
+	 * <code>null</code>.
+	 */
+	void count(final String name, final String service, final String region, final String phase,
+			final String state, final long amount) {
+		if (amount > 0) {
+			final var tags = toTags(service, region, phase);
+			Counter.builder(AwsImportMetrics.PREFIX + ".import." + name)
+					.tags(state == null ? tags : tags.and("state", state)).register(registry).increment(amount);
+		}
+	}
+
+	/**
+	 * Return a listener counting the bulk writes of a regional context.
+	 */
+	AwsPriceWriter.Listener toListener(final String service, final String region) {
+		final var tags = toTags(service, region, "write");
+		final var flushes = Timer.builder(AwsImportMetrics.PREFIX + ".import.flush")
+				.description("Bulk writes of the prices").tags(tags).register(registry);
+		final var created = Counter.builder(AwsImportMetrics.PREFIX + ".import.prices")
+				.tags(tags.and("state", "created")).register(registry);
+		final var updated = Counter.builder(AwsImportMetrics.PREFIX + ".import.prices")
+				.tags(tags.and("state", "updated")).register(registry);
+		return (inserts, updates, nanos) -> {
+			flushes.record(nanos, TimeUnit.NANOSECONDS);
+			created.increment(inserts);
+			updated.increment(updates);
+		};
+	}
+
+	private Tags toTags(final String service, final String region, final String phase) {
+		return Tags.of("service", service, "region", Objects.toString(region, GLOBAL), "phase", phase);
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+import org.ligoj.app.plugin.prov.model.AbstractPrice;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Metrics of the AWS price import, exposed on the meter registry of the application, or on the global one. The
+ * import meters are tagged by service, region and phase:
+ * <ul>
+ * <li><code>ligoj.prov.aws.import.duration</code>: duration of a phase, such as <code>prices</code>,
+ * <code>savings-plan</code>, <code>spot</code>, <code>scoring</code> or <code>purge</code>.</li>
+ * <li><code>ligoj.prov.aws.import.rows</code>: rows read from the price files, with an additional
+ * <code>state</code> tag: <code>read</code>, <code>accepted</code>, or <code>unpaired</code> for the up-front rows
+ * whose sibling row was not found.</li>
+ * <li><code>ligoj.prov.aws.import.prices</code>: prices written, with an additional <code>state</code> tag:
+ * <code>created</code>, <code>updated</code> or <code>deleted</code>, and <code>unchanged</code> for the prices skipped
+ * by their fingerprint. The prices saved one by one are counted as the bulk written ones.</li>
+ * <li><code>ligoj.prov.aws.import.flush</code>: count and duration of the bulk writes.</li>
+ * <li><code>ligoj.prov.aws.import.files</code>: price files, with a <code>state</code> tag: <code>skipped</code> for
+ * the files unchanged since the previous import.</li>
+ * <li><code>ligoj.prov.aws.import.failures</code>: regional imports failed, reported and skipped without stopping the
+ * import.</li>
+ * </ul>
+ * The download and the regional executor meters are bound once.<br>
+ * Micrometer is optional: without it, the metrics are ignored.
+ */
+@Component
+public class AwsImportMetrics {
+
+	/**
+	 * Prefix of the meter names.
+	 */
+	public static final String PREFIX = "ligoj.prov.aws";
+
+	/**
+	 * When <code>true</code>, Micrometer is available.
+	 */
+	private static final boolean ENABLED = ClassUtils.isPresent("io.micrometer.core.instrument.MeterRegistry",
+			AwsImportMetrics.class.getClassLoader());
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	@Autowired
+	private AwsPriceFetcher fetcher;
+
+	@Autowired
+	private AwsRegionExecutor executor;
+
+	/**
+	 * The meters. <code>null</code> when Micrometer is not available.
+	 */
+	private AwsImportMeters meters;
+
+	/**
+	 * Bind the download and the regional executor meters.
+	 */
+	@PostConstruct
+	public void bind() {
+		if (ENABLED) {
+			meters = new AwsImportMeters(applicationContext, fetcher, executor);
+		}
+	}
+
+	/**
+	 * Return the meters.
+	 *
+	 * @return The meters. <code>null</code> when Micrometer is not available.
+	 */
+	AwsImportMeters getMeters() {
+		return meters;
+	}
+
+	/**
+	 * Start the timing of a phase.
+	 *
+	 * @return The start time, to give to {@link #stop(long, String, String, String)}.
+	 */
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Stop the timing of a phase.
+	 *
+	 * @param start   The start time returned by {@link #start()}.
+	 * @param service The service, such as <code>EC2</code>.
+	 * @param region  The region name. <code>null</code> for the global prices.
+	 * @param phase   The import phase.
+	 */
+	public void stop(final long start, final String service, final String region, final String phase) {
+		record(System.nanoTime() - start, service, region, phase);
+	}
+
+	/**
+	 * Record the duration of a phase, measured by the caller.
+	 *
+	 * @param nanos   The phase duration, in nanoseconds.
+	 * @param service The service, such as <code>EC2</code>.
+	 * @param region  The region name. <code>null</code> for the global prices.
+	 * @param phase   The import phase.
+	 */
+	public void record(final long nanos, final String service, final String region, final String phase) {
+		if (meters != null) {
+			meters.record(nanos, service, region, phase);
+		}
+	}
+
+	/**
+	 * Count the rows of a price file.
+	 *
+	 * @param service  The service, such as <code>EC2</code>.
+	 * @param region   The region name. <code>null</code> for the global prices.
+	 * @param phase    The import phase.
+	 * @param read     The amount of read rows.
+	 * @param accepted The amount of rows accepted by the filters.
+	 */
+	public void rows(final String service, final String region, final String phase, final long read,
+			final long accepted) {
+		count("rows", service, region, phase, "read", read);
+		count("rows", service, region, phase, "accepted", accepted);
+	}
+
+	/**
+	 * Count the up-front rows whose sibling row was not found at the end of a price file.
+	 *
+	 * @param service  The service, such as <code>EC2</code>.
+	 * @param region   The region name. <code>null</code> for the global prices.
+	 * @param unpaired The amount of unpaired rows.
+	 */
+	public void unpaired(final String service, final String region, final long unpaired) {
+		count("rows", service, region, "prices", "unpaired", unpaired);
+	}
+
+	/**
+	 * Count the prices deleted by a purge.
+	 *
+	 * @param service The service, such as <code>EC2</code>.
+	 * @param region  The region name. <code>null</code> for the global prices.
+	 * @param deleted The amount of deleted prices.
+	 */
+	public void deleted(final String service, final String region, final long deleted) {
+		count("prices", service, region, "purge", "deleted", deleted);
+	}
+
+	/**
+	 * Count the prices skipped because unchanged since the previous import.
+	 *
+	 * @param service   The service, such as <code>EC2</code>.
+	 * @param region    The region name. <code>null</code> for the global prices.
+	 * @param unchanged The amount of unchanged prices.
+	 */
+	public void unchanged(final String service, final String region, final long unchanged) {
+		count("prices", service, region, "prices", "unchanged", unchanged);
+	}
+
+	/**
+	 * Count a price file skipped because unchanged since the previous import.
+	 *
+	 * @param service The service, such as <code>EC2</code>.
+	 * @param region  The region name. <code>null</code> for the global prices.
+	 */
+	public void skipped(final String service, final String region) {
+		count("files", service, region, "prices", "skipped", 1);
+	}
+
+	/**
+	 * Count a regional import failure, reported and skipped without stopping the import.
+	 *
+	 * @param service The service, such as <code>EC2</code>.
+	 * @param region  The region name. <code>null</code> for the global prices.
+	 * @param phase   The failed import phase.
+	 */
+	public void failed(final String service, final String region, final String phase) {
+		count("failures", service, region, phase, null, 1);
+	}
+
+	/**
+	 * Return a listener counting the bulk writes of a regional context.
+	 *
+	 * @param service The service, such as <code>EC2</code>.
+	 * @param region  The region name. <code>null</code> for the global prices.
+	 * @return The bulk write listener. <code>null</code> when Micrometer is not available.
+	 */
+	public AwsPriceWriter.Listener toListener(final String service, final String region) {
+		return meters == null ? null : meters.toListener(service, region);
+	}
+
+	/**
+	 * Return a repository counting the prices it saves one by one, as created or updated, such as the bulk writer
+	 * does. The other calls are delegated as is. The proxy is not cached: it is held by the caller for its import.
+	 *
+	 * @param <R>        The repository type.
+	 * @param repository The repository saving the prices.
+	 * @param service    The service, such as <code>EC2</code>.
+	 * @param region     The region name. <code>null</code> for the global prices.
+	 * @return The counting repository. The given one when Micrometer is not available.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> R counted(final R repository, final String service, final String region) {
+		if (meters == null) {
+			return repository;
+		}
+		return (R) Proxy.newProxyInstance(repository.getClass().getClassLoader(),
+				ClassUtils.getAllInterfaces(repository), (proxy, method, args) -> {
+					if (method.getName().startsWith("save") && args != null && args.length == 1
+							&& args[0] instanceof AbstractPrice<?> price) {
+						count("prices", service, region, "write", price.getId() == null ? "created" : "updated", 1);
+					}
+					try {
+						return method.invoke(repository, args);
+					} catch (final InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+	private void count(final String name, final String service, final String region, final String phase,
+			final String state, final long amount) {
+		if (meters != null) {
+			meters.count(name, service, region, phase, state, amount);
+		}
+	}
+}
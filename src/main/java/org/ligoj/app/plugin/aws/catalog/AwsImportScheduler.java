@@ -0,0 +1,113 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+
+import org.ligoj.app.plugin.prov.catalog.ImportCatalog;
+import org.ligoj.bootstrap.core.resource.TechnicalException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service level import scheduler. Each service is declared with the services it depends on, and is started as soon as
+ * they are completed. The independent services run concurrently within a global concurrency budget. A service is not
+ * started when one of its dependencies has failed, and the first failure in the declaration order is reported once
+ * all started services are completed.
+ */
+@Slf4j
+public class AwsImportScheduler {
+
+	/**
+	 * A declared service and its dependencies.
+	 */
+	private record Step(String name, ImportCatalog<UpdateContext> service, List<String> dependencies) {
+	}
+
+	private final Map<String, Step> steps = new LinkedHashMap<>();
+
+	/**
+	 * Declare a service to import.
+	 *
+	 * @param name         The unique service name.
+	 * @param service      The service importer.
+	 * @param dependencies The name of the services to complete before this one. They must be already declared.
+	 * @return This scheduler.
+	 */
+	public AwsImportScheduler add(final String name, final ImportCatalog<UpdateContext> service,
+			final String... dependencies) {
+		Arrays.stream(dependencies).filter(d -> !steps.containsKey(d)).findFirst().ifPresent(d -> {
+			throw new TechnicalException("Unknown dependency " + d + " of import step " + name);
+		});
+		steps.put(name, new Step(name, service, List.of(dependencies)));
+		return this;
+	}
+
+	/**
+	 * Import all declared services. The services are declared after their dependencies, so the sequential import
+	 * follows the declaration order.
+	 *
+	 * @param context     The update context.
+	 * @param concurrency The maximal amount of services imported concurrently. When <code>1</code> or less, the services
+	 *                    are imported sequentially by the current thread.
+	 * @throws IOException When a service failed to read its prices.
+	 */
+	public void run(final UpdateContext context, final int concurrency) throws IOException {
+		if (concurrency <= 1) {
+			for (final var step : steps.values()) {
+				step.service().install(context);
+			}
+			return;
+		}
+
+		log.info("AWS import of {} services with a concurrency of {}", steps.size(), concurrency);
+		try (var executor = Executors.newFixedThreadPool(concurrency)) {
+			final var futures = new LinkedHashMap<String, CompletableFuture<Void>>();
+			steps.values().forEach(step -> {
+				final var dependencies = step.dependencies().stream().map(futures::get)
+						.toArray(CompletableFuture[]::new);
+				futures.put(step.name(), CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+					try {
+						step.service().install(context);
+					} catch (final IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}, executor));
+			});
+
+			// Wait for all services, even after a failure
+			final var failures = new ArrayList<Throwable>();
+			futures.forEach((name, future) -> {
+				try {
+					future.join();
+				} catch (final CompletionException e) {
+					log.info("AWS import of {} is not completed", name);
+					failures.add(e.getCause());
+				}
+			});
+			if (!failures.isEmpty()) {
+				rethrow(failures.getFirst());
+			}
+		}
+	}
+
+	private void rethrow(final Throwable failure) throws IOException {
+		if (failure instanceof UncheckedIOException e) {
+			throw e.getCause();
+		}
+		if (failure instanceof RuntimeException e) {
+			throw e;
+		}
+		throw (Error) failure;
+	}
+}
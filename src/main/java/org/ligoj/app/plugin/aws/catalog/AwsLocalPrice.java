@@ -0,0 +1,17 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+/**
+ * Lightweight projection of a previously installed price, enough to check it without loading the entity.
+ *
+ * @param id       The price identifier.
+ * @param code     The price code.
+ * @param cost     The monthly cost.
+ * @param term     The term code.
+ * @param termName The term name.
+ * @param type     The type code.
+ */
+public record AwsLocalPrice(Integer id, String code, Double cost, String term, String termName, String type) {
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+import org.ligoj.app.plugin.prov.model.AbstractTermPriceVm;
+
+import jakarta.persistence.EntityManager;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The previously installed prices of a regional context. Only a projection of each price is loaded, by a streamed
+ * query. The price entities are materialized on demand, when a price is read to be updated, then kept in this map.
+ * The materialized prices are detached, as the bulk-loaded ones were.<br>
+ * The new prices are put in this map as usual.
+ *
+ * @param <P> The price type.
+ */
+public class AwsLocalPrices<P extends AbstractTermPriceVm<?>> extends AbstractMap<String, P> {
+
+	/**
+	 * Amount of prices materialized by a single query.
+	 */
+	private static final int CHUNK = 1000;
+
+	private final EntityManager em;
+
+	/**
+	 * The price entity type.
+	 */
+	@Getter
+	private final Class<P> priceClass;
+
+	/**
+	 * The price entity name.
+	 */
+	@Getter
+	private final String entity;
+
+	/**
+	 * The projections of the previous prices. Key is the price code.
+	 */
+	private final Map<String, AwsLocalPrice> rows = new HashMap<>();
+
+	/**
+	 * The projections not yet materialized, in the loading order. May contain removed or materialized projections.
+	 */
+	private final Queue<AwsLocalPrice> pending = new ArrayDeque<>();
+
+	/**
+	 * The materialized and the new prices. Key is the price code.
+	 */
+	private final Map<String, P> entities = new HashMap<>();
+
+	/**
+	 * When <code>true</code>, a price is materialized with the next pending ones, by chunks. To enable when most of the
+	 * prices are expected to be read.
+	 */
+	@Setter
+	private boolean prefetch = true;
+
+	/**
+	 * Load the projections of the prices of a region.
+	 *
+	 * @param em         The current persistence context.
+	 * @param priceClass The price entity type.
+	 * @param node       The node identifier.
+	 * @param location   The region name.
+	 * @param term1      The expected term name prefix alternative 1.
+	 * @param term2      The expected term name prefix alternative 2.
+	 */
+	public AwsLocalPrices(final EntityManager em, final Class<P> priceClass, final String node, final String location,
+			final String term1, final String term2) {
+		this.em = em;
+		this.priceClass = priceClass;
+		this.entity = em.getMetamodel().entity(priceClass).getName();
+		try (var stream = em.createQuery("SELECT new " + AwsLocalPrice.class.getName()
+				+ "(p.id, p.code, p.cost, t.code, t.name, y.code) FROM " + entity
+				+ " p INNER JOIN p.term t INNER JOIN p.type y WHERE p.location.node.id = :node"
+				+ " AND p.location.name = :location"
+				+ " AND (t.name LIKE CONCAT(:term1, '%') OR t.name LIKE CONCAT(:term2, '%'))", AwsLocalPrice.class)
+				.setParameter("node", node).setParameter("location", location).setParameter("term1", term1)
+				.setParameter("term2", term2).setHint(HibernateHints.HINT_FETCH_SIZE, CHUNK).getResultStream()) {
+			stream.forEach(r -> {
+				rows.put(r.code(), r);
+				pending.add(r);
+			});
+		}
+	}
+
+	/**
+	 * Return the projections of the prices of this map: the previous ones as loaded, and the new ones.
+	 *
+	 * @return The projections of the prices.
+	 */
+	public Stream<AwsLocalPrice> rows() {
+		return Stream.concat(rows.values().stream(), entities.values().stream()
+				.filter(p -> !rows.containsKey(p.getCode())).map(p -> new AwsLocalPrice(p.getId(), p.getCode(),
+						p.getCost(), p.getTerm().getCode(), p.getTerm().getName(), p.getType().getCode())));
+	}
+
+	/**
+	 * Return the cost of a price without materializing it.
+	 *
+	 * @param code The price code.
+	 * @return The current cost of this price. <code>null</code> when unknown.
+	 */
+	public Double getCost(final String code) {
+		final var price = entities.get(code);
+		if (price == null) {
+			final var row = rows.get(code);
+			return row == null ? null : row.cost();
+		}
+		return price.getCost();
+	}
+
+	/**
+	 * Perform an action for each price, without keeping the ones not yet materialized. The prices not yet materialized
+	 * are loaded by chunks.
+	 *
+	 * @param action The action to perform.
+	 */
+	public void forEachPrice(final Consumer<? super P> action) {
+		entities.values().forEach(action);
+		final var ids = rows.values().stream().filter(r -> !entities.containsKey(r.code())).map(AwsLocalPrice::id)
+				.toList();
+		for (var i = 0; i < ids.size(); i += CHUNK) {
+			load(ids.subList(i, Math.min(ids.size(), i + CHUNK))).forEach(action);
+		}
+	}
+
+	@Override
+	public P get(final Object code) {
+		final var price = entities.get(code);
+		if (price == null) {
+			final var row = rows.get(code);
+			return row == null ? null : materialize(row);
+		}
+		return price;
+	}
+
+	@Override
+	public boolean containsKey(final Object code) {
+		return entities.containsKey(code) || rows.containsKey(code);
+	}
+
+	@Override
+	public P put(final String code, final P price) {
+		return entities.put(code, price);
+	}
+
+	/**
+	 * Remove a price, without materializing it.
+	 *
+	 * @param code The price code.
+	 * @return The materialized price. <code>null</code> when not materialized.
+	 */
+	@Override
+	public P remove(final Object code) {
+		rows.remove(code);
+		return entities.remove(code);
+	}
+
+	@Override
+	public int size() {
+		return rows.size() + (int) entities.keySet().stream().filter(c -> !rows.containsKey(c)).count();
+	}
+
+	@Override
+	public void clear() {
+		rows.clear();
+		pending.clear();
+		entities.clear();
+	}
+
+	/**
+	 * Return the prices, all materialized.
+	 */
+	@Override
+	public Set<Entry<String, P>> entrySet() {
+		final var ids = rows.values().stream().filter(r -> !entities.containsKey(r.code())).map(AwsLocalPrice::id)
+				.toList();
+		for (var i = 0; i < ids.size(); i += CHUNK) {
+			load(ids.subList(i, Math.min(ids.size(), i + CHUNK))).forEach(p -> entities.put(p.getCode(), p));
+		}
+		pending.clear();
+		return entities.entrySet();
+	}
+
+	/**
+	 * Materialize a price, and the next pending ones when the prefetch is enabled.
+	 */
+	private P materialize(final AwsLocalPrice row) {
+		final var ids = new ArrayList<Integer>();
+		ids.add(row.id());
+		while (prefetch && ids.size() < CHUNK && !pending.isEmpty()) {
+			final var next = pending.poll();
+			if (next != row && rows.get(next.code()) == next && !entities.containsKey(next.code())) {
+				ids.add(next.id());
+			}
+		}
+		load(ids).forEach(p -> entities.put(p.getCode(), p));
+		return entities.get(row.code());
+	}
+
+	/**
+	 * Load and detach the prices having the given identifiers, with their references.
+	 */
+	private List<P> load(final List<Integer> ids) {
+		final var prices = em.createQuery("SELECT p FROM " + entity
+				+ " p INNER JOIN FETCH p.type INNER JOIN FETCH p.term INNER JOIN FETCH p.location"
+				+ " LEFT JOIN FETCH p.p1Type WHERE p.id IN :ids", priceClass).setParameter("ids", ids)
+				.getResultList();
+		prices.forEach(em::detach);
+		return prices;
+	}
+}
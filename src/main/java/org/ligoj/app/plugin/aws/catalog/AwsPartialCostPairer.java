@@ -0,0 +1,239 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import lombok.Getter;
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Pairing of the CSV rows of a price split into two rows, such as the up-front and the hourly parts of a reserved
+ * price. The sibling rows are usually adjacent in the price files: the unpaired rows are first kept in a small
+ * look-back window. The rows leaving the window unpaired are spilled to a compact store, keyed by the 64-bit hash of
+ * their code and holding the serialized row, so the memory stays bounded even for the unordered price files.
+ *
+ * @param <C> The CSV price type.
+ */
+public class AwsPartialCostPairer<C> {
+
+	private final ObjectMapper mapper;
+
+	private final Map<String, C> window;
+
+	private final UnaryOperator<C> snapshot;
+
+	private final SpillStore spilled = new SpillStore();
+
+	/**
+	 * The type of the spilled rows.
+	 */
+	private Class<? extends C> type;
+
+	/**
+	 * The amount of rows spilled out of the window.
+	 */
+	@Getter
+	private int spills;
+
+	/**
+	 * Constructor with the window size.
+	 *
+	 * @param mapper The mapper serializing the spilled rows.
+	 * @param size   The maximal amount of unpaired rows kept as is.
+	 */
+	public AwsPartialCostPairer(final ObjectMapper mapper, final int size) {
+		this(mapper, size, UnaryOperator.identity());
+	}
+
+	/**
+	 * Constructor with the window size and the snapshot of the retained rows.
+	 *
+	 * @param mapper   The mapper serializing the spilled rows.
+	 * @param size     The maximal amount of unpaired rows kept as is.
+	 * @param snapshot The immutable copy of a retained row, such as a reused CSV record.
+	 */
+	public AwsPartialCostPairer(final ObjectMapper mapper, final int size, final UnaryOperator<C> snapshot) {
+		this.mapper = mapper;
+		this.snapshot = snapshot;
+		final var capacity = Math.max(1, size);
+		this.window = new LinkedHashMap<>() {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, C> eldest) {
+				if (size() > capacity) {
+					spill(eldest.getKey(), eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Pair a row with its sibling.
+	 *
+	 * @param code The code shared by the sibling rows.
+	 * @param row  The current row.
+	 * @return The sibling row, no more retained by this pairer. <code>null</code> when the sibling has not been read
+	 *         yet: the current row is then retained until its sibling is read.
+	 */
+	public C pair(final String code, final C row) {
+		var sibling = window.remove(code);
+		if (sibling == null && spilled.size > 0) {
+			sibling = unspill(code);
+		}
+		if (sibling == null) {
+			window.put(code, snapshot.apply(row));
+		}
+		return sibling;
+	}
+
+	/**
+	 * Return the amount of retained rows, still waiting for their sibling.
+	 *
+	 * @return The amount of unpaired rows.
+	 */
+	public int getUnpaired() {
+		return window.size() + spilled.size;
+	}
+
+	/**
+	 * Release the retained rows.
+	 */
+	public void clear() {
+		window.clear();
+		spilled.clear();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void spill(final String code, final C row) {
+		type = (Class<? extends C>) row.getClass();
+		final var key = code.getBytes(StandardCharsets.UTF_8);
+		spilled.put(AwsFingerprint.hash(AwsFingerprint.SEED, code),
+				SpillStore.newEntry(key, mapper.writeValueAsBytes(row)));
+		spills++;
+	}
+
+	private C unspill(final String code) {
+		final var key = code.getBytes(StandardCharsets.UTF_8);
+		final var entry = spilled.remove(AwsFingerprint.hash(AwsFingerprint.SEED, code), key);
+		if (entry == null) {
+			return null;
+		}
+		return mapper.readValue(entry, 2 + key.length, entry.length - 2 - key.length, type);
+	}
+
+	/**
+	 * Open addressing hash table of byte records with a primitive key, without boxing nor entry object. A record
+	 * starts with its code, checked on lookup since distinct codes may share the same key.
+	 */
+	static class SpillStore {
+
+		private long[] keys = new long[16];
+
+		private byte[][] entries = new byte[16][];
+
+		private int size;
+
+		/**
+		 * Return a new record: the code, then the value.
+		 *
+		 * @param code  The code of the record.
+		 * @param value The value of the record.
+		 * @return The new record.
+		 */
+		static byte[] newEntry(final byte[] code, final byte[] value) {
+			final var entry = new byte[2 + code.length + value.length];
+			entry[0] = (byte) (code.length >>> 8);
+			entry[1] = (byte) code.length;
+			System.arraycopy(code, 0, entry, 2, code.length);
+			System.arraycopy(value, 0, entry, 2 + code.length, value.length);
+			return entry;
+		}
+
+		/**
+		 * Return the amount of records.
+		 *
+		 * @return The amount of records.
+		 */
+		int size() {
+			return size;
+		}
+
+		private int slot(final long key) {
+			final var hash = key ^ key >>> 32;
+			return (int) (hash ^ hash >>> 16) & (keys.length - 1);
+		}
+
+		void put(final long key, final byte[] entry) {
+			if ((size + 1) * 2 > keys.length) {
+				resize();
+			}
+			var i = slot(key);
+			while (entries[i] != null) {
+				i = (i + 1) & (keys.length - 1);
+			}
+			keys[i] = key;
+			entries[i] = entry;
+			size++;
+		}
+
+		byte[] remove(final long key, final byte[] code) {
+			for (var i = slot(key); entries[i] != null; i = (i + 1) & (keys.length - 1)) {
+				if (keys[i] == key && isCode(entries[i], code)) {
+					final var entry = entries[i];
+					delete(i);
+					return entry;
+				}
+			}
+			return null;
+		}
+
+		private boolean isCode(final byte[] entry, final byte[] code) {
+			return ((entry[0] & 0xff) << 8 | entry[1] & 0xff) == code.length
+					&& Arrays.equals(entry, 2, 2 + code.length, code, 0, code.length);
+		}
+
+		/**
+		 * Free a slot, moving back the following colliding entries so the probe sequences stay unbroken.
+		 */
+		private void delete(final int slot) {
+			final var mask = keys.length - 1;
+			var hole = slot;
+			for (var i = (slot + 1) & mask; entries[i] != null; i = (i + 1) & mask) {
+				final var home = slot(keys[i]);
+				if (i > hole ? home <= hole || home > i : home <= hole && home > i) {
+					keys[hole] = keys[i];
+					entries[hole] = entries[i];
+					hole = i;
+				}
+			}
+			entries[hole] = null;
+			size--;
+		}
+
+		private void resize() {
+			final var oldKeys = keys;
+			final var oldEntries = entries;
+			keys = new long[oldKeys.length * 2];
+			entries = new byte[oldKeys.length * 2][];
+			size = 0;
+			for (var i = 0; i < oldKeys.length; i++) {
+				if (oldEntries[i] != null) {
+					put(oldKeys[i], oldEntries[i]);
+				}
+			}
+		}
+
+		void clear() {
+			keys = new long[16];
+			entries = new byte[16][];
+			size = 0;
+		}
+	}
+}
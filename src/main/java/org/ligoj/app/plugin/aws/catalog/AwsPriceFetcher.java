@@ -0,0 +1,389 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.ligoj.app.plugin.aws.ProvAwsPluginResource;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * HTTP transport of the price files, based on a shared {@link HttpClient}: the connections are reused across the
+ * regions and the services, and multiplexed with HTTP/2 over TLS. The gzip transfer encoding is negotiated, and the
+ * concurrent requests to the same host are bounded. A request holds its host permit until its content is closed.<br>
+ * The reading of the content fails when no bytes are received during the body timeout while the consumer is waiting
+ * for them, so a stalled connection does not block a regional import forever.
+ */
+@Slf4j
+@Component
+public class AwsPriceFetcher implements AwsPriceMirror.Transport {
+
+	/**
+	 * Configuration key of the maximal amount of concurrent requests to the same host.
+	 */
+	public static final String CONF_HOST_PARALLELISM = ProvAwsPluginResource.KEY + ":fetch-host-parallelism";
+
+	/**
+	 * Configuration key of the connection timeout, in seconds.
+	 */
+	public static final String CONF_CONNECT_TIMEOUT = ProvAwsPluginResource.KEY + ":fetch-connect-timeout";
+
+	/**
+	 * Configuration key of the response timeout, in seconds: the maximal duration until the response headers are
+	 * received.
+	 */
+	public static final String CONF_READ_TIMEOUT = ProvAwsPluginResource.KEY + ":fetch-read-timeout";
+
+	/**
+	 * Configuration key of the body timeout, in seconds: the maximal duration without receiving bytes while the
+	 * content is read.
+	 */
+	public static final String CONF_BODY_TIMEOUT = ProvAwsPluginResource.KEY + ":fetch-body-timeout";
+
+	private static final int DEFAULT_HOST_PARALLELISM = 8;
+
+	private static final int DEFAULT_CONNECT_TIMEOUT = 20;
+
+	private static final int DEFAULT_READ_TIMEOUT = 120;
+
+	private static final int DEFAULT_BODY_TIMEOUT = 60;
+
+	private static final String GZIP = "gzip";
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	/**
+	 * Semaphore of each host.
+	 */
+	private final Map<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+	/**
+	 * Bytes received over the network, compressed or not.
+	 */
+	private final AtomicLong bytesReceived = new AtomicLong();
+
+	/**
+	 * Bytes read by the consumers, once decompressed.
+	 */
+	private final AtomicLong bytesRead = new AtomicLong();
+
+	/**
+	 * Amount of sent requests.
+	 */
+	private final AtomicLong requests = new AtomicLong();
+
+	/**
+	 * Checks the body timeout of the responses being read.
+	 */
+	private final ScheduledExecutorService watchdog = Executors
+			.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("aws-fetch-watchdog").factory());
+
+	private HttpClient client;
+
+	private int clientTimeout;
+
+	@Override
+	public AwsPriceMirror.Response get(final URI uri, final String etag, final String lastModified)
+			throws IOException {
+		final var request = HttpRequest.newBuilder(uri).GET().header("Accept-Encoding", GZIP)
+				.timeout(Duration.ofSeconds(configuration.get(CONF_READ_TIMEOUT, DEFAULT_READ_TIMEOUT)));
+		if (etag != null) {
+			request.header("If-None-Match", etag);
+		}
+		if (lastModified != null) {
+			request.header("If-Modified-Since", lastModified);
+		}
+		if (!"https".equals(uri.getScheme())) {
+			// No HTTP/2 upgrade attempt on clear connections
+			request.version(HttpClient.Version.HTTP_1_1);
+		}
+
+		final var permits = configuration.get(CONF_HOST_PARALLELISM, DEFAULT_HOST_PARALLELISM);
+		final var semaphore = hosts.computeIfAbsent(Objects.toString(uri.getAuthority(), ""),
+				h -> new Semaphore(permits));
+		try {
+			semaphore.acquire();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + uri);
+		}
+		final HttpResponse<InputStream> response;
+		try {
+			requests.incrementAndGet();
+			final var timeout = configuration.get(CONF_BODY_TIMEOUT, DEFAULT_BODY_TIMEOUT);
+			response = getClient().send(request.build(), i -> new TimeoutSubscriber(uri, timeout, watchdog));
+		} catch (final InterruptedException e) {
+			semaphore.release();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while fetching " + uri);
+		} catch (final IOException | RuntimeException e) {
+			semaphore.release();
+			throw e;
+		}
+
+		// The received content owns the permit, released once when closed
+		final var received = new CountingInputStream(response.body(), bytesReceived, semaphore);
+		final var headers = response.headers();
+		if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+			received.close();
+			return new AwsPriceMirror.Response(response.statusCode(), null, null, -1, null);
+		}
+		final var gzip = headers.firstValue("Content-Encoding").filter(GZIP::equalsIgnoreCase).isPresent();
+		InputStream body = received;
+		if (gzip) {
+			// The decoded length is unknown, the gzip trailer checks the integrity
+			try {
+				body = new GZIPInputStream(received, 64 * 1024);
+			} catch (final IOException | RuntimeException e) {
+				// Invalid gzip header
+				received.close();
+				throw e;
+			}
+		}
+		return new AwsPriceMirror.Response(HttpURLConnection.HTTP_OK, headers.firstValue("ETag").orElse(null),
+				headers.firstValue("Last-Modified").orElse(null),
+				gzip ? -1 : headers.firstValueAsLong("Content-Length").orElse(-1),
+				new CountingInputStream(body, bytesRead, null));
+	}
+
+	/**
+	 * Return the shared HTTP client, built again when the connection timeout has changed.
+	 */
+	private synchronized HttpClient getClient() {
+		final var timeout = configuration.get(CONF_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT);
+		if (client == null || timeout != clientTimeout) {
+			final var builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2)
+					.followRedirects(HttpClient.Redirect.NORMAL).connectTimeout(Duration.ofSeconds(timeout));
+			final var proxy = ProxySelector.getDefault();
+			if (proxy != null) {
+				builder.proxy(proxy);
+			}
+			client = builder.build();
+			clientTimeout = timeout;
+		}
+		return client;
+	}
+
+	/**
+	 * Return the bytes received over the network, compressed or not.
+	 *
+	 * @return The bytes received over the network.
+	 */
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	/**
+	 * Return the bytes read by the consumers, once decompressed.
+	 *
+	 * @return The bytes read by the consumers.
+	 */
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	/**
+	 * Return the amount of sent requests.
+	 *
+	 * @return The amount of sent requests.
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Stop the body timeout checks.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		watchdog.shutdownNow();
+	}
+
+	/**
+	 * Body subscriber streaming the content, and failing it when no bytes are received during the body timeout while
+	 * the consumer has requested some. A slow consumer does not trigger the timeout.
+	 */
+	private static class TimeoutSubscriber implements HttpResponse.BodySubscriber<InputStream> {
+
+		private final HttpResponse.BodySubscriber<InputStream> delegate = HttpResponse.BodySubscribers.ofInputStream();
+
+		private final URI uri;
+
+		private final int timeout;
+
+		private final ScheduledExecutorService watchdog;
+
+		/**
+		 * Amount of requested items not received yet.
+		 */
+		private final AtomicLong pending = new AtomicLong();
+
+		/**
+		 * Time of the last request or received item.
+		 */
+		private volatile long last = System.nanoTime();
+
+		private Flow.Subscription subscription;
+
+		private ScheduledFuture<?> check;
+
+		private boolean done;
+
+		private TimeoutSubscriber(final URI uri, final int timeout, final ScheduledExecutorService watchdog) {
+			this.uri = uri;
+			this.timeout = timeout;
+			this.watchdog = watchdog;
+		}
+
+		@Override
+		public CompletionStage<InputStream> getBody() {
+			return delegate.getBody();
+		}
+
+		@Override
+		public void onSubscribe(final Flow.Subscription subscription) {
+			this.subscription = subscription;
+			synchronized (this) {
+				check = watchdog.scheduleWithFixedDelay(this::check, timeout, timeout, TimeUnit.SECONDS);
+			}
+			delegate.onSubscribe(new Flow.Subscription() {
+				@Override
+				public void request(final long n) {
+					last = System.nanoTime();
+					pending.addAndGet(n);
+					subscription.request(n);
+				}
+
+				@Override
+				public void cancel() {
+					stop();
+					subscription.cancel();
+				}
+			});
+		}
+
+		@Override
+		public void onNext(final List<ByteBuffer> item) {
+			last = System.nanoTime();
+			pending.decrementAndGet();
+			delegate.onNext(item);
+		}
+
+		@Override
+		public void onError(final Throwable throwable) {
+			if (stop()) {
+				delegate.onError(throwable);
+			}
+		}
+
+		@Override
+		public void onComplete() {
+			if (stop()) {
+				delegate.onComplete();
+			}
+		}
+
+		/**
+		 * Stop the timeout checks.
+		 *
+		 * @return <code>true</code> when the subscription was not already completed.
+		 */
+		private synchronized boolean stop() {
+			if (done) {
+				return false;
+			}
+			done = true;
+			if (check != null) {
+				check.cancel(false);
+			}
+			return true;
+		}
+
+		private void check() {
+			if (pending.get() > 0 && System.nanoTime() - last >= TimeUnit.SECONDS.toNanos(timeout) && stop()) {
+				log.warn("AWS price file {}, no content received during {}s", uri, timeout);
+				delegate.onError(
+						new HttpTimeoutException("No content received from " + uri + " during " + timeout + "s"));
+				subscription.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Input stream counting the read bytes, and releasing a host permit once closed.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		private final AtomicLong counter;
+
+		private Semaphore semaphore;
+
+		private CountingInputStream(final InputStream input, final AtomicLong counter, final Semaphore semaphore) {
+			super(input);
+			this.counter = counter;
+			this.semaphore = semaphore;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final var b = super.read();
+			if (b != -1) {
+				counter.incrementAndGet();
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			final var read = super.read(b, off, len);
+			if (read > 0) {
+				counter.addAndGet(read);
+			}
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (semaphore != null) {
+					semaphore.release();
+					semaphore = null;
+				}
+			}
+		}
+	}
+}
@@ -4,16 +4,19 @@
 package org.ligoj.app.plugin.aws.catalog;
 
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 import org.ligoj.app.plugin.aws.ProvAwsPluginResource;
 import org.ligoj.app.plugin.aws.catalog.efs.AwsPriceImportEfs;
 import org.ligoj.app.plugin.aws.catalog.lambda.AwsPriceImportLambda;
 import org.ligoj.app.plugin.aws.catalog.s3.AwsPriceImportS3;
 import org.ligoj.app.plugin.aws.catalog.suppport.AwsPriceImportSupport;
+import org.ligoj.app.plugin.aws.catalog.vm.AwsPriceImportSavingsPlan;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.AwsPriceImportEc2;
 import org.ligoj.app.plugin.aws.catalog.vm.fargate.AwsPriceImportFargate;
 import org.ligoj.app.plugin.aws.catalog.vm.rds.AwsPriceImportRds;
 import org.ligoj.app.plugin.prov.ProvResource;
 import org.ligoj.app.plugin.prov.catalog.AbstractImportCatalogResource;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -21,14 +24,26 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.TreeSet;
 
 /**
  * The provisioning price service for AWS. Manage installation or update of prices.
  */
 @Component
 @Setter
+@Slf4j
 public class AwsPriceImport extends AbstractImportCatalogResource {
 
+	/**
+	 * Configuration key of the maximal amount of services imported concurrently. Only used by the parallel import.
+	 */
+	public static final String CONF_CONCURRENCY = ProvAwsPluginResource.KEY + ":import-concurrency";
+
+	/**
+	 * Default maximal amount of services imported concurrently.
+	 */
+	private static final int DEFAULT_CONCURRENCY = 4;
+
 	@Autowired
 	private AwsPriceImportBase base;
 
@@ -50,6 +65,9 @@ public class AwsPriceImport extends AbstractImportCatalogResource {
 	@Autowired
 	private AwsPriceImportLambda lambda;
 
+	@Autowired
+	private AwsPriceImportSavingsPlan savingsPlan;
+
 	@Autowired
 	private AwsPriceImportSupport support;
 
@@ -62,7 +80,11 @@ public class AwsPriceImport extends AbstractImportCatalogResource {
 	 * inside a single transaction: prices are accumulated in the persistence context and flushed by chunks with JDBC
 	 * batching instead of one transaction per price. With the (default) parallel import, the worker threads run their
 	 * own transactions and would not see the uncommitted entities of an enclosing one: each save keeps its own
-	 * transaction as before.
+	 * transaction as before.<br>
+	 * The independent services are imported concurrently by the parallel import, within the
+	 * <code>service:prov:aws:import-concurrency</code> budget.<br>
+	 * Without force mode, the regional price files already imported by a previous import are skipped: the AWS
+	 * publication version of each imported file is persisted per node at the end of the import.
 	 *
 	 * @param force When <code>true</code>, all cost attributes are update.
 	 * @throws IOException        When CSV or XML files cannot be read.
@@ -88,15 +110,41 @@ public class AwsPriceImport extends AbstractImportCatalogResource {
 
 	private void installInternal(final boolean force) throws IOException {
 		final var context = initContext(new UpdateContext(), ProvAwsPluginResource.KEY, force);
+		newScheduler().run(context, getConcurrency(configuration));
 
-		base.install(context);
-		lambda.install(context);
-		s3.install(context);
-		ec2.install(context);
-		rds.install(context);
-		efs.install(context);
-		fargate.install(context);
-		support.install(context);
+		// Remember the imported versions for the next import
+		context.getVersions().forEach(configuration::put);
+		if (!context.getUnchanged().isEmpty()) {
+			log.info("AWS import skipped {} unchanged price files: {}", context.getUnchanged().size(),
+					new TreeSet<>(context.getUnchanged()));
+		}
 		context.cleanup();
 	}
+
+	/**
+	 * Return the scheduler of the service imports.
+	 *
+	 * @return The scheduler of the service imports.
+	 */
+	AwsImportScheduler newScheduler() {
+		// Everything depends on the regions and the storage types of the base import
+		return new AwsImportScheduler().add("base", base).add("lambda", lambda, "base").add("s3", s3, "base")
+				.add("ec2", ec2, "base").add("rds", rds, "base").add("efs", efs, "base")
+				.add("fargate", fargate, "base")
+				// Compute Savings Plan prices of EC2, Fargate and Lambda, sharing the same price files
+				.add("savingsPlan", savingsPlan, "ec2", "fargate", "lambda").add("support", support, "base");
+	}
+
+	/**
+	 * Return the maximal amount of services imported concurrently. The single transaction import is sequential.
+	 *
+	 * @param configuration The configuration resource.
+	 * @return The maximal amount of services imported concurrently.
+	 */
+	static int getConcurrency(final ConfigurationResource configuration) {
+		if (configuration.get(ProvResource.USE_PARALLEL, 1) == 0) {
+			return 1;
+		}
+		return configuration.get(CONF_CONCURRENCY, DEFAULT_CONCURRENCY);
+	}
 }
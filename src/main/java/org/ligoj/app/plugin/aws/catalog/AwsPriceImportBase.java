@@ -10,22 +10,20 @@ import org.ligoj.app.plugin.prov.catalog.Co2Data;
 import org.ligoj.app.plugin.prov.catalog.Co2RegionData;
 import org.ligoj.app.plugin.prov.catalog.ImportCatalog;
 import org.ligoj.app.plugin.prov.model.AbstractCodedEntity;
+import org.ligoj.app.plugin.prov.model.ProvInstancePriceTerm;
 import org.ligoj.app.plugin.prov.model.ProvLocation;
 import org.ligoj.app.plugin.prov.model.ProvStorageType;
 import org.ligoj.bootstrap.core.INamableBean;
-import org.ligoj.bootstrap.core.csv.CsvBeanReader;
 import org.springframework.stereotype.Component;
 import tools.jackson.core.type.TypeReference;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.Reader;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -127,15 +125,19 @@ public class AwsPriceImportBase extends AbstractAwsImport implements ImportCatal
 				.filter(r -> isEnabledRegion(context, r))
 				.collect(Collectors.toMap(INamableBean::getName, Function.identity())));
 
-		// The previously installed storage types cache. Key is the storage name
+		// The previously installed storage types cache, shared by the services and the regions. Key is the storage name
 		context.setStorageTypes(stRepository.findAllBy(BY_NODE, context.getNode()).stream()
-				.collect(Collectors.toMap(AbstractCodedEntity::getCode, Function.identity())));
+				.collect(Collectors.toConcurrentMap(AbstractCodedEntity::getCode, Function.identity())));
+
+		// The previously installed price terms, shared by the services and the regions. Key is the term code
+		context.getRegistry(ProvInstancePriceTerm.class, () -> iptRepository.findAllBy(BY_NODE, context.getNode()));
 		installStorageTypes(context);
 		context.getMapSpotToNewRegion().putAll(toMap("spot-to-new-region.json", MAP_STR));
 		loadBaseIndex(context);
 
 		// Get CO2 dataset
 		fetchCo2Data(context);
+		context.setReferenceFingerprint(toReferenceFingerprint(context));
 
 		nextStep(context, "region");
 	}
@@ -148,6 +150,23 @@ public class AwsPriceImportBase extends AbstractAwsImport implements ImportCatal
 		context.getCo2DataSet().values().forEach(Co2Data::compute);
 	}
 
+	/**
+	 * Return the fingerprint of the reference datasets shared by all prices: the CO2 datasets and the baselines.
+	 */
+	private long toReferenceFingerprint(final UpdateContext context) {
+		var hash = AwsFingerprint.SEED;
+		for (final var co2 : new TreeMap<>(context.getCo2DataSet()).values()) {
+			hash = AwsCsvBinder.hash(hash, co2);
+		}
+		for (final var co2 : new TreeMap<>(context.getCo2RegionDataSet()).values()) {
+			hash = AwsCsvBinder.hash(hash, co2);
+		}
+		for (final var baseline : new TreeMap<>(context.getBaselines()).entrySet()) {
+			hash = AwsFingerprint.hash(AwsFingerprint.hash(hash, baseline.getKey()), baseline.getValue());
+		}
+		return hash;
+	}
+
 	private <X> void fetchCo2DataGeneric(final String type, final String cUrl, final Map<String, X> co2DataSet,
 			final Map<String, String> headersMapping, final Function<X, String> keyProvider, Class<X> clazz) {
 		final var endpoint = configuration.get(cUrl);
@@ -158,22 +177,10 @@ public class AwsPriceImportBase extends AbstractAwsImport implements ImportCatal
 		}
 
 		// Get the remote CO2 stream
-		try (var reader = new BufferedReader(new InputStreamReader(new URI(endpoint).toURL().openStream()))) {
+		try (var reader = new BufferedReader(new InputStreamReader(openStream(endpoint)))) {
 			// Pipe to the CSV reader
 			final var csvReader = new AbstractAwsCsvForBean<>(reader, headersMapping, clazz, ';') {
 
-				@Override
-				protected CsvBeanReader<X> newCsvReader(final Reader reader, final String[] headers,
-						final Class<X> beanType) {
-					return new AbstractAwsCsvReader<>(reader, headers, beanType, ';') {
-
-						@Override
-						protected boolean isValidRaw(final List<String> rawValues) {
-							return true;
-						}
-					};
-				}
-
 				@Override
 				protected boolean isHeaderRow(final List<String> values) {
 					// No extra padding before headers
@@ -189,8 +196,8 @@ public class AwsPriceImportBase extends AbstractAwsImport implements ImportCatal
 				// Read the next one
 				csv = csvReader.read();
 			}
-		} catch (final IOException | URISyntaxException use) {
-			// Something goes wrong for this region, stop for this region
+		} catch (final IOException | RuntimeException use) {
+			// Something goes wrong for this optional dataset, the prices are installed without it
 			log.warn("AWS {} dataset fetch failed", type, use);
 		} finally {
 			// Report
@@ -206,7 +213,7 @@ public class AwsPriceImportBase extends AbstractAwsImport implements ImportCatal
 		context.setBaseUrl(basePrice);
 		final var baseUrl = basePrice + AWS_PRICES_PATH;
 		log.info("AWS {} import: download root index {}", "lambda", baseUrl);
-		try (var reader = new BufferedReader(new InputStreamReader(URI.create(baseUrl).toURL().openStream()))) {
+		try (var reader = new BufferedReader(new InputStreamReader(openStream(baseUrl)))) {
 			context.setOffers(objectMapper.readValue(reader, AwsPriceIndex.class).getOffers());
 		}
 	}
@@ -0,0 +1,352 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ligoj.app.plugin.aws.ProvAwsPluginResource;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Price file fetch layer, with an optional bounded local disk mirror of the HTTP price files. A mirrored file is
+ * revalidated with a conditional GET (<code>If-None-Match</code> and <code>If-Modified-Since</code>), and is only
+ * downloaded again when changed. The SHA-256 checksum of a mirrored file is computed while downloading, and verified
+ * before reusing it: a corrupted or truncated file is downloaded again. The least recently used files are evicted
+ * when the mirror is full.<br>
+ * When the mirror is disabled, the HTTP price files are streamed as is from the transport. The other URLs are read
+ * directly.
+ */
+@Slf4j
+@Component
+public class AwsPriceMirror {
+
+	/**
+	 * Configuration key of the local mirror directory. When <code>null</code>, the mirror is disabled.
+	 */
+	public static final String CONF_MIRROR_PATH = ProvAwsPluginResource.KEY + ":mirror-path";
+
+	/**
+	 * Configuration key of the maximal size in MB of the local mirror.
+	 */
+	public static final String CONF_MIRROR_SIZE = ProvAwsPluginResource.KEY + ":mirror-size";
+
+	/**
+	 * Default maximal size in MB of the local mirror.
+	 */
+	private static final int DEFAULT_MIRROR_SIZE = 10 * 1024;
+
+	private static final String DATA = ".data";
+
+	private static final String META = ".properties";
+
+	private static final String ETAG = "etag";
+
+	private static final String LAST_MODIFIED = "last-modified";
+
+	private static final String SHA256 = "sha256";
+
+	private static final String SIZE = "size";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Response of a price file request.
+	 *
+	 * @param status       The HTTP status.
+	 * @param etag         The entity tag. May be <code>null</code>.
+	 * @param lastModified The last modification date header. May be <code>null</code>.
+	 * @param length       The content length, <code>-1</code> when unknown.
+	 * @param body         The content, only for a <code>200</code> status.
+	 */
+	public record Response(int status, String etag, String lastModified, long length, InputStream body) {
+	}
+
+	/**
+	 * Price file transport.
+	 */
+	@FunctionalInterface
+	public interface Transport {
+
+		/**
+		 * Request a price file.
+		 *
+		 * @param uri          The price file URI.
+		 * @param etag         The entity tag of the mirrored file for <code>If-None-Match</code>. May be
+		 *                     <code>null</code>.
+		 * @param lastModified The last modification date of the mirrored file for <code>If-Modified-Since</code>.
+		 *                     May be <code>null</code>.
+		 * @return The response.
+		 * @throws IOException When the price file cannot be requested.
+		 */
+		Response get(URI uri, String etag, String lastModified) throws IOException;
+	}
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	/**
+	 * The price file transport.
+	 */
+	@Setter
+	@Autowired
+	private Transport transport;
+
+	/**
+	 * Lock of each mirrored file.
+	 */
+	private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+	/**
+	 * Open a price file.
+	 *
+	 * @param url The price file URL.
+	 * @return The price file content.
+	 * @throws IOException When the price file cannot be read.
+	 */
+	public InputStream open(final String url) throws IOException {
+		final var channel = openChannel(url);
+		if (channel != null) {
+			return Channels.newInputStream(channel);
+		}
+		final var uri = toURI(url);
+		if (!isHttp(uri)) {
+			return uri.toURL().openStream();
+		}
+		final var response = transport.get(uri, null, null);
+		if (response.status() != HttpURLConnection.HTTP_OK) {
+			throw new IOException("Unable to fetch " + uri + ", status " + response.status());
+		}
+		return response.body();
+	}
+
+	/**
+	 * Open the mirrored file of a price file, as a file channel allowing positional and memory-mapped reads.
+	 *
+	 * @param url The price file URL.
+	 * @return The file channel of the up to date mirrored file. <code>null</code> when the mirror is disabled, or not
+	 *         supported for this URL.
+	 * @throws IOException When the price file cannot be read.
+	 */
+	public FileChannel openChannel(final String url) throws IOException {
+		final var uri = toURI(url);
+		final var root = configuration.get(CONF_MIRROR_PATH);
+		if (StringUtils.isBlank(root) || !isHttp(uri)) {
+			return null;
+		}
+		final var directory = Files.createDirectories(Path.of(root));
+		final var key = HexFormat.of().formatHex(newDigest().digest(url.getBytes(StandardCharsets.UTF_8)));
+		final var lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+		lock.lock();
+		try {
+			final var data = directory.resolve(key + DATA);
+			mirror(uri, data, directory.resolve(key + META));
+			return FileChannel.open(data, StandardOpenOption.READ);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Revalidate or download the mirrored file.
+	 */
+	private void mirror(final URI uri, final Path data, final Path meta) throws IOException {
+		final var previous = readMeta(data, meta);
+		final var response = previous == null ? transport.get(uri, null, null)
+				: transport.get(uri, previous.getProperty(ETAG), previous.getProperty(LAST_MODIFIED));
+		if (response.status() == HttpURLConnection.HTTP_NOT_MODIFIED && previous != null) {
+			if (isValid(data, previous)) {
+				log.info("AWS price file {} is not modified, mirrored file is reused", uri);
+				Files.setLastModifiedTime(meta, FileTime.fromMillis(System.currentTimeMillis()));
+				return;
+			}
+			log.warn("AWS price file {} has an invalid mirrored file, download again", uri);
+			Files.deleteIfExists(meta);
+			mirror(uri, data, meta);
+		} else if (response.status() == HttpURLConnection.HTTP_OK) {
+			download(uri, response, data, meta);
+			evict(data.getParent(), data);
+		} else {
+			throw new IOException("Unable to fetch " + uri + ", status " + response.status());
+		}
+	}
+
+	/**
+	 * Download the content to the mirrored file, with its checksum.
+	 */
+	private void download(final URI uri, final Response response, final Path data, final Path meta)
+			throws IOException {
+		final var digest = newDigest();
+		final var temp = data.resolveSibling(data.getFileName() + ".tmp");
+		var size = 0L;
+		try (var input = response.body(); var output = Files.newOutputStream(temp)) {
+			final var buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+				output.write(buffer, 0, read);
+				size += read;
+			}
+		} catch (final IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		if (response.length() >= 0 && response.length() != size) {
+			Files.deleteIfExists(temp);
+			throw new IOException(
+					"Truncated price file " + uri + ", " + size + " bytes instead of " + response.length());
+		}
+
+		// Replace the previous file
+		final var properties = new Properties();
+		properties.setProperty("url", uri.toString());
+		properties.setProperty(SIZE, String.valueOf(size));
+		properties.setProperty(SHA256, HexFormat.of().formatHex(digest.digest()));
+		if (response.etag() != null) {
+			properties.setProperty(ETAG, response.etag());
+		}
+		if (response.lastModified() != null) {
+			properties.setProperty(LAST_MODIFIED, response.lastModified());
+		}
+		Files.deleteIfExists(meta);
+		Files.move(temp, data, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		try (OutputStream output = Files.newOutputStream(meta)) {
+			properties.store(output, null);
+		}
+		log.info("AWS price file {} mirrored, {} bytes", uri, size);
+	}
+
+	/**
+	 * Return the metadata of a mirrored file, <code>null</code> when not mirrored.
+	 */
+	private Properties readMeta(final Path data, final Path meta) throws IOException {
+		if (!Files.exists(meta) || !Files.exists(data)) {
+			return null;
+		}
+		final var properties = new Properties();
+		try (var input = Files.newInputStream(meta)) {
+			properties.load(input);
+		}
+		return properties;
+	}
+
+	/**
+	 * Indicate the mirrored file matches its size and its checksum.
+	 */
+	private boolean isValid(final Path data, final Properties meta) throws IOException {
+		if (Files.size(data) != Long.parseLong(meta.getProperty(SIZE, "-1"))) {
+			return false;
+		}
+		final var digest = newDigest();
+		try (var channel = FileChannel.open(data, StandardOpenOption.READ)) {
+			final var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			while (channel.read(buffer) != -1) {
+				digest.update(buffer.flip());
+				buffer.clear();
+			}
+		}
+		return HexFormat.of().formatHex(digest.digest()).equals(meta.getProperty(SHA256));
+	}
+
+	/**
+	 * Evict the least recently used mirrored files until the mirror size is below its limit. The given file and the
+	 * files being mirrored are kept.
+	 */
+	private void evict(final Path directory, final Path kept) throws IOException {
+		final var limit = configuration.get(CONF_MIRROR_SIZE, DEFAULT_MIRROR_SIZE) * 1024L * 1024L;
+		final var files = new ArrayList<Path>();
+		try (var stream = Files.list(directory)) {
+			stream.filter(p -> p.getFileName().toString().endsWith(DATA)).forEach(files::add);
+		}
+		var total = 0L;
+		for (final var file : files) {
+			total += Files.size(file);
+		}
+		if (total <= limit) {
+			return;
+		}
+		files.sort(Comparator.comparing(this::getLastUsed));
+		for (final var file : files) {
+			if (total <= limit) {
+				break;
+			}
+			final var name = file.getFileName().toString();
+			final var key = name.substring(0, name.length() - DATA.length());
+			final var lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+			if (!file.equals(kept) && lock.tryLock()) {
+				try {
+					final var size = Files.size(file);
+					Files.deleteIfExists(directory.resolve(key + META));
+					Files.deleteIfExists(file);
+					total -= size;
+					log.info("AWS mirrored price file {} evicted, {} bytes", key, size);
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the last use time of a mirrored file, tracked by its metadata file.
+	 */
+	private FileTime getLastUsed(final Path data) {
+		final var name = data.getFileName().toString();
+		try {
+			return Files.getLastModifiedTime(
+					data.resolveSibling(name.substring(0, name.length() - DATA.length()) + META));
+		} catch (final IOException e) {
+			// Orphan data file, evicted first
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private static boolean isHttp(final URI uri) {
+		return "http".equals(uri.getScheme()) || "https".equals(uri.getScheme());
+	}
+
+	private static URI toURI(final String url) throws IOException {
+		try {
+			return new URI(url);
+		} catch (final URISyntaxException e) {
+			throw new IOException("Invalid price file URL " + url, e);
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.Session;
+import org.ligoj.app.plugin.prov.model.AbstractPrice;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.persistence.EntityManager;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bulk writer of the prices of a regional context. The changed prices are queued, then written by batches through a
+ * stateless session sharing the connection and the transaction of the current persistence context: there is neither
+ * merge nor dirty checking, and the updates are sent as JDBC batches. The inserted prices receive their generated
+ * identifier, so they can be referenced and updated afterward.<br>
+ * Each batch joins the current transaction of the single transaction import. The parallel import has no enclosing
+ * transaction: each batch is then written and committed by its own transaction.<br>
+ * The queued prices are written when the batch is full, and must be written before the prices are read again from the
+ * database, such as by the purge.
+ */
+@Slf4j
+public class AwsPriceWriter {
+
+	/**
+	 * Listener of the bulk writes.
+	 */
+	@FunctionalInterface
+	public interface Listener {
+
+		/**
+		 * Called once the queued prices are written.
+		 *
+		 * @param inserts The amount of inserted prices.
+		 * @param updates The amount of updated prices.
+		 * @param nanos   The write duration, in nanoseconds.
+		 */
+		void flushed(int inserts, int updates, long nanos);
+	}
+
+	private final EntityManager em;
+
+	private final TransactionTemplate transaction;
+
+	private final int batchSize;
+
+	/**
+	 * The queued new prices.
+	 */
+	private final List<AbstractPrice<?>> inserts = new ArrayList<>();
+
+	/**
+	 * The queued existing prices.
+	 */
+	private final List<AbstractPrice<?>> updates = new ArrayList<>();
+
+	/**
+	 * The queued prices, by identity.
+	 */
+	private final Set<AbstractPrice<?>> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * The optional listener of the bulk writes.
+	 */
+	@Setter
+	private Listener listener;
+
+	/**
+	 * Constructor with the persistence context.
+	 *
+	 * @param em          The shared persistence context, providing the connection.
+	 * @param transaction The transaction of each batch, joining the current one if any.
+	 * @param batchSize   The amount of queued prices triggering a write.
+	 */
+	public AwsPriceWriter(final EntityManager em, final TransactionTemplate transaction, final int batchSize) {
+		this.em = em;
+		this.transaction = transaction;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Queue a changed price. A price queued twice is written once with its last state.
+	 *
+	 * @param price The price to write.
+	 */
+	public void add(final AbstractPrice<?> price) {
+		if (queued.add(price)) {
+			(price.getId() == null ? inserts : updates).add(price);
+			if (queued.size() >= batchSize) {
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * Write the queued prices. The pending changes of the persistence context are flushed first, so the queued prices
+	 * hold the last state.
+	 */
+	public void flush() {
+		if (queued.isEmpty()) {
+			return;
+		}
+		final var start = System.nanoTime();
+		transaction.executeWithoutResult(s -> {
+			em.flush();
+			final var session = em.unwrap(Session.class);
+
+			// The connection is only borrowed for this work, and released by the persistence context
+			session.doWork(connection -> {
+				try (var stateless = session.getSessionFactory().withStatelessOptions().connection(connection)
+						.openStatelessSession()) {
+					stateless.setJdbcBatchSize(batchSize);
+					if (!inserts.isEmpty()) {
+						stateless.insertMultiple(inserts);
+					}
+					if (!updates.isEmpty()) {
+						stateless.updateMultiple(updates);
+					}
+				}
+			});
+		});
+		log.debug("AWS prices written: {} inserted, {} updated", inserts.size(), updates.size());
+		if (listener != null) {
+			listener.flushed(inserts.size(), updates.size(), System.nanoTime() - start);
+		}
+		inserts.clear();
+		updates.clear();
+		queued.clear();
+	}
+}
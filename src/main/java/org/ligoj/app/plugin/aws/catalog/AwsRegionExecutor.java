@@ -0,0 +1,292 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.ligoj.app.plugin.aws.ProvAwsPluginResource;
+import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Dedicated executor of the regional import tasks, shared by all AWS services. The regional tasks are mostly blocked
+ * in downloads and JDBC calls: each one runs on its own virtual thread, instead of the common fork-join pool used by
+ * the other Ligoj components. A semaphore bounds the amount of concurrent tasks, and a semaphore per region bounds the
+ * concurrent transactions of the services importing the same region.<br>
+ * When the parallel import is disabled, the tasks are run sequentially by the calling thread.<br>
+ * The CPU bound parsing of the CSV chunks is run by a pool shared by all regions, bounded by the available processors.
+ */
+@Slf4j
+@Component
+public class AwsRegionExecutor {
+
+	/**
+	 * Configuration key of the maximal amount of regional tasks running concurrently.
+	 */
+	public static final String CONF_THREADS = ProvAwsPluginResource.KEY + ":region-threads";
+
+	/**
+	 * Configuration key of the maximal amount of concurrent regional tasks for the same region.
+	 */
+	public static final String CONF_REGION_PERMITS = ProvAwsPluginResource.KEY + ":region-transactions";
+
+	/**
+	 * Default maximal amount of regional tasks running concurrently.
+	 */
+	private static final int DEFAULT_THREADS = 16;
+
+	/**
+	 * Default maximal amount of concurrent regional tasks for the same region.
+	 */
+	private static final int DEFAULT_REGION_PERMITS = 2;
+
+	@Autowired
+	protected ConfigurationResource configuration;
+
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+	/**
+	 * Semaphore bounding the concurrent tasks, replaced when the configured amount changes. The running tasks release
+	 * the semaphore they have acquired.
+	 */
+	private Semaphore threads = new Semaphore(DEFAULT_THREADS);
+
+	private int maxThreads = DEFAULT_THREADS;
+
+	/**
+	 * The pool parsing the CSV chunks of all regions.
+	 */
+	private final ForkJoinPool parser = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Semaphores of each region. Key is the API region code.
+	 */
+	private final Map<String, Semaphore> regions = new ConcurrentHashMap<>();
+
+	/**
+	 * Amount of tasks waiting for the concurrent tasks semaphore.
+	 */
+	private final AtomicInteger queued = new AtomicInteger();
+
+	/**
+	 * Amount of tasks holding the concurrent tasks semaphore.
+	 */
+	private final AtomicInteger running = new AtomicInteger();
+
+	/**
+	 * Amount of tasks waiting for their region semaphore.
+	 */
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	/**
+	 * A source emitting its items one at a time, such as a streamed price file.
+	 *
+	 * @param <T> The item type.
+	 */
+	@FunctionalInterface
+	public interface Source<T> {
+
+		/**
+		 * Read all items of this source.
+		 *
+		 * @param consumer The consumer of each item.
+		 * @throws IOException When the source cannot be read.
+		 */
+		void read(Consumer<T> consumer) throws IOException;
+	}
+
+	/**
+	 * Run a task for each given item and wait for their completion. When a task fails, the other ones are still
+	 * completed, then the first failure in the item order is rethrown.
+	 *
+	 * @param <T>      The item type.
+	 * @param items    The items to process, usually one per region.
+	 * @param toRegion The API region code of an item.
+	 * @param task     The task to run for each item.
+	 */
+	public <T> void forEach(final Collection<T> items, final Function<T, String> toRegion, final Consumer<T> task) {
+		if (configuration.get(ProvResource.USE_PARALLEL, 1) == 0) {
+			// Single transaction import, bound to the current thread
+			items.forEach(task);
+			return;
+		}
+		final var slots = getThreads(Math.max(1, configuration.get(CONF_THREADS, DEFAULT_THREADS)));
+		final var permits = configuration.get(CONF_REGION_PERMITS, DEFAULT_REGION_PERMITS);
+		final var futures = items.stream().map(i -> CompletableFuture.runAsync(() -> {
+			acquire(slots);
+			run(i, toRegion, task, slots, permits);
+		}, executor)).toList();
+		log.info("AWS regional tasks: {} submitted, {} queued, {} running", futures.size(), getQueueDepth(),
+				getRunning());
+		join(futures);
+	}
+
+	/**
+	 * Run a task for each item emitted by the given source and wait for their completion. The source is blocked while
+	 * all concurrent task slots are taken, so only the items of the running tasks are held in memory. When a task
+	 * fails, the other ones are still completed, then the first failure in the item order is rethrown.
+	 *
+	 * @param <T>      The item type.
+	 * @param source   The source of the items to process, usually one per region.
+	 * @param toRegion The API region code of an item.
+	 * @param task     The task to run for each item.
+	 * @throws IOException When the source cannot be read. Thrown once the submitted tasks are completed.
+	 */
+	public <T> void forEach(final Source<T> source, final Function<T, String> toRegion, final Consumer<T> task)
+			throws IOException {
+		if (configuration.get(ProvResource.USE_PARALLEL, 1) == 0) {
+			// Single transaction import, bound to the current thread
+			source.read(task);
+			return;
+		}
+		final var slots = getThreads(Math.max(1, configuration.get(CONF_THREADS, DEFAULT_THREADS)));
+		final var permits = configuration.get(CONF_REGION_PERMITS, DEFAULT_REGION_PERMITS);
+		final var futures = new ArrayList<CompletableFuture<Void>>();
+		try {
+			source.read(i -> {
+				acquire(slots);
+				futures.add(CompletableFuture.runAsync(() -> run(i, toRegion, task, slots, permits), executor));
+			});
+		} finally {
+			log.info("AWS regional tasks: {} submitted, {} running", futures.size(), getRunning());
+			join(futures);
+		}
+	}
+
+	/**
+	 * Acquire a concurrent task slot.
+	 */
+	private void acquire(final Semaphore slots) {
+		queued.incrementAndGet();
+		try {
+			slots.acquireUninterruptibly();
+		} finally {
+			queued.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Run a task holding a concurrent task slot, within its region semaphore. The slot is released once completed.
+	 */
+	private <T> void run(final T item, final Function<T, String> toRegion, final Consumer<T> task,
+			final Semaphore slots, final int permits) {
+		running.incrementAndGet();
+		try {
+			final var semaphore = regions.computeIfAbsent(toRegion.apply(item), r -> new Semaphore(permits));
+			waiting.incrementAndGet();
+			try {
+				semaphore.acquireUninterruptibly();
+			} finally {
+				waiting.decrementAndGet();
+			}
+			try {
+				task.accept(item);
+			} finally {
+				semaphore.release();
+			}
+		} finally {
+			running.decrementAndGet();
+			slots.release();
+		}
+	}
+
+	/**
+	 * Wait for all tasks, even after a failure, then rethrow the first failure.
+	 */
+	private void join(final Collection<CompletableFuture<Void>> futures) {
+		final var failures = new ArrayList<Throwable>();
+		futures.forEach(f -> {
+			try {
+				f.join();
+			} catch (final CompletionException e) {
+				failures.add(e.getCause());
+			}
+		});
+		if (!failures.isEmpty()) {
+			rethrow(failures.getFirst());
+		}
+	}
+
+	/**
+	 * Return the semaphore bounding the concurrent tasks, replaced when the given amount has changed.
+	 */
+	private synchronized Semaphore getThreads(final int max) {
+		if (max != maxThreads) {
+			threads = new Semaphore(max);
+			maxThreads = max;
+		}
+		return threads;
+	}
+
+	private void rethrow(final Throwable failure) {
+		if (failure instanceof RuntimeException e) {
+			throw e;
+		}
+		throw (Error) failure;
+	}
+
+	/**
+	 * Return the amount of regional tasks waiting for a concurrent task slot.
+	 *
+	 * @return The amount of regional tasks waiting for a concurrent task slot.
+	 */
+	public int getQueueDepth() {
+		return queued.get();
+	}
+
+	/**
+	 * Return the amount of regional tasks holding a concurrent task slot, including the ones waiting for their region
+	 * semaphore.
+	 *
+	 * @return The amount of regional tasks holding a concurrent task slot.
+	 */
+	public int getRunning() {
+		return running.get();
+	}
+
+	/**
+	 * Return the amount of regional tasks waiting for their region semaphore.
+	 *
+	 * @return The amount of regional tasks waiting for their region semaphore.
+	 */
+	public int getRegionWaiting() {
+		return waiting.get();
+	}
+
+	/**
+	 * Return the pool parsing the CSV chunks, shared by all regions.
+	 *
+	 * @return The pool parsing the CSV chunks.
+	 */
+	public ForkJoinPool getParser() {
+		return parser;
+	}
+
+	/**
+	 * Stop the threads.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+		parser.shutdownNow();
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.function.Consumer;
+
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.exc.JacksonIOException;
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Streaming reader of a JSON or JSONP price file having the regional prices in <code>config.regions</code>. The JSONP
+ * callback prefix is skipped on the stream, then the regions are bound and emitted one at a time: the whole document is
+ * never held in memory.
+ *
+ * @param <R> The region prices type.
+ */
+public class AwsRegionPricesReader<R extends AwsRegionPrices> {
+
+	private final ObjectMapper mapper;
+
+	private final Class<R> regionClass;
+
+	/**
+	 * Constructor with the region mapping.
+	 *
+	 * @param mapper      The object mapper used to bind the regions.
+	 * @param regionClass The mapping model from JSON at region level.
+	 */
+	public AwsRegionPricesReader(final ObjectMapper mapper, final Class<R> regionClass) {
+		this.mapper = mapper;
+		this.regionClass = regionClass;
+	}
+
+	/**
+	 * Read the price file and emit each region.
+	 *
+	 * @param input    The price file content. Closed by this method.
+	 * @param consumer The region consumer, called in the document order.
+	 * @throws IOException When the price file cannot be read.
+	 */
+	public void read(final InputStream input, final Consumer<R> consumer) throws IOException {
+		try (var pushback = new PushbackInputStream(new BufferedInputStream(input))) {
+			if (!skipPrefix(pushback)) {
+				// No JSON object at all
+				return;
+			}
+			try (var parser = mapper.createParser(pushback)) {
+				parser.nextToken();
+				while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+					final var name = parser.currentName();
+					parser.nextToken();
+					if ("config".equals(name) && parser.currentToken() == JsonToken.START_OBJECT) {
+						readConfig(parser, consumer);
+					} else {
+						parser.skipChildren();
+					}
+				}
+				// The JSONP suffix is never read
+			} catch (final JacksonIOException e) {
+				throw (IOException) e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * Skip the content before the root JSON object, such as a JSONP callback.
+	 *
+	 * @return <code>true</code> when the root JSON object is found.
+	 */
+	private boolean skipPrefix(final PushbackInputStream input) throws IOException {
+		int b;
+		while ((b = input.read()) != -1) {
+			if (b == '{') {
+				input.unread(b);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void readConfig(final JsonParser parser, final Consumer<R> consumer) {
+		while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+			final var name = parser.currentName();
+			parser.nextToken();
+			if ("regions".equals(name) && parser.currentToken() == JsonToken.START_ARRAY) {
+				while (parser.nextToken() == JsonToken.START_OBJECT) {
+					consumer.accept(mapper.readValue(parser, regionClass));
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+	}
+}
@@ -3,11 +3,19 @@
  */
 package org.ligoj.app.plugin.aws.catalog;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import org.ligoj.app.plugin.aws.catalog.vm.SavingsPlanInstaller;
 import org.ligoj.app.plugin.prov.catalog.AbstractUpdateContext;
+import org.ligoj.app.plugin.prov.model.AbstractCodedEntity;
 
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -44,4 +52,59 @@ public class UpdateContext extends AbstractUpdateContext {
 	@Getter
 	private final Map<String, Double> baselines = new ConcurrentHashMap<>();
 
+	/**
+	 * Fingerprint of the reference datasets shared by all prices, such as the CO2 datasets and the baselines. Combined
+	 * with the fingerprint of each price, so a changed dataset refreshes all prices.
+	 */
+	@Getter
+	@Setter
+	private long referenceFingerprint;
+
+	/**
+	 * Successfully imported price file versions, persisted at the end of the import. Key is the configuration key.
+	 */
+	@Getter
+	private final Map<String, String> versions = new ConcurrentHashMap<>();
+
+	/**
+	 * Price files skipped because unchanged since the previous import. Entry is like <code>ec2@eu-west-1</code>.
+	 */
+	@Getter
+	private final Set<String> unchanged = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Savings Plan installers deferred to the shared Savings Plan stage. Key is the API region code. A
+	 * <code>null</code> installer means nothing to install.
+	 */
+	@Getter
+	private final Map<String, Queue<Supplier<SavingsPlanInstaller>>> savingsPlans = new ConcurrentHashMap<>();
+
+	/**
+	 * Registries of the node entities shared by all regions and services, such as the terms and the types. Key is the
+	 * entity type.
+	 */
+	private final Map<Class<?>, Map<String, ?>> registries = new ConcurrentHashMap<>();
+
+	/**
+	 * Return the registry of the node entities of a type, loading it on the first call of this import. The registry is
+	 * safe under the parallel regional tasks: a missing entity is created once with
+	 * {@link Map#computeIfAbsent(Object, java.util.function.Function)}, then shared.
+	 *
+	 * @param <E>    The entity type.
+	 * @param type   The entity type.
+	 * @param loader The loader of the persisted entities of the node.
+	 * @return The registry. Key is the entity code.
+	 */
+	@SuppressWarnings("unchecked")
+	public <E extends AbstractCodedEntity> Map<String, E> getRegistry(final Class<E> type,
+			final Supplier<? extends Collection<E>> loader) {
+		return (Map<String, E>) registries.computeIfAbsent(type, t -> loader.get().stream()
+				.collect(Collectors.toConcurrentMap(AbstractCodedEntity::getCode, Function.identity())));
+	}
+
+	@Override
+	public void cleanup() {
+		super.cleanup();
+		registries.clear();
+	}
 }
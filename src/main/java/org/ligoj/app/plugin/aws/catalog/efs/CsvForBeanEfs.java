@@ -5,14 +5,11 @@ package org.ligoj.app.plugin.aws.catalog.efs;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.Reader;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.ligoj.app.plugin.aws.catalog.AbstractAwsCsvForBean;
-import org.ligoj.app.plugin.aws.catalog.AbstractAwsCsvReader;
-import org.ligoj.bootstrap.core.csv.CsvBeanReader;
+import org.ligoj.app.plugin.aws.catalog.AwsCsvFilter;
 
 /**
  * Read AWS EFS CSV input, skipping the AWS headers and non instance type rows.
@@ -40,17 +37,9 @@ public class CsvForBeanEfs extends AbstractAwsCsvForBean<AwsEfsPrice> {
 	}
 
 	@Override
-	protected CsvBeanReader<AwsEfsPrice> newCsvReader(final Reader reader, final String[] headers,
-			final Class<AwsEfsPrice> beanType) {
-		return new AbstractAwsCsvReader<>(reader, headers, beanType) {
-
-			@Override
-			protected boolean isValidRaw(final List<String> rawValues) {
-				// Only "Storage" pricing, no Provisioned Throughput for now
-				return "Storage".equals(rawValues.get(11)) && "GB-Mo".equals(rawValues.get(8));
-			}
-
-		};
+	protected AwsCsvFilter newFilter() {
+		// Only "Storage" pricing, no Provisioned Throughput for now
+		return new AwsCsvFilter().eq("Unit", "GB-Mo").eq("Product Family", "Storage");
 	}
 
 }
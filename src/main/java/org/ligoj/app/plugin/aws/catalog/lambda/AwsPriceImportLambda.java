@@ -7,6 +7,7 @@ import org.ligoj.app.plugin.aws.catalog.UpdateContext;
 import org.ligoj.app.plugin.aws.catalog.vm.AbstractAwsPriceImportVm;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanProduct;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanRate;
+import org.ligoj.app.plugin.prov.catalog.AbstractUpdateContext;
 import org.ligoj.app.plugin.prov.model.*;
 import org.ligoj.bootstrap.core.SpringUtils;
 import org.springframework.stereotype.Component;
@@ -65,6 +66,11 @@ public class AwsPriceImportLambda extends
 
 	@Override
 	public void install(final UpdateContext context) throws IOException {
+		// Preload the function types shared by the regions
+		context.getRegistry(ProvFunctionType.class, () -> ftRepository.findAllBy(BY_NODE, context.getNode()));
+		// Detach the bulk-loaded entities: they stay usable from the context, and the following flushes stay cheap
+		flushAndClear();
+
 		// Get the remote prices stream
 		installPrices(context, API, SERVICE_CODE, TERM_ON_DEMAND, null);
 	}
@@ -125,11 +131,16 @@ public class AwsPriceImportLambda extends
 		t.setDescription((provisioned ? "Provisioned Concurrency " : "Non provisioned ") + t.getProcessor());
 	}
 
+	@Override
+	protected String getApi() {
+		return API;
+	}
+
 	@Override
 	protected LocalLambdaContext newContext(final UpdateContext gContext, final ProvLocation region, final String term1,
 	                                        String term2) {
-		final var context = new LocalLambdaContext(gContext, iptRepository, ftRepository, fpRepository, qfRepository,
-				region, term1, term2);
+		final var context = new LocalLambdaContext(gContext, entityManager, iptRepository, ftRepository, fpRepository,
+				qfRepository, region, term1, term2);
 		// Detach the bulk-loaded entities: they stay usable from the context, and the following flushes stay cheap
 		flushAndClear();
 		setupMapper(context);
@@ -229,7 +240,7 @@ public class AwsPriceImportLambda extends
 					price.setCostRamRequestConcurrency(
 							round3Decimals(aggPrice.getCostRamRequestConcurrency() * context.getSecondsMonth()));
 					saveInitialCost(context, price, c);
-				}, context.getPRepository()::save);
+				}, getWriter(context)::add);
 	}
 
 	@Override
@@ -255,4 +266,9 @@ public class AwsPriceImportLambda extends
 		// Ignore
 	}
 
+	@Override
+	protected void skipScoredPrices(final AbstractUpdateContext context, final String api, final String region) {
+		// Ignore
+	}
+
 }
@@ -6,9 +6,9 @@ package org.ligoj.app.plugin.aws.catalog.lambda;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
+import org.ligoj.app.plugin.aws.catalog.AwsCsvFilter;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.AbstractCsvForBeanEc2;
 
 /**
@@ -35,7 +35,7 @@ public class CsvForBeanLambda extends AbstractCsvForBeanEc2<AwsLambdaPrice> {
 	}
 
 	@Override
-	public boolean isValidRaw(List<String> rawValues) {
-		return !(rawValues.get(4).contains("Free Tier"));
+	protected AwsCsvFilter newFilter() {
+		return new AwsCsvFilter().notContains("PriceDescription", "Free Tier");
 	}
 }
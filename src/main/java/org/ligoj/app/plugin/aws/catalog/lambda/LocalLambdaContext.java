@@ -18,6 +18,7 @@ import org.ligoj.app.plugin.prov.model.ProvFunctionType;
 import org.ligoj.app.plugin.prov.model.ProvLocation;
 import org.ligoj.app.plugin.prov.model.ProvQuoteFunction;
 
+import jakarta.persistence.EntityManager;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -41,6 +42,7 @@ public class LocalLambdaContext
 	 * Context from the parent.
 	 *
 	 * @param parent       The parent context.
+	 * @param em           The current persistence context.
 	 * @param ptRepository The term repository.
 	 * @param tRepository  The type repository.
 	 * @param pRepository  The price repository.
@@ -49,12 +51,12 @@ public class LocalLambdaContext
 	 * @param term1        The expected term name prefix alternative 1.
 	 * @param term2        The expected term name prefix alternative 2.
 	 */
-	public LocalLambdaContext(final UpdateContext parent, final ProvInstancePriceTermRepository ptRepository,
+	public LocalLambdaContext(final UpdateContext parent, final EntityManager em,
+			final ProvInstancePriceTermRepository ptRepository,
 			final ProvFunctionTypeRepository tRepository, final ProvFunctionPriceRepository pRepository,
 			final ProvQuoteFunctionRepository qRepository, final ProvLocation region, final String term1,
 			final String term2) {
-		super(parent, ptRepository, tRepository, pRepository, qRepository, region, parent.getFunctionTypes(), term1,
-				term2);
+		super(parent, em, ptRepository, tRepository, pRepository, qRepository, region, term1, term2);
 	}
 
 	@Override
@@ -69,4 +71,8 @@ public class LocalLambdaContext
 		return new ProvFunctionType();
 	}
 
+	@Override
+	public Class<ProvQuoteFunction> getQuoteClass() {
+		return ProvQuoteFunction.class;
+	}
 }
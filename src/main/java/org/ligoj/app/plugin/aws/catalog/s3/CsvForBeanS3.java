@@ -5,14 +5,11 @@ package org.ligoj.app.plugin.aws.catalog.s3;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.Reader;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.ligoj.app.plugin.aws.catalog.AbstractAwsCsvForBean;
-import org.ligoj.app.plugin.aws.catalog.AbstractAwsCsvReader;
-import org.ligoj.bootstrap.core.csv.CsvBeanReader;
+import org.ligoj.app.plugin.aws.catalog.AwsCsvFilter;
 
 /**
  * Read AWS S3 CSV input, skipping the AWS headers and non instance type rows.
@@ -41,19 +38,11 @@ public class CsvForBeanS3 extends AbstractAwsCsvForBean<AwsS3Price> {
 	}
 
 	@Override
-	protected CsvBeanReader<AwsS3Price> newCsvReader(final Reader reader, final String[] headers,
-			final Class<AwsS3Price> beanType) {
-		return new AbstractAwsCsvReader<>(reader, headers, beanType) {
-
-			@Override
-			protected boolean isValidRaw(final List<String> rawValues) {
-				// Only starting range = 0
-				// Only "Product Family" = "Storage"
-				// No "Storage Class" = "Tags"
-				return "0".equals(rawValues.get(6)) && !"Tags".equals(rawValues.get(16))
-						&& "Storage".equals(rawValues.get(11));
-			}
-
-		};
+	protected AwsCsvFilter newFilter() {
+		// Only starting range = 0
+		// Only "Product Family" = "Storage"
+		// No "Storage Class" = "Tags"
+		return new AwsCsvFilter().eq("StartingRange", "0").eq("Product Family", "Storage").ne("Storage Class",
+				"Tags");
 	}
 }
@@ -7,13 +7,22 @@ import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.*;
 import org.apache.commons.lang3.math.NumberUtils;
+import org.ligoj.app.plugin.aws.ProvAwsPluginResource;
+import org.ligoj.app.plugin.aws.catalog.AbstractAwsCsvForBean;
 import org.ligoj.app.plugin.aws.catalog.AbstractAwsImport;
 import org.ligoj.app.plugin.aws.catalog.AbstractLocalContext;
+import org.ligoj.app.plugin.aws.catalog.AwsCsvBinder;
+import org.ligoj.app.plugin.aws.catalog.AwsCsvSpool;
+import org.ligoj.app.plugin.aws.catalog.AwsFingerprint;
+import org.ligoj.app.plugin.aws.catalog.AwsFingerprintStore;
+import org.ligoj.app.plugin.aws.catalog.AwsLocalPrice;
+import org.ligoj.app.plugin.aws.catalog.AwsLocalPrices;
+import org.ligoj.app.plugin.aws.catalog.AwsPartialCostPairer;
 import org.ligoj.app.plugin.aws.catalog.AwsPriceRegion;
+import org.ligoj.app.plugin.aws.catalog.AwsPriceWriter;
 import org.ligoj.bootstrap.core.resource.TechnicalException;
 import org.ligoj.app.plugin.aws.catalog.UpdateContext;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.AbstractCsvForBeanEc2;
-import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanProduct;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanRate;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanTerm;
@@ -21,18 +30,22 @@ import org.ligoj.app.plugin.prov.catalog.AbstractUpdateContext;
 import org.ligoj.app.plugin.prov.catalog.Co2Data;
 import org.ligoj.app.plugin.prov.catalog.ImportCatalog;
 import org.ligoj.app.plugin.prov.model.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -87,8 +100,22 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 	 */
 	public static final String TERM_ON_DEMAND = "OnDemand";
 
+	/**
+	 * Configuration key of the amount of unpaired up-front rows kept as is while their sibling row is not read. The
+	 * older ones are spilled to a compact store.
+	 */
+	public static final String CONF_PARTIAL_WINDOW = ProvAwsPluginResource.KEY + ":partial-window";
+
+	/**
+	 * Default amount of unpaired up-front rows kept as is. The sibling rows are usually adjacent.
+	 */
+	private static final int DEFAULT_PARTIAL_WINDOW = 256;
+
 	private static final Pattern LEASING_TIME = Pattern.compile("(\\d)\\s*yr");
 
+	@Autowired
+	private AwsFingerprintStore fingerprintStore;
+
 	/**
 	 * Return <code>true</code> when this price corresponds to a reserved price with up-front part.
 	 *
@@ -110,20 +137,49 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 		if (!hasPartialCost(csv)) {
 			return false;
 		}
-		// Up-front ALL/PARTIAL
-		final var partialCost = context.getPartialCost();
-		final var upFrontCode = toUpFrontCode(csv);
-		if (partialCost.containsKey(upFrontCode)) {
-			handlePartialCost(context, csv, partialCost.get(upFrontCode));
-
-			// The price is completed, cleanup
-			partialCost.remove(upFrontCode);
-		} else {
-			partialCost.put(upFrontCode, csv);
+		// Up-front ALL/PARTIAL, the price is completed once the sibling row is read
+		final var sibling = getPairer(context).pair(toUpFrontCode(csv), csv);
+		if (sibling != null) {
+			handlePartialCost(context, csv, sibling);
 		}
 		return true;
 	}
 
+	/**
+	 * Return the pairing of the up-front rows of a regional context.
+	 *
+	 * @param context The regional update context.
+	 * @return The pairing of the up-front rows of this context.
+	 */
+	protected AwsPartialCostPairer<C> getPairer(final X context) {
+		if (context.getPairer() == null) {
+			// The retained rows are copied when the CSV records are reused
+			final UnaryOperator<C> snapshot = isCsvReuse() ? AwsCsvBinder::copy : UnaryOperator.identity();
+			context.setPairer(new AwsPartialCostPairer<>(objectMapper,
+					configuration.get(CONF_PARTIAL_WINDOW, DEFAULT_PARTIAL_WINDOW), snapshot));
+		}
+		return context.getPairer();
+	}
+
+	/**
+	 * Report the up-front rows of a regional context whose sibling row has not been found, then release them.
+	 *
+	 * @param context The regional update context.
+	 */
+	private void reportUnpaired(final X context) {
+		final var pairer = context.getPairer();
+		if (pairer == null) {
+			return;
+		}
+		final var unpaired = pairer.getUnpaired();
+		if (unpaired > 0) {
+			log.warn("AWS {} {} up-front prices without sibling row @{}, {} rows spilled", getApi(), unpaired,
+					context.getRegion().getName(), pairer.getSpills());
+		}
+		metrics.unpaired(getApi(), context.getRegion().getName(), unpaired);
+		pairer.clear();
+	}
+
 	/**
 	 * Handle partial up-front prices split into multiple price entries.
 	 *
@@ -144,6 +200,10 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 		}
 
 		// Price code is based on the hourly term code
+		if (isUnchanged(context, hourly.getRateCode(),
+				AwsFingerprint.hash(toFingerprint(context, hourly), toFingerprint(context, quantity)))) {
+			return;
+		}
 		final var price = newPrice(context, hourly);
 
 		// Round the computed hourly cost and save as needed
@@ -156,7 +216,7 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 			price.setCostPeriod(round3Decimals(price.getInitialCost()
 					+ hourly.getPricePerUnit() * price.getTerm().getPeriod() * context.getHoursMonth()));
 			setCo2(context, price);
-		}, context.getPRepository()::save);
+		}, getWriter(context)::add);
 	}
 
 	/**
@@ -264,21 +324,20 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 	}
 
 	/**
-	 * Install a new EC2/RDS instance type. The previous entries will contain this type at the end of this operation.
+	 * Install a new EC2/RDS instance type. The shared types will contain this type at the end of this operation.
 	 *
 	 * @param context The regional update context.
 	 * @param csv     The current CSV entry.
 	 * @return Either the previous entity, either a new one. Never <code>null</code>.
 	 */
 	protected final T installInstanceType(final X context, final C csv) {
-		var previous = context.getPreviousTypes().computeIfAbsent(csv.getInstanceType(), code -> {
+		// Atomic creation: the regions share the same new type
+		final var type = context.getLocalTypes().computeIfAbsent(csv.getInstanceType(), code -> {
 			final var t = context.newType();
 			t.setNode(context.getNode());
 			t.setCode(code);
 			return t;
 		});
-		final var type = context.getLocalTypes().computeIfAbsent(csv.getInstanceType(),
-				c -> ObjectUtils.getIfNull(context.getTRepository().findBy("code", c), previous));
 
 		// Update the statistics only once
 		return copyAsNeeded(context, type, t -> copy(context, csv, t), context.getTRepository());
@@ -331,7 +390,162 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 	 * @param context The regional update context.
 	 */
 	protected void purgePrices(final X context) {
-		super.purgePrices(context, context.getLocals(), context.getPRepository(), context.getQRepository());
+		final var region = context.getRegion().getName();
+		timed(getApi(), region, "purge", () -> {
+			flushPrices(context);
+			metrics.deleted(getApi(), region,
+					purgeStalePrices(context, region, context.getLocals(), context.getQuoteClass()));
+			metrics.unchanged(getApi(), region, context.getUnchanged());
+			saveFingerprints(context);
+		});
+	}
+
+	/**
+	 * Return the bulk writer of the changed prices of a regional context.
+	 *
+	 * @param context The regional update context.
+	 * @return The bulk writer of this context.
+	 */
+	protected AwsPriceWriter getWriter(final X context) {
+		if (context.getWriter() == null) {
+			final var writer = newWriter();
+			writer.setListener(metrics.toListener(getApi(), context.getRegion().getName()));
+			context.setWriter(writer);
+		}
+		return context.getWriter();
+	}
+
+	/**
+	 * Return a repository counting the prices it saves one by one in the import metrics, as the bulk writer does. The
+	 * counting repository is held by the regional context.
+	 *
+	 * @param <R>        The repository type.
+	 * @param context    The regional update context.
+	 * @param repository The repository saving the prices.
+	 * @return The counting repository.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <R> R counted(final X context, final R repository) {
+		return (R) context.getCounted().computeIfAbsent(repository,
+				r -> metrics.counted(repository, getApi(), context.getRegion().getName()));
+	}
+
+	/**
+	 * Write the queued changed prices of a regional context.
+	 *
+	 * @param context The regional update context.
+	 */
+	protected void flushPrices(final X context) {
+		if (context.getWriter() != null) {
+			context.getWriter().flush();
+		}
+	}
+
+	/**
+	 * Return the fingerprint of a price code, with the inputs shared by all prices: the monthly hours and the reference
+	 * datasets, such as the CO2 ones.
+	 *
+	 * @param context The regional update context.
+	 * @param code    The price code.
+	 * @return The fingerprint of this price code, to combine with the price source.
+	 */
+	protected long toFingerprint(final X context, final String code) {
+		final var hash = AwsFingerprint.hash(AwsFingerprint.SEED, code);
+		return AwsFingerprint.hash(AwsFingerprint.hash(hash, context.getHoursMonth()),
+				context.getReferenceFingerprint());
+	}
+
+	/**
+	 * Return the fingerprint of a CSV entry, from all its columns: the price, the term, and the instance type
+	 * attributes.
+	 *
+	 * @param context The regional update context.
+	 * @param csv     The current CSV entry.
+	 * @return The fingerprint of this CSV entry.
+	 */
+	protected long toFingerprint(final X context, final C csv) {
+		return AwsCsvBinder.hash(toFingerprint(context, csv.getRateCode()), csv);
+	}
+
+	/**
+	 * Indicate the price of a CSV entry is unchanged since the previous import.
+	 *
+	 * @param context The regional update context.
+	 * @param csv     The current CSV entry, the price code being its rate code.
+	 * @return <code>true</code> when the price is unchanged, and has been marked as seen.
+	 * @see #isUnchanged(AbstractLocalContext, String, long)
+	 */
+	protected boolean isUnchanged(final X context, final C csv) {
+		return isUnchanged(context, csv.getRateCode(), toFingerprint(context, csv));
+	}
+
+	/**
+	 * Indicate a price is unchanged since the previous import: the fingerprint of its source is the same, and its cost
+	 * has not been changed since. An unchanged price is only marked as seen for the purge, without being computed
+	 * again. Never <code>true</code> when the update is forced or the fingerprints are disabled.
+	 *
+	 * @param context     The regional update context.
+	 * @param code        The price code.
+	 * @param fingerprint The fingerprint of the price source.
+	 * @return <code>true</code> when the price is unchanged, and has been marked as seen.
+	 */
+	protected boolean isUnchanged(final X context, final String code, final long fingerprint) {
+		final var fingerprints = getFingerprints(context);
+		if (fingerprints == null) {
+			return false;
+		}
+		fingerprints.put(code, fingerprint);
+		if (context.isForce()) {
+			return false;
+		}
+		final var previous = context.getPreviousFingerprints().get(code);
+		final var locals = context.getLocals();
+		if (previous != null && locals.containsKey(code) && previous.hash() == fingerprint
+				&& Objects.equals(previous.cost(), locals.getCost(code))) {
+			context.getPrices().add(code);
+			context.setUnchanged(context.getUnchanged() + 1);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Return the fingerprints of the checked prices, loading the previous ones on the first call.
+	 */
+	private Map<String, Long> getFingerprints(final X context) {
+		if (context.getPreviousFingerprints() == null) {
+			final var previous = fingerprintStore.load(toFingerprintScope(context));
+			context.setPreviousFingerprints(previous == null ? Map.of() : previous);
+			context.setFingerprints(previous == null ? null : new HashMap<>());
+			// Only the changed prices are materialized
+			context.getLocals().setPrefetch(previous == null || context.isForce());
+		}
+		return context.getFingerprints();
+	}
+
+	/**
+	 * Save the fingerprints of the checked prices still installed, once the prices of a regional context are written.
+	 *
+	 * @param context The regional update context.
+	 */
+	protected void saveFingerprints(final X context) {
+		final var fingerprints = context.getFingerprints();
+		if (fingerprints == null) {
+			return;
+		}
+		final var saved = new HashMap<String, AwsFingerprint>();
+		final var locals = context.getLocals();
+		fingerprints.forEach((code, hash) -> {
+			if (locals.containsKey(code) && context.getPrices().contains(code)) {
+				saved.put(code, new AwsFingerprint(hash, Objects.requireNonNullElse(locals.getCost(code), Double.NaN)));
+			}
+		});
+		fingerprintStore.save(toFingerprintScope(context), saved);
+	}
+
+	private String toFingerprintScope(final X context) {
+		return String.join("-", context.getNode().getId(), context.getRegion().getName(),
+				context.getClass().getSimpleName(), context.getTerms());
 	}
 
 	/**
@@ -377,15 +591,14 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 	}
 
 	protected ProvInstancePriceTerm newTermAsNeeded(final X context, final String code) {
-		var previous = context.getPriceTerms().computeIfAbsent(code, c -> {
+		// Atomic creation: the regions and the services share the same new term
+		return context.getLocalPriceTerms().computeIfAbsent(code, c -> {
 			final var newTerm = new ProvInstancePriceTerm();
 			newTerm.setNode(context.getNode());
 			newTerm.setCode(c);
 			log.info("Would install term, code={}", code);
 			return newTerm;
 		});
-		return context.getLocalPriceTerms().computeIfAbsent(previous.getCode(),
-				c -> ObjectUtils.getIfNull(iptRepository.findBy("code", c), previous));
 	}
 
 	/**
@@ -415,49 +628,109 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 	}
 
 	/**
-	 * Download and install Saving Plan prices from the AWS endpoint.
+	 * Savings Plan prices installer of this service in a specific region.
 	 */
-	private void installSavingsPlan(final X context, final String api, final String serviceCode, final String endpoint,
-			final Map<String, P> previousOd) {
-		final var region = context.getRegion();
-		final var odTermCode = getOnDemandCode(previousOd);
-		if (odTermCode == null) {
-			// No OD found for SP/region
-			log.warn("AWS {} No OnDemand prices @{}, Savings Plan is ignored", api, region.getName());
-			return;
+	private class RegionalSavingsPlanInstaller implements SavingsPlanInstaller {
+
+		private final UpdateContext gContext;
+		private final X context;
+
+		/**
+		 * The regional context holding the OnDemand prices, cleaned up with the Savings Plan context.
+		 */
+		private final X odContext;
+		private final String api;
+		private final String serviceCode;
+		private final AwsPriceRegion spRegion;
+		private final Map<String, P> previousOd;
+		private final String odTermCode;
+		private final int oldCount;
+		private final List<String> skuErrors = new ArrayList<>();
+
+		/**
+		 * Duration of the installation, without the wait for the shared Savings Plan stage and its download.
+		 */
+		private long nanos;
+
+		private RegionalSavingsPlanInstaller(final UpdateContext gContext, final X context, final X odContext,
+				final String api, final String serviceCode, final AwsPriceRegion spRegion, final String odTermCode) {
+			this.gContext = gContext;
+			this.context = context;
+			this.odContext = odContext;
+			this.api = api;
+			this.serviceCode = serviceCode;
+			this.spRegion = spRegion;
+			this.previousOd = odContext.getLocals();
+			this.odTermCode = odTermCode;
+			this.oldCount = context.getLocals().size();
 		}
 
-		final var oldCount = context.getLocals().size();
-		try (var input = new BufferedInputStream(new URI(endpoint).toURL().openStream())) {
-			// Parse the remote prices stream: no buffering of the whole payload in memory, the Savings Plan index of
-			// some regions weighs hundreds of MB
-			final var sps = objectMapper.readValue(input, SavingsPlanPrice.class);
-			final var skus = sps.getProducts().stream().filter(this::filterSPProduct).map(SavingsPlanProduct::getSku)
-					.collect(Collectors.toSet());
-			final var skuErrors = sps.getTerms().getSavingsPlan().stream().filter(sp -> skus.contains(sp.getSku()))
-					.flatMap(sp -> installSavingsPlanRates(context, serviceCode, newSavingsPlanTerm(context, sp),
-							previousOd, odTermCode, sp.getRates()))
-					.filter(Objects::nonNull).toList();
-			if (!skuErrors.isEmpty()) {
-				// At least one SKU has not been resolved
-				log.warn("AWS {} Savings Plan import errors @{} with {} unresolved SKUs, first : {}", api,
-						region.getName(), skuErrors.size(), skuErrors.getFirst());
-			}
+		@Override
+		public String getEndpoint() {
+			return context.getUrl(spRegion.getUrl());
+		}
 
-			// Purge the SKUs
-			purgePrices(context);
+		@Override
+		public boolean accept(final SavingsPlanProduct product) {
+			return filterSPProduct(product);
+		}
 
-			// Update the prices according to the most recent generations
-			updateScoredPrices(context, api + " (scoring 2/2)");
-			nextStep(context, api + " (scoring 2/2)", region.getName(), 1);
-		} catch (final IOException | IllegalArgumentException | URISyntaxException use) {
+		@Override
+		public boolean accept(final SavingsPlanRate rate) {
+			return serviceCode.equals(rate.getDiscountedServiceCode());
+		}
+
+		@Override
+		public void install(final SavingsPlanTerm sp) {
+			final var start = metrics.start();
+			installSavingsPlanRates(context, serviceCode, newSavingsPlanTerm(context, sp), previousOd, odTermCode,
+					sp.getRates()).filter(Objects::nonNull).forEach(skuErrors::add);
+			nanos += System.nanoTime() - start;
+		}
+
+		@Override
+		public void complete() {
+			final var region = context.getRegion();
+			final var start = metrics.start();
+			try {
+				if (!skuErrors.isEmpty()) {
+					// At least one SKU has not been resolved
+					log.warn("AWS {} Savings Plan import errors @{} with {} unresolved SKUs, first : {}", api,
+							region.getName(), skuErrors.size(), skuErrors.getFirst());
+				}
+
+				// Purge the SKUs
+				purgePrices(context);
+
+				// Update the prices according to the most recent generations
+				timed(getApi(), region.getName(), "scoring",
+						() -> updateScoredPrices(context, api + " (scoring 2/2)"));
+				nextStep(context, api + " (scoring 2/2)", region.getName(), 1);
+				setImported(gContext, serviceCode, spRegion.getRegionCode(), KIND_SAVINGS_PLAN, spRegion.getUrl());
+			} catch (final IllegalArgumentException use) {
+				// Something goes wrong for this region, stop for this region
+				log.warn("AWS {} Savings Plan import failed @{}", api, region.getName(), use);
+				metrics.failed(getApi(), region.getName(), "savings-plan");
+			} finally {
+				nanos += System.nanoTime() - start;
+				report();
+			}
+		}
+
+		@Override
+		public void fail(final Exception e) {
 			// Something goes wrong for this region, stop for this region
-			log.warn("AWS {} Savings Plan import failed @{}", api, region.getName(), use);
-		} finally {
-			// Report
-			log.info("AWS {} Savings Plan import finished @{}: {} prices ({})", api, region.getName(),
+			log.warn("AWS {} Savings Plan import failed @{}", api, context.getRegion().getName(), e);
+			metrics.failed(getApi(), context.getRegion().getName(), "savings-plan");
+			report();
+		}
+
+		private void report() {
+			log.info("AWS {} Savings Plan import finished @{}: {} prices ({})", api, context.getRegion().getName(),
 					context.getPrices().size(), String.format("%+d", context.getPrices().size() - oldCount));
+			metrics.record(nanos, getApi(), context.getRegion().getName(), "savings-plan");
 			context.cleanup();
+			odContext.cleanup();
 		}
 	}
 
@@ -559,7 +832,7 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 			saveAsNeeded(context, price, price.getCost(), cost, (cR, c) -> {
 				price.setCost(cR);
 				saveInitialCost(context, price, c);
-			}, context.getPRepository()::save);
+			}, getWriter(context)::add);
 		} catch (final RuntimeException re) {
 			// Unexpected error for this price only: reported and skipped without stopping the import
 			log.warn("AWS Savings Plan price {} install failed", jsonPrice.getRateCode(), re);
@@ -622,26 +895,91 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 	}
 
 	/**
-	 * Install saving plan prices of target regions.
+	 * Indicate the Savings Plan prices of this service come from the Compute Savings Plan price file, shared with
+	 * the other compute services. These prices are installed by the shared Savings Plan stage, once the OnDemand
+	 * prices of all compute services are installed.
+	 *
+	 * @return <code>true</code> when the Savings Plan prices are installed by the shared Savings Plan stage.
+	 */
+	protected boolean isComputeSavingsPlan() {
+		return true;
+	}
+
+	/**
+	 * Return a new Savings Plan installer of a region.
 	 *
 	 * @param gContext    The current global context to handle lazy sub-entities creation.
-	 * @param endpoint    The endpoint price URL.
 	 * @param api         The current API name.
 	 * @param serviceCode The current service code
+	 * @param spRegion    The region configuration with Savings Plan price URLs.
 	 * @param region      The current region.
-	 * @param context     The regional update context.
+	 * @param context     The regional update context holding the OnDemand prices.
+	 * @return The Savings Plan installer of this region. <code>null</code> when there is no OnDemand price to rely
+	 * on.
 	 */
-	protected void installSavingsPlan(final UpdateContext gContext, final String endpoint, final String api,
-			final String serviceCode, final ProvLocation region, final X context) {
+	protected SavingsPlanInstaller newSavingsPlanInstaller(final UpdateContext gContext, final String api,
+			final String serviceCode, final AwsPriceRegion spRegion, final ProvLocation region, final X context) {
 		nextStep(context, api + " (saving plan)", region.getName(), 1);
-		log.info("AWS {} Savings Plan import started @{} ->{} ...", api, region.getName(), endpoint);
+		log.info("AWS {} Savings Plan import started @{} ->{} ...", api, region.getName(),
+				context.getUrl(spRegion.getUrl()));
+		final var odTermCode = getOnDemandCode(context.getLocals());
+		// Most of the OnDemand prices are read by the Savings Plan prices
+		context.getLocals().setPrefetch(true);
+		if (odTermCode == null) {
+			// No OD found for SP/region
+			log.warn("AWS {} No OnDemand prices @{}, Savings Plan is ignored", api, region.getName());
+			return null;
+		}
 		final var spContext = newContext(gContext, region, getSPTerm1(), getSPTerm2());
 		spContext.setLocalTypes(context.getLocalTypes());
 		spContext.setRegion(context.getRegion());
 		// Detach the bulk-loaded entities: they stay usable from the context, and the following flushes stay cheap
 		flushAndClear();
-		installSavingsPlan(spContext, api, serviceCode, endpoint, context.getLocals());
-		spContext.cleanup();
+		return new RegionalSavingsPlanInstaller(gContext, spContext, context, api, serviceCode, spRegion, odTermCode);
+	}
+
+	/**
+	 * Install saving plan prices of a region from a price file dedicated to this service.
+	 *
+	 * @param gContext    The current global context to handle lazy sub-entities creation.
+	 * @param api         The current API name.
+	 * @param serviceCode The current service code
+	 * @param spRegion    The region configuration with Savings Plan price URLs.
+	 * @param region      The current region.
+	 * @param context     The regional update context.
+	 */
+	private void installSavingsPlan(final UpdateContext gContext, final String api, final String serviceCode,
+			final AwsPriceRegion spRegion, final ProvLocation region, final X context) {
+		final var installer = newSavingsPlanInstaller(gContext, api, serviceCode, spRegion, region, context);
+		if (installer != null) {
+			installSavingsPlan(installer.getEndpoint(), List.of(installer));
+		}
+	}
+
+	/**
+	 * Defer the Savings Plan prices installation of a region to the shared Savings Plan stage. The OnDemand prices
+	 * are reloaded by this stage, in a context cleaned up by the installer, or at once when there is no installer.
+	 *
+	 * @param gContext    The current global context to handle lazy sub-entities creation.
+	 * @param api         The current API name.
+	 * @param serviceCode The current service code
+	 * @param spRegion    The region configuration with Savings Plan price URLs.
+	 * @param region      The current region.
+	 * @param term1       The expected OnDemand term name prefix alternative 1.
+	 * @param term2       The expected OnDemand term name prefix alternative 2.
+	 */
+	private void deferSavingsPlan(final UpdateContext gContext, final String api, final String serviceCode,
+			final AwsPriceRegion spRegion, final ProvLocation region, final String term1, final String term2) {
+		gContext.getSavingsPlans().computeIfAbsent(spRegion.getRegionCode(), r -> new ConcurrentLinkedQueue<>())
+				.add(() -> {
+					final var context = newContext(gContext, region, term1, term2);
+					final var installer = newSavingsPlanInstaller(gContext, api, serviceCode, spRegion, region,
+							context);
+					if (installer == null) {
+						context.cleanup();
+					}
+					return installer;
+				});
 	}
 
 	/**
@@ -656,6 +994,13 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 	protected abstract X newContext(final UpdateContext gContext, final ProvLocation region, final String term1,
 			final String term2);
 
+	/**
+	 * Return the API name of this service, used to tag the import metrics.
+	 *
+	 * @return The API name, such as <code>ec2</code>.
+	 */
+	protected abstract String getApi();
+
 	/**
 	 * Return the rate term code without SKU part of the current On Demand session.
 	 *
@@ -664,9 +1009,13 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 	 * <code>.JRTCKXETXF</code>. Return <code>null</code> when not found.
 	 */
 	protected String getOnDemandCode(final Map<String, P> previousOd) {
-		return previousOd.values().stream()
-				.filter(c -> c.getCode().indexOf('.') != -1 && TERM_ON_DEMAND.equals(c.getTerm().getName())).findFirst()
-				.map(P::getCode).map(c -> StringUtils.substringBefore(c.substring(c.indexOf('.')), "|")).orElse(null);
+		// Read the projections of the local prices when available, without materializing them
+		final var codes = previousOd instanceof AwsLocalPrices<P> locals
+				? locals.rows().filter(r -> TERM_ON_DEMAND.equals(r.termName())).map(AwsLocalPrice::code)
+				: previousOd.values().stream().filter(p -> TERM_ON_DEMAND.equals(p.getTerm().getName()))
+						.map(P::getCode);
+		return codes.filter(c -> c.indexOf('.') != -1).findFirst()
+				.map(c -> StringUtils.substringBefore(c.substring(c.indexOf('.')), "|")).orElse(null);
 	}
 
 	/**
@@ -742,7 +1091,7 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 		final var regions = getRegionalPrices(gContext, api, serviceCode);
 		final var spRegions = getRegionalSPPrices(gContext, api, serviceCode);
 		nextStep(gContext, api, null, 1);
-		newStream(regions.values()).forEach(r -> {
+		forEachRegion(regions.values(), AwsPriceRegion::getRegionCode, r -> {
 			try {
 				newProxy().installRegionalPrices(gContext, r, api, serviceCode, spRegions.get(r.getRegionCode()),
 						term1, term2);
@@ -752,17 +1101,21 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 			} catch (final RuntimeException re) {
 				// Unexpected error for this region only: reported and skipped without stopping the import
 				log.warn("AWS {} import failed @{}, this region is ignored", api, r.getRegionCode(), re);
+				metrics.failed(getApi(), r.getRegionCode(), "region");
 			}
 		});
 	}
 
 	/**
-	 * Create a new transactional (READ_UNCOMMITTED) process for OnDemand/SPE prices in a specific region.
+	 * Create a new transactional (READ_UNCOMMITTED) process for OnDemand/SPE prices in a specific region. The price
+	 * files already imported by a previous import are skipped, unless the force mode is enabled. The Savings Plan
+	 * prices depend on the OnDemand prices, and are only skipped when both are unchanged.
 	 *
 	 * @param gContext    The current global context.
 	 * @param pRegion     The region configuration with price URLs.
 	 * @param api         The current API name.
 	 * @param serviceCode The current service code
+	 * @param spRegion    The region configuration with Savings Plan price URLs. May be <code>null</code>.
 	 * @param term1       The expected term name prefix alternative 1.
 	 * @param term2       The expected term name prefix alternative 2.
 	 */
@@ -770,6 +1123,14 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 	public void installRegionalPrices(final UpdateContext gContext, final AwsPriceRegion pRegion, final String api,
 			final String serviceCode, final AwsPriceRegion spRegion, final String term1, final String term2) {
 		final var regionCode = pRegion.getRegionCode();
+		final var odUnchanged = isUnchanged(gContext, serviceCode, regionCode, KIND_ON_DEMAND, pRegion.getUrl());
+		if (odUnchanged && (spRegion == null
+				|| isUnchanged(gContext, serviceCode, regionCode, KIND_SAVINGS_PLAN, spRegion.getUrl()))) {
+			// Nothing to do for this region
+			skipRegionalPrices(gContext, api, regionCode, spRegion != null);
+			return;
+		}
+
 		final var endpoint = getCsvUrl(gContext, pRegion.getUrl());
 		log.info("AWS {} OnDemand/Reserved import started for @{} -> {} ...", api, regionCode, endpoint);
 		nextStep(gContext, api, regionCode, 0);
@@ -781,57 +1142,258 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 
 		// Track the created instance to cache partial costs
 		final var context = newContext(gContext, region, term1, term2);
+		final boolean succeed;
+		if (odUnchanged) {
+			// Only the Savings Plan prices have changed, the previous OnDemand prices are reused as is
+			log.info("AWS {} OnDemand/Reserved prices @{} are unchanged, skipped", api, regionCode);
+			setUnchanged(gContext, api, regionCode);
+			succeed = true;
+		} else {
+			succeed = installRegionalPrices(context, endpoint, api);
+			if (succeed) {
+				setImported(gContext, serviceCode, regionCode, KIND_ON_DEMAND, pRegion.getUrl());
+			}
+		}
+
+		// Saving plans part: only when OD succeed
+		if (spRegion == null) {
+			nextStep(context, api, null, 1);
+		} else if (succeed) {
+			if (odUnchanged) {
+				// The scored OnDemand prices are unchanged too
+				skipScoredPrices(context, api + " (scoring 1/2)", region.getName());
+			} else {
+				timed(getApi(), region.getName(), "scoring",
+						() -> updateScoredPrices(context, api + " (scoring 1/2)"));
+			}
+
+			// Saving plans
+			if (isComputeSavingsPlan()) {
+				deferSavingsPlan(gContext, api, serviceCode, spRegion, region, term1, term2);
+			} else {
+				installSavingsPlan(gContext, api, serviceCode, spRegion, region, context);
+			}
+		} else {
+			nextStep(context, api, null, 2);
+		}
+
+		context.cleanup();
+	}
+
+	/**
+	 * Download and install the OnDemand/Reserved prices of a region, then purge the prices no more available.
+	 *
+	 * @param context  The regional update context.
+	 * @param endpoint The CSV prices URL.
+	 * @param api      The current API name.
+	 * @return <code>true</code> when the prices have been fully installed.
+	 */
+	private boolean installRegionalPrices(final X context, final String endpoint, final String api) {
+		final var region = context.getRegion();
 		final var oldCount = context.getLocals().size();
-		context.setPreviousStorage(spRepository.findByLocation(context.getNode().getId(), regionCode).stream()
+		final var sample = metrics.start();
+		context.setPreviousStorage(spRepository.findByLocation(context.getNode().getId(), region.getName()).stream()
 				.collect(Collectors.toMap(ProvStoragePrice::getCode, Function.identity())));
 		// Detach the bulk-loaded entities: they stay usable from the context, and the following flushes stay cheap
 		flushAndClear();
 
 		// Get the remote prices stream
-		var succeed = false;
-		try (var reader = new BufferedReader(new InputStreamReader(new URI(endpoint).toURL().openStream()))) {
-			// Pipe to the CSV reader
-			final var csvReader = newReader(reader);
-
-			// Build the AWS instance prices from the CSV
-			var csv = csvReader.read();
-			while (csv != null) {
-
-				// Persist this price
-				if (isEnabled(context, csv)) {
-					installPrice(context, csv);
+		try {
+			final var chunkSize = getCsvChunkSize();
+			if (chunkSize > 0) {
+				try (var spool = newSpool(endpoint, chunkSize)) {
+					installPrices(context, spool);
+				}
+			} else {
+				try (var input = openStream(endpoint)) {
+					final var csvReader = newReader(new BufferedReader(new InputStreamReader(input)));
+					csvReader.setReuse(isCsvReuse());
+					installPrices(context, csvReader);
 				}
-
-				// Read the next one
-				csv = csvReader.read();
 			}
+			reportUnpaired(context);
+			flushPrices(context);
 			context.getPRepository().flush();
 
 			// Purge the SKUs
 			purgePrices(context);
-			succeed = true;
-		} catch (final IOException | URISyntaxException use) {
+			return true;
+		} catch (final IOException use) {
 			// Something goes wrong for this region, stop for this region
 			log.warn("AWS {} OnDemand/Reserved import failed @{}", api, region.getName(), use);
+			metrics.failed(getApi(), region.getName(), "prices");
+			return false;
 		} finally {
 			// Report
 			log.info("AWS {} OnDemand/Reserved import finished @{}: {} prices ({})", api, region.getName(),
 					context.getPrices().size(), String.format("%+d", context.getPrices().size() - oldCount));
+			metrics.stop(sample, getApi(), region.getName(), "prices");
 		}
+	}
 
-		// Saving plans part: only when OD succeed
-		if (spRegion == null) {
-			nextStep(context, api, null, 1);
-		} else if (succeed) {
-			updateScoredPrices(context, api + " (scoring 1/2)");
+	/**
+	 * Install the prices read sequentially from the given CSV reader.
+	 *
+	 * @param context   The regional update context.
+	 * @param csvReader The CSV price reader.
+	 * @throws IOException When the CSV content cannot be read.
+	 */
+	private void installPrices(final X context, final R csvReader) throws IOException {
+		// Build the AWS instance prices from the CSV
+		var accepted = 0L;
+		var csv = csvReader.read();
+		while (csv != null) {
+			installEnabledPrice(context, csv);
+			accepted++;
+
+			// Read the next one
+			csv = csvReader.read();
+		}
+		metrics.rows(getApi(), context.getRegion().getName(), "prices", csvReader.getRows(), accepted);
+	}
 
-			// Saving plans
-			installSavingsPlan(gContext, context.getUrl(spRegion.getUrl()), api, serviceCode, region, context);
+	/**
+	 * Return the CSV content split into chunks. A mirrored file is split in place, otherwise the content is spooled to
+	 * a temporary file.
+	 *
+	 * @param endpoint  The CSV prices URL.
+	 * @param chunkSize The minimal size of a chunk, in bytes.
+	 * @return The CSV content split into chunks.
+	 * @throws IOException When the CSV content cannot be read.
+	 */
+	private AwsCsvSpool newSpool(final String endpoint, final long chunkSize) throws IOException {
+		final var channel = mirror.openChannel(endpoint);
+		if (channel == null) {
+			return AwsCsvSpool.download(openStream(endpoint), chunkSize);
+		}
+		return AwsCsvSpool.of(channel, chunkSize);
+	}
+
+	/**
+	 * Install the prices of the given CSV content split into chunks. The chunks are read and filtered in parallel by
+	 * the pool shared by all regions, within a window bounding the memory. The prices are installed by the current
+	 * thread in the CSV order, so the prices split into several rows are paired as in the sequential mode, even across
+	 * chunks.
+	 *
+	 * @param context The regional update context.
+	 * @param spool   The CSV content split into chunks.
+	 * @throws IOException When the CSV content cannot be read.
+	 */
+	private void installPrices(final X context, final AwsCsvSpool spool) throws IOException {
+		final var first = spool.open(0);
+		final var csvReader = newReader(first);
+		final var pool = getChunkParser();
+		final var read = new LongAdder();
+		final var window = new ArrayDeque<ForkJoinTask<List<C>>>();
+		var accepted = 0L;
+		try {
+			var next = 0;
+			do {
+				// Keep the window full
+				while (next < spool.size() && window.size() <= pool.getParallelism()) {
+					final var chunk = next++;
+					window.add(pool.submit(() -> readChunk(spool, csvReader, chunk == 0 ? first : null, chunk, read)));
+				}
+
+				// Install the prices of the oldest chunk
+				final var prices = joinChunk(window.removeFirst());
+				for (final var csv : prices) {
+					installEnabledPrice(context, csv);
+				}
+				accepted += prices.size();
+			} while (!window.isEmpty());
+		} finally {
+			// Release the pool from the chunks of a failed import
+			window.forEach(t -> t.cancel(true));
+		}
+		metrics.rows(getApi(), context.getRegion().getName(), "prices", read.sum(), accepted);
+	}
+
+	/**
+	 * Read the accepted prices of a chunk.
+	 *
+	 * @param spool     The spooled CSV content.
+	 * @param csvReader The CSV reader of the first chunk, with the resolved header.
+	 * @param opened    The opened chunk reader. When <code>null</code>, the chunk is opened from the spool.
+	 * @param chunk     The chunk index.
+	 * @param read      The counter of the read rows, accepted or not.
+	 * @return The accepted prices of this chunk.
+	 */
+	private List<C> readChunk(final AwsCsvSpool spool, final R csvReader, final BufferedReader opened,
+			final int chunk, final LongAdder read) {
+		try (var reader = opened == null ? spool.open(chunk) : opened) {
+			final var chunkReader = csvReader.newReader(reader);
+			final var prices = new ArrayList<C>();
+			var csv = chunkReader.read();
+			while (csv != null) {
+				prices.add(csv);
+				csv = chunkReader.read();
+			}
+			read.add(AbstractAwsCsvForBean.getRows(chunkReader));
+			return prices;
+		} catch (final IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	/**
+	 * Wait for the prices of a chunk.
+	 *
+	 * @param task The chunk task.
+	 * @return The accepted prices of this chunk.
+	 * @throws IOException When the CSV content cannot be read.
+	 */
+	private List<C> joinChunk(final ForkJoinTask<List<C>> task) throws IOException {
+		try {
+			return task.join();
+		} catch (final UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Install a price when enabled.
+	 */
+	private void installEnabledPrice(final X context, final C csv) {
+		// Persist this price
+		if (isEnabled(context, csv)) {
+			installPrice(context, csv);
+		}
+	}
+
+	/**
+	 * Skip a region whose OnDemand and Savings Plan prices are unchanged since the previous import. The progress is
+	 * reported as the complete import of this region would do.
+	 *
+	 * @param gContext    The current global context.
+	 * @param api         The current API name.
+	 * @param regionCode  The API region code.
+	 * @param savingsPlan When <code>true</code>, this region has Savings Plan prices.
+	 */
+	private void skipRegionalPrices(final UpdateContext gContext, final String api, final String regionCode,
+			final boolean savingsPlan) {
+		log.info("AWS {} prices @{} are unchanged since the previous import, skipped", api, regionCode);
+		setUnchanged(gContext, api, regionCode);
+		nextStep(gContext, api + " (unchanged)", regionCode, 0);
+		if (savingsPlan) {
+			skipScoredPrices(gContext, api + " (scoring 1/2)", regionCode);
+			nextStep(gContext, api + " (saving plan)", regionCode, 1);
+			skipScoredPrices(gContext, api + " (scoring 2/2)", regionCode);
+			nextStep(gContext, api + " (scoring 2/2)", regionCode, 1);
 		} else {
-			nextStep(context, api, null, 2);
+			nextStep(gContext, api, null, 1);
 		}
+	}
 
-		context.cleanup();
+	/**
+	 * Report the progress of a skipped scoring, as {@link #updateScoredPrices(AbstractLocalContext, String)} would do.
+	 *
+	 * @param context The current context.
+	 * @param api     The current API name.
+	 * @param region  The region name.
+	 */
+	protected void skipScoredPrices(final AbstractUpdateContext context, final String api, final String region) {
+		nextStep(context, api, region, 1);
 	}
 
 	/**
@@ -881,70 +1443,104 @@ public abstract class AbstractAwsPriceImportVm<T extends AbstractInstanceType, P
 			}
 		});
 
-		// For each price, check the matchType's price
-		var progressIndex = 0;
-		var lastProgressPercentage = 0;
-		var workload = context.getLocals().size();
-		for (var p : context.getLocals().values()) {
+		// Single pass: index the constraints of each price with its type code, and keep the prices whose type is not
+		// the most recent generation
+		final var typeConstraints = new HashSet<List<Object>>();
+		final var candidates = new ArrayList<P>();
+		final var progressIndex = new AtomicInteger();
+		final var lastProgressPercentage = new AtomicInteger();
+		final var workload = context.getLocals().size();
+		context.getLocals().forEachPrice(p -> {
 			// Reporting every 10 points of progression
-			progressIndex++;
-			var progressPercent = progressIndex * 100 / workload;
-			if (progressPercent - lastProgressPercentage > 10) {
-				lastProgressPercentage = progressPercent;
+			final var progressPercent = progressIndex.incrementAndGet() * 100 / workload;
+			if (progressPercent - lastProgressPercentage.get() > 10) {
+				lastProgressPercentage.set(progressPercent);
 				log.info("AWS {} Progress {}%", api, progressPercent);
 			}
-
-			var type = p.getType();
-			var typeCode = type.getCode();
-			var matchType = typeToMatch.get(typeCode);
-			if (matchType == null) {
-				// Skip reference for this orphan price or unmanaged type
-				continue;
-			}
-			var scoredTypes = matchToScoredTypes.get(matchType);
-			if (scoredTypes == null) {
-				log.warn("AWS {} Ignore price '{}', unable to extract scored types", api, p.getCode());
-				continue;
-			}
-			var p1TypeNatural = scoredTypes.values().stream().findFirst().get();
-			if (p1TypeNatural.getCode().equals(typeCode)) {
-				log.debug("AWS {} Already best type '{}' match of '{}' for price '{}'", api, typeCode, matchType, p.getCode());
-				continue;
+			typeConstraints.add(toTypeConstraints(p));
+			if (getScoredTypes(api, p, typeToMatch, matchToScoredTypes) != null) {
+				candidates.add(p);
 			}
+		});
 
-			// No virtual functions there for performance, keep the old "for"
-			T p1TypeByDeepMatch = null;
-			for (var t : scoredTypes.values()) {
-				for (var pp : context.getLocals().values()) {
-					if (pp.getType().getCode().equals(t.getCode()) && priceMatchConstraintButType(pp, p)) {
-						p1TypeByDeepMatch = t;
-						break;
-					}
-				}
-				if (p1TypeByDeepMatch != null) {
-					break;
-				}
-			}
-			if (p1TypeByDeepMatch == null) {
-				log.warn("AWS {} Failed to find top type '{}' prices from price '{}", api, typeCode, p.getCode());
-			} else if (!Strings.CS.equals(p.getType().getCode(), p1TypeByDeepMatch.getCode())
-					&& (p.getP1Type() == null || !Strings.CS.equals(p.getP1Type().getCode(), p1TypeByDeepMatch.getCode()))) {
-				p.setP1Type(p1TypeByDeepMatch);
-				context.getPRepository().save(p);
+		// For each kept price, check the matchType's price
+		candidates.forEach(p -> updateScoredPrice(context, api, p,
+				getScoredTypes(api, p, typeToMatch, matchToScoredTypes), typeConstraints));
+		flushPrices(context);
+	}
+
+	/**
+	 * Return the scored types of the type of a price, when this type is not the most recent generation.
+	 *
+	 * @return The scored types, most recent generation first. <code>null</code> when the type of this price is
+	 *         unmanaged or already the best one.
+	 */
+	private Map<Integer, T> getScoredTypes(final String api, final P p, final Map<String, String> typeToMatch,
+			final Map<String, Map<Integer, T>> matchToScoredTypes) {
+		var typeCode = p.getType().getCode();
+		var matchType = typeToMatch.get(typeCode);
+		if (matchType == null) {
+			// Skip reference for this orphan price or unmanaged type
+			return null;
+		}
+		var scoredTypes = matchToScoredTypes.get(matchType);
+		if (scoredTypes == null) {
+			log.warn("AWS {} Ignore price '{}', unable to extract scored types", api, p.getCode());
+			return null;
+		}
+		var p1TypeNatural = scoredTypes.values().stream().findFirst().get();
+		if (p1TypeNatural.getCode().equals(typeCode)) {
+			log.debug("AWS {} Already best type '{}' match of '{}' for price '{}'", api, typeCode, matchType, p.getCode());
+			return null;
+		}
+		return scoredTypes;
+	}
+
+	/**
+	 * Update the reference to the best type of a price, when its type is not the most recent generation.
+	 */
+	private void updateScoredPrice(final X context, final String api, final P p, final Map<Integer, T> scoredTypes,
+			final Set<List<Object>> typeConstraints) {
+		// The first generation having a price with the same constraints, the type code being the first key part
+		final var key = toTypeConstraints(p);
+		T p1TypeByDeepMatch = null;
+		for (var t : scoredTypes.values()) {
+			key.set(0, t.getCode());
+			if (typeConstraints.contains(key)) {
+				p1TypeByDeepMatch = t;
+				break;
 			}
 		}
+		if (p1TypeByDeepMatch == null) {
+			log.warn("AWS {} Failed to find top type '{}' prices from price '{}", api, p.getType().getCode(), p.getCode());
+		} else if (!Strings.CS.equals(p.getType().getCode(), p1TypeByDeepMatch.getCode())
+				&& (p.getP1Type() == null || !Strings.CS.equals(p.getP1Type().getCode(), p1TypeByDeepMatch.getCode()))) {
+			p.setP1Type(p1TypeByDeepMatch);
+			getWriter(context).add(p);
+		}
+	}
+
+	/**
+	 * Return the constraints of a price by ignoring its type and costs. Two prices having equal constraints are
+	 * interchangeable, but their type.
+	 *
+	 * @param price The price.
+	 * @return The mutable constraint values of this price.
+	 */
+	protected List<Object> toConstraints(final P price) {
+		return new ArrayList<>(Arrays.asList(price.getTerm().getId(), price.getLicense()));
 	}
 
 	/**
-	 * Verify 2 prices have the same constraints by ignoring their type and costs.
+	 * Return the type code followed by the constraints of a price.
 	 *
-	 * @param p1 One price.
-	 * @param p2 Another price
-	 * @return <code>true</code> when the 2 prices are the same.
+	 * @param price The price.
+	 * @return The type code and the constraints of this price. The type code can be replaced.
 	 */
-	protected boolean priceMatchConstraintButType(final P p1, P p2) {
-		return p1.getTerm().getId().equals(p2.getTerm().getId())
-				&& Strings.CS.equals(p1.getLicense(), p2.getLicense());
+	private List<Object> toTypeConstraints(final P price) {
+		final var key = toConstraints(price);
+		key.addFirst(price.getType().getCode());
+		return key;
 	}
 
 	/**
@@ -10,6 +10,8 @@ import org.ligoj.app.plugin.prov.model.AbstractInstanceType;
 import org.ligoj.app.plugin.prov.model.AbstractQuoteVmOs;
 import org.ligoj.app.plugin.prov.model.AbstractTermPriceVmOs;
 
+import java.util.List;
+
 /**
  * The computing part of AWS catalog import having an OS.
  *
@@ -40,8 +42,9 @@ public abstract class AbstractAwsPriceImportVmOs<T extends AbstractInstanceType,
 	}
 
 	@Override
-	protected boolean priceMatchConstraintButType(final P p1, P p2) {
-		return super.priceMatchConstraintButType(p1, p2)
-				&& p1.getOs() == p2.getOs();
+	protected List<Object> toConstraints(final P price) {
+		final var constraints = super.toConstraints(price);
+		constraints.add(price.getOs());
+		return constraints;
 	}
 }
@@ -0,0 +1,80 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog.vm;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.ligoj.app.plugin.aws.catalog.AbstractAwsImport;
+import org.ligoj.app.plugin.aws.catalog.UpdateContext;
+import org.ligoj.app.plugin.prov.catalog.ImportCatalog;
+import org.ligoj.bootstrap.core.SpringUtils;
+import org.ligoj.bootstrap.core.resource.TechnicalException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The shared Compute Savings Plan price service for AWS. The Compute Savings Plan price file of a region covers EC2,
+ * Fargate and Lambda: each file is downloaded and parsed only once, and its rates are routed to the installers of
+ * these services. This stage must run after the OnDemand prices of these services.
+ */
+@Slf4j
+@Component
+public class AwsPriceImportSavingsPlan extends AbstractAwsImport implements ImportCatalog<UpdateContext> {
+
+	private static final String API = "savings-plan";
+
+	@Override
+	public void install(final UpdateContext context) {
+		nextStep(context, API, null, 0);
+		final var regions = new ArrayList<>(context.getSavingsPlans().keySet());
+		log.info("AWS {} started for {} regions ...", API, regions.size());
+		forEachRegion(regions, Function.identity(), r -> {
+			try {
+				newProxy().installRegionalPrices(context, r);
+			} catch (final TechnicalException te) {
+				// Structural failure: the whole import must stop
+				throw te;
+			} catch (final RuntimeException re) {
+				// Unexpected error for this region only: reported and skipped without stopping the import
+				log.warn("AWS {} import failed @{}, this region is ignored", API, r, re);
+				metrics.failed(API, r, "region");
+			}
+		});
+		log.info("AWS {} finished", API);
+	}
+
+	/**
+	 * Create a new transactional (READ_UNCOMMITTED) process for the Savings Plan prices of all deferred services in
+	 * a specific region.
+	 *
+	 * @param context    The current global context.
+	 * @param regionCode The API region code.
+	 */
+	@Transactional(propagation = Propagation.SUPPORTS, isolation = Isolation.READ_UNCOMMITTED)
+	public void installRegionalPrices(final UpdateContext context, final String regionCode) {
+		// Group the installers by price file, usually a single one for all compute services
+		context.getSavingsPlans().remove(regionCode).stream().map(Supplier::get).filter(Objects::nonNull)
+				.collect(Collectors.groupingBy(SavingsPlanInstaller::getEndpoint, LinkedHashMap::new,
+						Collectors.toList()))
+				.forEach(this::installSavingsPlan);
+	}
+
+	/**
+	 * Return the proxy of this class.
+	 *
+	 * @return The proxy of this class.
+	 */
+	public AwsPriceImportSavingsPlan newProxy() {
+		return SpringUtils.getBean(AwsPriceImportSavingsPlan.class);
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog.vm;
+
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanProduct;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanRate;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanTerm;
+
+/**
+ * Savings Plan prices installer of a service in a specific region, fed by the terms of a Savings Plan price file.
+ * Several installers can share the same price file, downloaded and parsed only once.
+ */
+public interface SavingsPlanInstaller {
+
+	/**
+	 * Return the Savings Plan price file URL.
+	 *
+	 * @return The Savings Plan price file URL.
+	 */
+	String getEndpoint();
+
+	/**
+	 * Return <code>true</code> when the Savings Plan product is accepted by this installer.
+	 *
+	 * @param product The product to accept.
+	 * @return <code>true</code> when the Savings Plan product is accepted.
+	 */
+	boolean accept(SavingsPlanProduct product);
+
+	/**
+	 * Return <code>true</code> when the Savings Plan rate is accepted by this installer.
+	 *
+	 * @param rate The rate to accept.
+	 * @return <code>true</code> when the Savings Plan rate is accepted.
+	 */
+	boolean accept(SavingsPlanRate rate);
+
+	/**
+	 * Install the rates of a term whose product has been accepted.
+	 *
+	 * @param term The Savings Plan term with its accepted rates.
+	 */
+	void install(SavingsPlanTerm term);
+
+	/**
+	 * Complete the installation once all terms have been installed: purge and scoring.
+	 */
+	void complete();
+
+	/**
+	 * Abort the installation after a failure of the price file processing.
+	 *
+	 * @param e The failure.
+	 */
+	void fail(Exception e);
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog.vm;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ligoj.app.plugin.aws.catalog.AwsPriceMirror;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanLease;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanProduct;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanRate;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanTerm;
+
+import lombok.extern.slf4j.Slf4j;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Streaming reader of a Savings Plan price file. The products are reduced to the SKU set accepted by each installer,
+ * then the terms are read one at a time: only the rates accepted by at least one installer are bound, and the whole
+ * document is never held in memory. When the terms are listed before the products, a second pass reads the terms. A
+ * file without terms is read once.
+ */
+@Slf4j
+public class SavingsPlanReader {
+
+	private final ObjectMapper mapper;
+
+	/**
+	 * Accepted product SKUs of each installer.
+	 */
+	private final Map<SavingsPlanInstaller, Set<String>> skus = new IdentityHashMap<>();
+
+	/**
+	 * When <code>true</code>, the products have been read.
+	 */
+	private boolean products;
+
+	/**
+	 * Constructor with the installers sharing the price file.
+	 *
+	 * @param mapper     The object mapper used to bind the products and the rates.
+	 * @param installers The installers sharing the price file.
+	 */
+	public SavingsPlanReader(final ObjectMapper mapper, final Collection<SavingsPlanInstaller> installers) {
+		this.mapper = mapper;
+		installers.forEach(i -> skus.put(i, new HashSet<>()));
+	}
+
+	/**
+	 * Read the Savings Plan price file and feed the installers with their accepted terms.
+	 *
+	 * @param url    The Savings Plan price file URL.
+	 * @param mirror The price file fetch layer.
+	 * @throws IOException When the price file cannot be read.
+	 */
+	public void read(final String url, final AwsPriceMirror mirror) throws IOException {
+		if (read(url, mirror, true) && products) {
+			// The terms are listed before the products, read again only the terms
+			log.info("AWS Savings Plan terms listed before the products, second pass ->{}", url);
+			read(url, mirror, false);
+		}
+	}
+
+	/**
+	 * Read a pass of the Savings Plan price file.
+	 *
+	 * @param url       The Savings Plan price file URL.
+	 * @param mirror    The price file fetch layer.
+	 * @param firstPass When <code>true</code>, this is the first pass and the products are read.
+	 * @return <code>true</code> when the terms have been skipped, being listed before the products.
+	 * @throws IOException When the price file cannot be read.
+	 */
+	private boolean read(final String url, final AwsPriceMirror mirror, final boolean firstPass)
+			throws IOException {
+		var skipped = false;
+		try (var input = new BufferedInputStream(mirror.open(url)); var parser = mapper.createParser(input)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new IllegalArgumentException("Savings Plan prices are not a JSON object: " + url);
+			}
+			while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+				final var name = parser.currentName();
+				parser.nextToken();
+				if (firstPass && "products".equals(name)) {
+					readProducts(parser);
+				} else if (products && "terms".equals(name)) {
+					readTerms(parser);
+				} else {
+					skipped |= "terms".equals(name);
+					parser.skipChildren();
+				}
+			}
+		}
+		return skipped;
+	}
+
+	private void readProducts(final JsonParser parser) {
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			final var product = mapper.readValue(parser, SavingsPlanProduct.class);
+			skus.forEach((i, s) -> {
+				if (i.accept(product)) {
+					s.add(product.getSku());
+				}
+			});
+		}
+		products = true;
+	}
+
+	private void readTerms(final JsonParser parser) {
+		while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+			final var name = parser.currentName();
+			parser.nextToken();
+			if ("savingsPlan".equals(name)) {
+				while (parser.nextToken() == JsonToken.START_OBJECT) {
+					readTerm(parser);
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * Read a term and its rates, then install it with the installers accepting its product.
+	 */
+	private void readTerm(final JsonParser parser) {
+		final var term = new SavingsPlanTerm();
+		final var rates = new IdentityHashMap<SavingsPlanInstaller, List<SavingsPlanRate>>();
+		while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+			final var name = parser.currentName();
+			parser.nextToken();
+			switch (name) {
+				case "sku" -> term.setSku(parser.getValueAsString());
+				case "description" -> term.setDescription(parser.getValueAsString());
+				case "leaseContractLength" -> term.setLeaseContractLength(mapper.readValue(parser, SavingsPlanLease.class));
+				case "rates" -> readRates(parser, term, rates);
+				default -> parser.skipChildren();
+			}
+		}
+
+		// Each installer receives its own rates
+		skus.forEach((i, s) -> {
+			if (s.contains(term.getSku())) {
+				final var spTerm = new SavingsPlanTerm();
+				spTerm.setSku(term.getSku());
+				spTerm.setDescription(term.getDescription());
+				spTerm.setLeaseContractLength(term.getLeaseContractLength());
+				spTerm.setRates(rates.getOrDefault(i, List.of()));
+				i.install(spTerm);
+			}
+		});
+	}
+
+	/**
+	 * Read the rates of a term. Only the rates accepted by an installer are kept.
+	 */
+	private void readRates(final JsonParser parser, final SavingsPlanTerm term,
+			final Map<SavingsPlanInstaller, List<SavingsPlanRate>> rates) {
+		// When the SKU is already known, the installers not accepting this term are excluded
+		final var installers = skus.entrySet().stream()
+				.filter(e -> term.getSku() == null || e.getValue().contains(term.getSku())).map(Map.Entry::getKey)
+				.toList();
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			final var rate = mapper.readValue(parser, SavingsPlanRate.class);
+			installers.stream().filter(i -> i.accept(rate))
+					.forEach(i -> rates.computeIfAbsent(i, k -> new ArrayList<>()).add(rate));
+		}
+	}
+}
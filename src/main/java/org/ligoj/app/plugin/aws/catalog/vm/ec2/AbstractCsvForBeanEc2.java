@@ -5,18 +5,14 @@ package org.ligoj.app.plugin.aws.catalog.vm.ec2;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.Reader;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.ligoj.app.plugin.aws.catalog.AbstractAwsCsvForBean;
-import org.ligoj.app.plugin.aws.catalog.AbstractAwsCsvReader;
 import org.ligoj.app.plugin.aws.catalog.vm.AbstractAwsVmPrice;
-import org.ligoj.bootstrap.core.csv.CsvBeanReader;
 
 /**
  * Read AWS EC2 CSV input, skipping the AWS headers and non instance type rows.
@@ -60,24 +56,4 @@ public abstract class AbstractCsvForBeanEc2<P extends AbstractAwsVmPrice> extend
 				.collect(Collectors.toMap(Entry::getKey, Entry::getValue)), type);
 	}
 
-	@Override
-	protected CsvBeanReader<P> newCsvReader(final Reader reader, final String[] headers, final Class<P> beanType) {
-		return new AbstractAwsCsvReader<>(reader, headers, beanType) {
-
-			@Override
-			protected boolean isValidRaw(final List<String> rawValues) {
-				return AbstractCsvForBeanEc2.this.isValidRaw(rawValues);
-			}
-
-		};
-	}
-
-	/**
-	 * Validate a CSV raw
-	 *
-	 * @param rawValues The row raw values.
-	 * @return <code>true</code> when this row is accepted.
-	 */
-	public abstract boolean isValidRaw(final List<String> rawValues);
-
 }
@@ -9,6 +9,7 @@ import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
 import org.ligoj.app.plugin.aws.ProvAwsPluginResource;
+import org.ligoj.app.plugin.aws.catalog.AwsFingerprint;
 import org.ligoj.app.plugin.aws.catalog.AwsPriceImportBase;
 import org.ligoj.app.plugin.aws.catalog.UpdateContext;
 import org.ligoj.app.plugin.aws.catalog.vm.AbstractAwsPriceImportVmOs;
@@ -21,7 +22,9 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
@@ -75,13 +78,18 @@ public class AwsPriceImportEc2 extends
 		context.setValidOs(Pattern.compile(configuration.get(CONF_OS, ".*"), Pattern.CASE_INSENSITIVE));
 		context.setValidInstanceType(Pattern.compile(configuration.get(CONF_ITYPE, ".*"), Pattern.CASE_INSENSITIVE));
 
+		// Preload the instance types shared by the regions
+		context.getRegistry(ProvInstanceType.class, () -> itRepository.findAllBy(BY_NODE, context.getNode()));
+		// Detach the bulk-loaded entities: they stay usable from the context, and the following flushes stay cheap
+		flushAndClear();
+
 		// Install OnDemand and reserved prices
 		installPrices(context, API, SERVICE_CODE, TERM_ON_DEMAND, TERM_RESERVED);
 
 		// Install the SPOT EC2 prices
 		nextStep(context, API_SPOT, null, 0);
 		installJsonPrices(context, API_SPOT, configuration.get(CONF_URL_EC2_PRICES_SPOT, EC2_PRICES_SPOT),
-				SpotPrices.class, r -> newProxy().installSpotPrices(context, r));
+				SpotRegion.class, r -> newProxy().installSpotPrices(context, r));
 
 		nextStep(context, API_SPOT, null, 1);
 	}
@@ -89,11 +97,11 @@ public class AwsPriceImportEc2 extends
 	@Override
 	protected void installPrice(final LocalEc2Context context, final AwsEc2Price csv) {
 		if (csv.getFamily().startsWith("Compute Instance")) {
-			if (!handlePartialCost(context, csv)) {
+			if (!handlePartialCost(context, csv) && !isUnchanged(context, csv)) {
 				// No up-front, cost is fixed
 				final var price = newPrice(context, csv);
 				final var cost = csv.getPricePerUnit() * context.getHoursMonth();
-				saveAsNeeded(context, price, cost, context.getPRepository());
+				saveAsNeeded(context, price, cost, counted(context, context.getPRepository()));
 			}
 		} else {
 			// Check the volume API
@@ -119,7 +127,7 @@ public class AwsPriceImportEc2 extends
 			});
 
 			// Update the price as needed
-			saveAsNeeded(context, price, csv.getPricePerUnit(), spRepository);
+			saveAsNeeded(context, price, csv.getPricePerUnit(), counted(context, spRepository));
 		}
 	}
 
@@ -143,6 +151,7 @@ public class AwsPriceImportEc2 extends
 	@Transactional(propagation = Propagation.SUPPORTS, isolation = Isolation.READ_UNCOMMITTED)
 	public void installSpotPrices(final UpdateContext gContext, final SpotRegion r) {
 		nextStep(gContext, "ec2 (spot)", r.getRegion(), 0);
+		final var sample = metrics.start();
 		final var region = locationRepository.findByName(gContext.getNode().getId(), r.getRegion());
 
 		// Get previous prices for this location
@@ -162,6 +171,7 @@ public class AwsPriceImportEc2 extends
 
 		// Purge the SKUs
 		purgePrices(context);
+		metrics.stop(sample, API, r.getRegion(), "spot");
 		nextStep(gContext, "ec2 (spot)", r.getRegion(), 0);
 	}
 
@@ -206,7 +216,12 @@ public class AwsPriceImportEc2 extends
 				.filter(op -> isEnabledOs(context, op.getOs())).forEach(op -> {
 
 					// Build the key for this spot
-					final var price = context.getLocals().computeIfAbsent(baseCode + op.getOs(), c -> {
+					final var code = baseCode + op.getOs();
+					final var usd = op.getPrices().get("USD");
+					if (isUnchanged(context, code, AwsFingerprint.hash(toFingerprint(context, code), usd))) {
+						return;
+					}
+					final var price = context.getLocals().computeIfAbsent(code, c -> {
 						final var p = context.newPrice(c);
 						p.setType(type);
 						p.setTerm(term);
@@ -218,8 +233,8 @@ public class AwsPriceImportEc2 extends
 					});
 
 					// Update the price as needed
-					final var cost = Double.parseDouble(op.getPrices().get("USD"));
-					saveAsNeeded(context, price, cost * context.getHoursMonth(), ipRepository);
+					final var cost = Double.parseDouble(usd);
+					saveAsNeeded(context, price, cost * context.getHoursMonth(), counted(context, ipRepository));
 				});
 	}
 
@@ -253,18 +268,29 @@ public class AwsPriceImportEc2 extends
 		mapSoftware.putAll(toMap("aws-software.json", MAP_STR));
 	}
 
+	@Override
+	protected String getApi() {
+		return API;
+	}
+
 	@Override
 	protected LocalEc2Context newContext(final UpdateContext gContext, final ProvLocation region, final String term1,
 			final String term2) {
-		return new LocalEc2Context(gContext, iptRepository, itRepository, ipRepository, qiRepository, region, term1,
-				term2);
+		return new LocalEc2Context(gContext, entityManager, iptRepository, itRepository, ipRepository, qiRepository,
+				region, term1, term2);
+	}
+
+	@Override
+	protected List<Pattern> getVersionFilters(final UpdateContext context) {
+		return Arrays.asList(context.getValidRegion(), context.getValidOs(), context.getValidInstanceType());
 	}
 
 	@Override
-	protected boolean priceMatchConstraintButType(final ProvInstancePrice p1, ProvInstancePrice p2) {
-		return super.priceMatchConstraintButType(p1, p2)
-				&& p1.getTenancy() == p2.getTenancy()
-				&& Strings.CS.equals(p1.getSoftware(), p2.getSoftware());
+	protected List<Object> toConstraints(final ProvInstancePrice price) {
+		final var constraints = super.toConstraints(price);
+		constraints.add(price.getTenancy());
+		constraints.add(price.getSoftware());
+		return constraints;
 	}
 
 }
@@ -6,10 +6,11 @@ package org.ligoj.app.plugin.aws.catalog.vm.ec2;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.ligoj.app.plugin.aws.catalog.AwsCsvFilter;
+
 /**
  * Read AWS EC2 CSV input, skipping the AWS headers and non instance type rows.
  */
@@ -44,15 +45,13 @@ public class CsvForBeanEc2 extends AbstractCsvForBeanEc2<AwsEc2Price> {
 	}
 
 	@Override
-	public boolean isValidRaw(final List<String> rawValues) {
+	protected AwsCsvFilter newFilter() {
 		// Only Compute instance [bare metal] for now
-		// Only Tenancy compliant : no "host"
+		// Only Tenancy compliant : no "host", new & old placement
 		// No outpost
-		return rawValues.size() > 49
-				&& ("AWS Region".equals(rawValues.get(17))
-						|| "AWS Region".equals(rawValues.get(18)) /* Location Type: No outpost */)
-				&& ACCEPTED_FAMILY.contains(rawValues.get(15)) /* Product Family */
-				&& !"Host".equals(rawValues.get(36)) /* No dedicated host, new & old placement */;
+		// Only the complete price rows, having at least 50 columns
+		return new AwsCsvFilter().in("Product Family", ACCEPTED_FAMILY).eq("Location Type", "AWS Region")
+				.ne("Tenancy", "Host").minSize(50);
 	}
 
 }
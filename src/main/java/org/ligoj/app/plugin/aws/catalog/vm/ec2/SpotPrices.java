@@ -1,21 +0,0 @@
-/*
- * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
- */
-package org.ligoj.app.plugin.aws.catalog.vm.ec2;
-
-import org.ligoj.app.plugin.aws.catalog.AwsPrices;
-
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-
-import lombok.Getter;
-import lombok.Setter;
-
-/**
- * Spot prices JSON file structure.
- */
-@Getter
-@Setter
-@JsonIgnoreProperties(ignoreUnknown = true)
-public class SpotPrices extends AwsPrices<SpotRegion> {
-	// Only for typing
-}
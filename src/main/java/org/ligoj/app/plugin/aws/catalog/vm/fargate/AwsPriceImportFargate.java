@@ -3,9 +3,12 @@
  */
 package org.ligoj.app.plugin.aws.catalog.vm.fargate;
 
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.Strings;
+import org.ligoj.app.plugin.aws.catalog.AwsFingerprint;
 import org.ligoj.app.plugin.aws.catalog.AwsPriceImportBase;
 import org.ligoj.app.plugin.aws.catalog.UpdateContext;
 import org.ligoj.app.plugin.aws.catalog.vm.AbstractAwsPriceImportVmOs;
@@ -14,13 +17,11 @@ import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanRate;
 import org.ligoj.app.plugin.prov.catalog.AbstractUpdateContext;
 import org.ligoj.app.plugin.prov.model.*;
 import org.ligoj.bootstrap.core.SpringUtils;
-import org.ligoj.bootstrap.core.curl.CurlProcessor;
 import org.springframework.stereotype.Component;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
 import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 
@@ -47,6 +48,24 @@ public class AwsPriceImportFargate extends
 
 	private static final double FREE_EPHEMERAL_STORAGE = 20d; // GiB
 
+	/**
+	 * Spot price dimension.
+	 */
+	@Getter
+	@AllArgsConstructor
+	private enum SpotUnit {
+		RAM(GB_HOURS), CPU(VCPU_HOURS);
+
+		private final String unit;
+
+		/**
+		 * Return the dimension of the given unit, <code>null</code> when not supported.
+		 */
+		private static SpotUnit of(final String unit) {
+			return Arrays.stream(values()).filter(u -> u.unit.equals(unit)).findFirst().orElse(null);
+		}
+	}
+
 	/**
 	 * The EC2 spot price end-point, a JSON file. Contains the prices for all regions.
 	 */
@@ -86,6 +105,11 @@ public class AwsPriceImportFargate extends
 	@Override
 	public void install(final UpdateContext context) throws IOException {
 		nextStep(context, API, null, 0);
+		// Preload the container types shared by the regions
+		context.getRegistry(ProvContainerType.class, () -> ctRepository.findAllBy(BY_NODE, context.getNode()));
+		// Detach the bulk-loaded entities: they stay usable from the context, and the following flushes stay cheap
+		flushAndClear();
+
 		// Pre-install types
 		installFargateTypes(context);
 
@@ -104,7 +128,7 @@ public class AwsPriceImportFargate extends
 		final var usage = csv.getUsageType().replaceFirst(".*Fargate-", "");
 		if (!usage.contains("Anywhere") && !usage.contains("ECS-EC2")) {
 			// Only Ephemeral storage and Window/Linux/ARM OS/CPU/RAM compute are supported
-			partialCost.put(usage, csv);
+			partialCost.put(usage, snapshot(csv));
 		}
 	}
 
@@ -142,12 +166,12 @@ public class AwsPriceImportFargate extends
 					csvStorage.getPricePerUnit() * context.getHoursMonth(), (cR, c) -> {
 						price.setCostGb(cR);
 						price.setCost(-round3Decimals(cR * FREE_EPHEMERAL_STORAGE));
-					}, spRepository::save);
-
+					}, getWriter(context)::add);
+			flushPrices(context);
 			stRepository.flush();
 		}
 
-		super.purgePrices(context, context.getLocals(), context.getPRepository(), context.getQRepository());
+		super.purgePrices(context);
 	}
 
 	@Override
@@ -259,11 +283,16 @@ public class AwsPriceImportFargate extends
 		return new CsvForBeanFargate(reader);
 	}
 
+	@Override
+	protected String getApi() {
+		return API;
+	}
+
 	@Override
 	protected LocalFargateContext newContext(final UpdateContext gContext, final ProvLocation region,
 			final String term1, final String term2) {
-		return new LocalFargateContext(gContext, iptRepository, ctRepository, cpRepository, qcRepository, region, term1,
-				term2);
+		return new LocalFargateContext(gContext, entityManager, iptRepository, ctRepository, cpRepository,
+				qcRepository, region, term1, term2);
 	}
 
 	/**
@@ -275,24 +304,29 @@ public class AwsPriceImportFargate extends
 	 */
 	private void installSpotPrices(final UpdateContext gContext, final String endpoint) throws IOException {
 		log.info("AWS Fargate Spot prices...");
-		try (var curl = new CurlProcessor()) {
+		try {
 			// Get the remote prices stream
-			final var rawJson = Objects.toString(curl.get(endpoint), "{\"prices\":[]}");
+			final var rawJson = Objects.toString(getText(endpoint), "{\"prices\":[]}");
 			final var prices = objectMapper.readValue(rawJson, SpotPrices.class);
 
-			// Install the enabled regions as needed
-			final var eRegions = prices.getPrices().stream().peek(p -> {
+			// Install the enabled regions as needed, and group their costs in a single pass
+			final var costs = new LinkedHashMap<ProvLocation, EnumMap<SpotUnit, Double>>();
+			prices.getPrices().forEach(p -> {
 				final var regionName = p.getAttributes().get("aws:region");
-				p.setRegionName(gContext.getMapSpotToNewRegion().getOrDefault(regionName, regionName));
-			}).filter(p -> isEnabledRegion(gContext, p.getRegionName())).map(p -> {
-				final var region = installRegion(gContext, p.getRegionName());
-				p.setRegion(region);
-				return region;
-			}).collect(Collectors.toSet());
+				final var name = gContext.getMapSpotToNewRegion().getOrDefault(regionName, regionName);
+				if (isEnabledRegion(gContext, name)) {
+					final var rCosts = costs.computeIfAbsent(installRegion(gContext, name),
+							r -> new EnumMap<>(SpotUnit.class));
+					final var unit = SpotUnit.of(p.getUnit());
+					if (unit != null) {
+						// The first cost of each unit is kept
+						rCosts.computeIfAbsent(unit, u -> Double.parseDouble(p.getPrice().get("USD")));
+					}
+				}
+			});
 
 			// Install the prices for each region
-			eRegions.forEach(r -> installSpotPrices(gContext, r,
-					prices.getPrices().stream().filter(p -> r.equals(p.getRegion())).collect(Collectors.toSet())));
+			forEachRegion(costs.keySet(), ProvLocation::getName, r -> installSpotPrices(gContext, r, costs.get(r)));
 		} finally {
 			// Report
 			log.info("AWS Fargate Spot import finished");
@@ -308,22 +342,22 @@ public class AwsPriceImportFargate extends
 	}
 
 	/**
-	 * Find the first cost corresponding to the required unit.
+	 * Return the cost corresponding to the required unit.
 	 */
-	private double findSpotCost(final ProvLocation region, final Set<SpotPrice> prices, final String unit) {
-		var cost = (double) prices.stream().filter(p -> unit.equals(p.getUnit())).findFirst()
-				.map(p -> Double.parseDouble(p.getPrice().get("USD"))).orElse(0d);
+	private double findSpotCost(final ProvLocation region, final Map<SpotUnit, Double> costs, final SpotUnit unit) {
+		final var cost = costs.getOrDefault(unit, 0d);
 		if (cost == 0d) {
-			log.warn("Missing {} cost for AWS Fargate@{}", unit, region.getName());
+			log.warn("Missing {} cost for AWS Fargate@{}", unit.getUnit(), region.getName());
 		}
 		return cost;
 	}
 
 	private void installSpotPrices(final UpdateContext gContext, final ProvLocation region,
-			final Set<SpotPrice> prices) {
+			final Map<SpotUnit, Double> costs) {
 		log.info("AWS Fargate Spot prices@{}...", region.getName());
-		final var costRam = findSpotCost(region, prices, GB_HOURS);
-		final var costCpu = findSpotCost(region, prices, VCPU_HOURS);
+		final var sample = metrics.start();
+		final var costRam = findSpotCost(region, costs, SpotUnit.RAM);
+		final var costCpu = findSpotCost(region, costs, SpotUnit.CPU);
 
 		// Get previous prices for this location
 		final var context = newContext(gContext, region, TERM_SPOT, TERM_SPOT);
@@ -341,6 +375,7 @@ public class AwsPriceImportFargate extends
 
 		// Purge the SKUs
 		purgePrices(context);
+		metrics.stop(sample, API, region.getName(), "spot");
 	}
 
 	private void installFargatePrice(final LocalFargateContext context, final AwsFargatePrice csvCpu,
@@ -354,8 +389,14 @@ public class AwsPriceImportFargate extends
 			csvCpu.setOs(os.name());
 			Arrays.stream(ramGbA).forEach(ram -> {
 				final var cost = (costCpu * cpu + ram * costRam) * context.getHoursMonth();
+				final var code = toPriceCode(csvCpu.getRateCode(), cpu, ram);
+				// The type is built from the CPU row
+				if (isUnchanged(context, code,
+						AwsFingerprint.hash(AwsFingerprint.hash(toFingerprint(context, csvCpu), code), cost))) {
+					return;
+				}
 				final var price = newPrice(context, csvCpu, cpu, ram);
-				saveAsNeeded(context, price, cost, context.getPRepository());
+				saveAsNeeded(context, price, cost, counted(context, context.getPRepository()));
 			});
 		});
 	}
@@ -375,4 +416,9 @@ public class AwsPriceImportFargate extends
 		// Ignore
 	}
 
+	@Override
+	protected void skipScoredPrices(final AbstractUpdateContext context, final String api, final String region) {
+		// Ignore
+	}
+
 }
@@ -6,9 +6,9 @@ package org.ligoj.app.plugin.aws.catalog.vm.fargate;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
+import org.ligoj.app.plugin.aws.catalog.AwsCsvFilter;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.AbstractCsvForBeanEc2;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.AwsEc2Price;
 
@@ -38,8 +38,9 @@ public class CsvForBeanFargate extends AbstractCsvForBeanEc2<AwsFargatePrice> {
 	}
 
 	@Override
-	public boolean isValidRaw(final List<String> rawValues) {
-		return rawValues.size() > 20;
+	protected AwsCsvFilter newFilter() {
+		// Only the complete price rows, having at least 21 columns
+		return new AwsCsvFilter().exists("usageType").minSize(21);
 	}
 
 }
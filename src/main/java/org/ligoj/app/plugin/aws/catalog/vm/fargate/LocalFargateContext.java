@@ -14,6 +14,8 @@ import org.ligoj.app.plugin.prov.model.ProvContainerType;
 import org.ligoj.app.plugin.prov.model.ProvLocation;
 import org.ligoj.app.plugin.prov.model.ProvQuoteContainer;
 
+import jakarta.persistence.EntityManager;
+
 /**
  * Context used to perform catalog update.
  */
@@ -24,6 +26,7 @@ public class LocalFargateContext
 	 * Context from the parent.
 	 *
 	 * @param parent       The parent context.
+	 * @param em           The current persistence context.
 	 * @param ptRepository The term repository.
 	 * @param tRepository  The type repository.
 	 * @param pRepository  The price repository.
@@ -32,12 +35,12 @@ public class LocalFargateContext
 	 * @param term1        The expected term name prefix alternative 1.
 	 * @param term2        The expected term name prefix alternative 2.
 	 */
-	public LocalFargateContext(final UpdateContext parent, final ProvInstancePriceTermRepository ptRepository,
+	public LocalFargateContext(final UpdateContext parent, final EntityManager em,
+			final ProvInstancePriceTermRepository ptRepository,
 			final ProvContainerTypeRepository tRepository, final ProvContainerPriceRepository pRepository,
 			final ProvQuoteContainerRepository qRepository, final ProvLocation region, final String term1,
 			final String term2) {
-		super(parent, ptRepository, tRepository, pRepository, qRepository, region, parent.getContainerTypes(), term1,
-				term2);
+		super(parent, em, ptRepository, tRepository, pRepository, qRepository, region, term1, term2);
 	}
 
 	@Override
@@ -49,4 +52,9 @@ public class LocalFargateContext
 	public ProvContainerType newType() {
 		return new ProvContainerType();
 	}
+
+	@Override
+	public Class<ProvQuoteContainer> getQuoteClass() {
+		return ProvQuoteContainer.class;
+	}
 }
@@ -2,8 +2,6 @@ package org.ligoj.app.plugin.aws.catalog.vm.fargate;
 
 import java.util.Map;
 
-import org.ligoj.app.plugin.prov.model.ProvLocation;
-
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import lombok.Getter;
@@ -32,13 +30,4 @@ public class SpotPrice {
 	 */
 	private Map<String, String> attributes;
 
-	/**
-	 * Computed region name.
-	 */
-	private String regionName;
-	/**
-	 * Resolved region.
-	 */
-	private ProvLocation region;
-
 }
@@ -17,10 +17,10 @@ import org.springframework.stereotype.Component;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
-import java.util.function.Function;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * The provisioning price service for RDS AWS. Manage installation or update of prices.
@@ -60,8 +60,8 @@ public class AwsPriceImportRds extends
 	@Override
 	public void install(final UpdateContext context) throws IOException {
 		nextStep(context, API, null, 0);
-		context.setDatabaseTypes(dtRepository.findAllBy(BY_NODE, context.getNode()).stream()
-				.collect(Collectors.toConcurrentMap(AbstractCodedEntity::getCode, Function.identity())));
+		// Preload the database types shared by the regions
+		context.getRegistry(ProvDatabaseType.class, () -> dtRepository.findAllBy(BY_NODE, context.getNode()));
 		// Detach the bulk-loaded entities: they stay usable from the context, and the following flushes stay cheap
 		flushAndClear();
 		context.setValidDatabaseType(Pattern.compile(configuration.get(CONF_DTYPE, ".*")));
@@ -84,14 +84,14 @@ public class AwsPriceImportRds extends
 	protected void installPrice(final LocalRdsContext context, final AwsRdsPrice csv) {
 		if ("Database Instance".equals(csv.getFamily())) {
 			// Up-front management
-			if (handlePartialCost(context, csv)) {
+			if (handlePartialCost(context, csv) || isUnchanged(context, csv)) {
 				return;
 			}
 
 			// No up-front, cost is fixed
 			final var price = newPrice(context, csv);
 			final var cost = csv.getPricePerUnit() * context.getHoursMonth();
-			saveAsNeeded(context, price, cost, dpRepository);
+			saveAsNeeded(context, price, cost, counted(context, dpRepository));
 		} else {
 			// Database storage
 			final var type = installStorageType(context, csv);
@@ -113,7 +113,7 @@ public class AwsPriceImportRds extends
 			});
 
 			// Update the price as needed
-			saveAsNeeded(context, previous, csv.getPricePerUnit(), spRepository);
+			saveAsNeeded(context, previous, csv.getPricePerUnit(), counted(context, spRepository));
 		}
 	}
 
@@ -229,11 +229,16 @@ public class AwsPriceImportRds extends
 		return super.getCo2(context, type);
 	}
 
+	@Override
+	protected String getApi() {
+		return API;
+	}
+
 	@Override
 	protected LocalRdsContext newContext(final UpdateContext gContext, final ProvLocation region, final String term1,
 			final String term2) {
-		return new LocalRdsContext(gContext, iptRepository, dtRepository, dpRepository, qdRepository, region, term1,
-				term2);
+		return new LocalRdsContext(gContext, entityManager, iptRepository, dtRepository, dpRepository, qdRepository,
+				region, term1, term2);
 	}
 
 	@Override
@@ -256,9 +261,22 @@ public class AwsPriceImportRds extends
 	}
 
 	@Override
-	protected boolean priceMatchConstraintButType(final ProvDatabasePrice p1, ProvDatabasePrice p2) {
-		return super.priceMatchConstraintButType(p1, p2)
-				&& Strings.CS.equals(p1.getEngine(), p2.getEngine());
+	protected boolean isComputeSavingsPlan() {
+		// Database Savings Plan file, dedicated to RDS
+		return false;
+	}
+
+	@Override
+	protected List<Pattern> getVersionFilters(final UpdateContext context) {
+		return Arrays.asList(context.getValidRegion(), context.getValidDatabaseType(),
+				context.getValidDatabaseEngine());
+	}
+
+	@Override
+	protected List<Object> toConstraints(final ProvDatabasePrice price) {
+		final var constraints = super.toConstraints(price);
+		constraints.add(price.getEngine());
+		return constraints;
 	}
 
 }
@@ -6,9 +6,9 @@ package org.ligoj.app.plugin.aws.catalog.vm.rds;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
+import org.ligoj.app.plugin.aws.catalog.AwsCsvFilter;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.AbstractCsvForBeanEc2;
 
 /**
@@ -41,12 +41,12 @@ public class CsvForBeanRds extends AbstractCsvForBeanEc2<AwsRdsPrice> {
 	}
 
 	@Override
-	public boolean isValidRaw(List<String> rawValues) {
+	protected AwsCsvFilter newFilter() {
 		// Only Single-AZ
 		// Only "Database Instance" and "Database Storage" products
 		// No outpost
-		return rawValues.size() > 37 && "Single-AZ".equals(rawValues.get(37)) && "AWS Region".equals(rawValues.get(18))
-				&& ("Database Instance".equals(rawValues.get(15)) || "Database Storage".equals(rawValues.get(15)));
+		return new AwsCsvFilter().in("Product Family", "Database Instance", "Database Storage")
+				.eq("Location Type", "AWS Region").eq("Deployment Option", "Single-AZ");
 	}
 
 }
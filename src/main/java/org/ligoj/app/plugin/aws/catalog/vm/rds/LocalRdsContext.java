@@ -14,6 +14,8 @@ import org.ligoj.app.plugin.prov.model.ProvDatabaseType;
 import org.ligoj.app.plugin.prov.model.ProvLocation;
 import org.ligoj.app.plugin.prov.model.ProvQuoteDatabase;
 
+import jakarta.persistence.EntityManager;
+
 /**
  * Context used to perform catalog update.
  */
@@ -24,6 +26,7 @@ public class LocalRdsContext
 	 * Context from the parent.
 	 *
 	 * @param parent       The parent context.
+	 * @param em           The current persistence context.
 	 * @param ptRepository The term repository.
 	 * @param tRepository  The type repository.
 	 * @param pRepository  The price repository.
@@ -32,12 +35,12 @@ public class LocalRdsContext
 	 * @param term1        The expected term name prefix alternative 1.
 	 * @param term2        The expected term name prefix alternative 2.
 	 */
-	public LocalRdsContext(final UpdateContext parent, final ProvInstancePriceTermRepository ptRepository,
+	public LocalRdsContext(final UpdateContext parent, final EntityManager em,
+			final ProvInstancePriceTermRepository ptRepository,
 			final ProvDatabaseTypeRepository tRepository, final ProvDatabasePriceRepository pRepository,
 			final ProvQuoteDatabaseRepository qRepository, final ProvLocation region, final String term1,
 			final String term2) {
-		super(parent, ptRepository, tRepository, pRepository, qRepository, region, parent.getDatabaseTypes(), term1,
-				term2);
+		super(parent, em, ptRepository, tRepository, pRepository, qRepository, region, term1, term2);
 	}
 
 	@Override
@@ -49,4 +52,9 @@ public class LocalRdsContext
 	public ProvDatabaseType newType() {
 		return new ProvDatabaseType();
 	}
+
+	@Override
+	public Class<ProvQuoteDatabase> getQuoteClass() {
+		return ProvQuoteDatabase.class;
+	}
 }
@@ -0,0 +1,123 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.prov.model.VmOs;
+import org.ligoj.bootstrap.core.resource.TechnicalException;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Test class of {@link AwsCsvBinder}
+ */
+class AwsCsvBinderTest {
+
+	private static final String[] HEADERS = { "name", "cost", AwsCsvBinder.DROP, "count", "ratio", "os", "amount" };
+
+	/**
+	 * A CSV bean with the supported property types.
+	 */
+	@Getter
+	@Setter
+	public static class Bean {
+		private String name;
+		private double cost;
+		private int count;
+		private Double ratio;
+		private VmOs os;
+		private BigDecimal amount;
+	}
+
+	/**
+	 * A CSV bean with an unsupported property type.
+	 */
+	@Getter
+	@Setter
+	public static class InvalidBean {
+		private List<String> names;
+	}
+
+	private AwsCsvTokenizer newRecord(final String csv, final char separator) throws IOException {
+		final var record = new AwsCsvTokenizer(new StringReader(csv), separator);
+		Assertions.assertTrue(record.next());
+		return record;
+	}
+
+	@Test
+	void bind() throws IOException {
+		final var bean = new AwsCsvBinder<>(Bean.class, HEADERS)
+				.bind(newRecord("\"a\",1.5,x,3,0.25,LINUX,12.50", ','));
+		Assertions.assertEquals("a", bean.getName());
+		Assertions.assertEquals(1.5d, bean.getCost());
+		Assertions.assertEquals(3, bean.getCount());
+		Assertions.assertEquals(0.25d, bean.getRatio());
+		Assertions.assertEquals(VmOs.LINUX, bean.getOs());
+		Assertions.assertEquals(new BigDecimal("12.50"), bean.getAmount());
+	}
+
+	@Test
+	void bindDecimalComma() throws IOException {
+		final var bean = new AwsCsvBinder<>(Bean.class, HEADERS).bind(newRecord("a;1,5;x;3;0,954913793;;", ';'));
+		Assertions.assertEquals(1.5d, bean.getCost());
+		Assertions.assertEquals(0.954913793d, bean.getRatio());
+		Assertions.assertNull(bean.getOs());
+		Assertions.assertNull(bean.getAmount());
+	}
+
+	@Test
+	void bindDecimalCommaSeparator() throws IOException {
+		final var binder = new AwsCsvBinder<>(Bean.class, HEADERS);
+		final var record = newRecord("a,\"1,5\"", ',');
+		Assertions.assertThrows(NumberFormatException.class, () -> binder.bind(record));
+	}
+
+	@Test
+	void bindReuse() throws IOException {
+		final var binder = new AwsCsvBinder<>(Bean.class, HEADERS);
+		final var record = new AwsCsvTokenizer(new StringReader("a,1.5,x,3,0.25,LINUX,1\nb,,x,,,,\n"), ',');
+		final var bean = binder.newBean();
+		Assertions.assertTrue(record.next());
+		Assertions.assertSame(bean, binder.bind(record, bean));
+		final var copy = AwsCsvBinder.copy(bean);
+
+		// The empty values of the next record are reset
+		Assertions.assertTrue(record.next());
+		binder.bind(record, bean);
+		Assertions.assertEquals("b", bean.getName());
+		Assertions.assertEquals(0d, bean.getCost());
+		Assertions.assertEquals(0, bean.getCount());
+		Assertions.assertNull(bean.getRatio());
+		Assertions.assertNull(bean.getOs());
+		Assertions.assertNull(bean.getAmount());
+
+		// The copy is not affected
+		Assertions.assertNotSame(bean, copy);
+		Assertions.assertEquals("a", copy.getName());
+		Assertions.assertEquals(1.5d, copy.getCost());
+		Assertions.assertEquals(0.25d, copy.getRatio());
+		Assertions.assertEquals(VmOs.LINUX, copy.getOs());
+	}
+
+	@Test
+	void bindUnknownProperty() {
+		final var headers = new String[] { "any" };
+		Assertions.assertEquals("Unknown CSV bean property " + Bean.class.getName() + "#any",
+				Assertions.assertThrows(TechnicalException.class, () -> new AwsCsvBinder<>(Bean.class, headers))
+						.getMessage());
+	}
+
+	@Test
+	void bindUnsupportedType() {
+		final var headers = new String[] { "names" };
+		Assertions.assertThrows(TechnicalException.class, () -> new AwsCsvBinder<>(InvalidBean.class, headers));
+	}
+}
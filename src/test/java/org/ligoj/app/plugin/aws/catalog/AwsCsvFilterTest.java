@@ -0,0 +1,132 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.bootstrap.core.resource.TechnicalException;
+
+/**
+ * Test class of {@link AwsCsvFilter}
+ */
+class AwsCsvFilterTest {
+
+	private static final List<String> HEADERS = List.of("SKU", "Product Family", "Location Type", "usageType");
+
+	/**
+	 * Return the first column of the accepted rows.
+	 */
+	private List<String> filter(final AwsCsvFilter filter, final String csv) throws IOException {
+		return filter(filter.compile(HEADERS), new StringReader(csv));
+	}
+
+	private List<String> filter(final Predicate<AwsCsvTokenizer> predicate, final Reader reader) throws IOException {
+		final var record = new AwsCsvTokenizer(reader, ',');
+		final var accepted = new ArrayList<String>();
+		while (record.next()) {
+			if (predicate.test(record)) {
+				accepted.add(record.get(0));
+			}
+		}
+		return accepted;
+	}
+
+	@Test
+	void eq() throws IOException {
+		Assertions.assertEquals(List.of("A", "D"), filter(new AwsCsvFilter().eq("Location Type", "AWS Region"),
+				"A,Compute,AWS Region\nB,Compute,AWS Outposts\nC,Compute\nD,Storage,\"AWS Region\"\n"));
+	}
+
+	@Test
+	void ne() throws IOException {
+		// The row without the column is rejected
+		Assertions.assertEquals(List.of("B"), filter(new AwsCsvFilter().ne("Location Type", "AWS Region"),
+				"A,Compute,AWS Region\nB,Compute,AWS Outposts\nC,Compute\n"));
+	}
+
+	@Test
+	void in() throws IOException {
+		Assertions.assertEquals(List.of("A", "C"), filter(new AwsCsvFilter().in("Product Family", "Compute", "Storage"),
+				"A,Compute\nB,Data Transfer\nC,Storage\nD\n"));
+	}
+
+	@Test
+	void notContains() throws IOException {
+		Assertions.assertEquals(List.of("A"), filter(new AwsCsvFilter().notContains("usageType", "Reservation"),
+				"A,Compute,AWS Region,EU-BoxUsage\nB,Compute,AWS Region,EU-Reservation:m5\nC,Compute,AWS Region\n"));
+	}
+
+	@Test
+	void exists() throws IOException {
+		// An empty column exists
+		Assertions.assertEquals(List.of("A", "B"), filter(new AwsCsvFilter().exists("usageType"),
+				"A,Compute,AWS Region,EU-BoxUsage\nB,,,\nC,Compute,AWS Region\nINVALID\n"));
+	}
+
+	@Test
+	void minSize() throws IOException {
+		// Independent of the header row
+		final var filter = new AwsCsvFilter().exists("Product Family").minSize(4);
+		Assertions.assertEquals(List.of("A", "C"), filter(filter.compile(List.of("SKU", "Product Family")),
+				new StringReader("A,Compute,AWS Region,\nB,Compute,AWS Region\nC,Compute,AWS Region,x,y\n")));
+	}
+
+	@Test
+	void all() throws IOException {
+		// All conditions must be verified
+		Assertions.assertEquals(List.of("A"),
+				filter(new AwsCsvFilter().notContains("usageType", "Reservation").eq("Location Type", "AWS Region")
+						.in("Product Family", "Compute"), """
+								A,Compute,AWS Region,EU-BoxUsage
+								B,Storage,AWS Region,EU-BoxUsage
+								C,Compute,AWS Outposts,EU-BoxUsage
+								D,Compute,AWS Region,EU-Reservation:m5
+								"""));
+
+		// Without condition, all rows are accepted
+		Assertions.assertEquals(List.of("A", "B"), filter(new AwsCsvFilter(), "A\nB,Compute\n"));
+	}
+
+	@Test
+	void compileMissingHeader() {
+		final var filter = new AwsCsvFilter().eq("Location Type", "AWS Region").exists("Tenancy");
+		Assertions.assertEquals("Unsupported CSV header, missing filtered column: Tenancy",
+				Assertions.assertThrows(TechnicalException.class, () -> filter.compile(HEADERS)).getMessage());
+	}
+
+	@Test
+	void compileColumnOrder() throws IOException {
+		// The conditions are evaluated by column order, not by declaration order: the rejected row is not read
+		// beyond its first column
+		final var predicate = new AwsCsvFilter().exists("usageType").eq("SKU", "A").compile(HEADERS);
+		final var reader = new Reader() {
+			private boolean read;
+
+			@Override
+			public int read(final char[] buffer, final int offset, final int length) throws IOException {
+				if (read) {
+					throw new IOException("Read beyond the first column");
+				}
+				read = true;
+				"B,".getChars(0, 2, buffer, offset);
+				return 2;
+			}
+
+			@Override
+			public void close() {
+				// Nothing to close
+			}
+		};
+		final var record = new AwsCsvTokenizer(reader, ',');
+		Assertions.assertTrue(record.next());
+		Assertions.assertFalse(predicate.test(record));
+	}
+}
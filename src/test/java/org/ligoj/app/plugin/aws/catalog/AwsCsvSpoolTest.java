@@ -0,0 +1,66 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class of {@link AwsCsvSpool}
+ */
+class AwsCsvSpoolTest {
+
+	private static final String CSV = "\"SKU\",\"Description\"\n\"A\",\"one\"\n\"B\",\"two\nlines\"\n\"C\",\"three\"\n";
+
+	private String readAll(final AwsCsvSpool spool) throws IOException {
+		final var result = new StringBuilder();
+		for (var i = 0; i < spool.size(); i++) {
+			try (var reader = spool.open(i)) {
+				result.append(IOUtils.toString(reader));
+			}
+		}
+		return result.toString();
+	}
+
+	@Test
+	void download() throws IOException {
+		try (var spool = AwsCsvSpool.download(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)), 1)) {
+			// One chunk per record, the line break inside the quoted value is not a boundary
+			Assertions.assertEquals(4, spool.size());
+			try (var reader = spool.open(2)) {
+				Assertions.assertEquals("\"B\",\"two\nlines\"\n", IOUtils.toString(reader));
+			}
+			Assertions.assertEquals(CSV, readAll(spool));
+		}
+	}
+
+	@Test
+	void downloadSingleChunk() throws IOException {
+		try (var spool = AwsCsvSpool.download(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)),
+				1024)) {
+			Assertions.assertEquals(1, spool.size());
+			Assertions.assertEquals(CSV, readAll(spool));
+		}
+	}
+
+	@Test
+	void of(@TempDir final Path directory) throws IOException {
+		final var file = Files.writeString(directory.resolve("index.csv"), CSV);
+		try (var spool = AwsCsvSpool.of(FileChannel.open(file, StandardOpenOption.READ), 15)) {
+			Assertions.assertEquals(3, spool.size());
+			Assertions.assertEquals(CSV, readAll(spool));
+		}
+		Assertions.assertTrue(Files.exists(file));
+	}
+}
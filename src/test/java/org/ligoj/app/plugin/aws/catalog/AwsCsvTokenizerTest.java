@@ -0,0 +1,203 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class of {@link AwsCsvTokenizer}
+ */
+class AwsCsvTokenizerTest {
+
+	private AwsCsvTokenizer newRecord(final String csv, final char separator) throws IOException {
+		final var record = new AwsCsvTokenizer(new StringReader(csv), separator);
+		Assertions.assertTrue(record.next());
+		return record;
+	}
+
+	/**
+	 * Return a reader returning at most the given amount of characters per read, to split the records.
+	 */
+	private Reader newChunkedReader(final String csv, final int chunk) {
+		return new FilterReader(new StringReader(csv)) {
+			@Override
+			public int read(final char[] buffer, final int offset, final int length) throws IOException {
+				return super.read(buffer, offset, Math.min(chunk, length));
+			}
+		};
+	}
+
+	@Test
+	void quoted() throws IOException {
+		final var record = newRecord("\"a,b\",\"two\nlines\",\"\",plain,\"x\"garbage,last", ',');
+		Assertions.assertEquals(6, record.size());
+		Assertions.assertEquals("a,b", record.get(0));
+		Assertions.assertEquals("two\nlines", record.get(1));
+		Assertions.assertTrue(record.isEmpty(2));
+		Assertions.assertEquals("", record.get(2));
+		Assertions.assertEquals("plain", record.get(3));
+		Assertions.assertEquals("x", record.get(4));
+		Assertions.assertEquals("last", record.get(5));
+		Assertions.assertTrue(record.equals(0, "a,b"));
+		Assertions.assertTrue(record.contains(1, "o\nl"));
+		Assertions.assertFalse(record.has(6));
+		Assertions.assertNull(record.get(6));
+		Assertions.assertFalse(record.next());
+	}
+
+	@Test
+	void escapedQuotes() throws IOException {
+		final var record = newRecord("\"say \"\"hi\"\"\",\"\"\"\",\"a\"\"\"", ',');
+		Assertions.assertEquals("say \"hi\"", record.get(0));
+		Assertions.assertEquals("\"", record.get(1));
+		Assertions.assertEquals("a\"", record.get(2));
+		Assertions.assertTrue(record.equals(0, "say \"hi\""));
+		Assertions.assertFalse(record.equals(0, "say \"\"hi\"\""));
+		Assertions.assertTrue(record.contains(0, "\"hi"));
+		Assertions.assertTrue(record.in(1, List.of("x", "\"")));
+		Assertions.assertFalse(record.contains(0, "\"\""));
+	}
+
+	@Test
+	void lineEnds() throws IOException {
+		final var record = new AwsCsvTokenizer(new StringReader("a,b\r\n\r\n\"c\r\nd\",e\rf\ng,\"h\"\r\n"), ',');
+		Assertions.assertTrue(record.next());
+		Assertions.assertEquals("a", record.get(0));
+		Assertions.assertEquals("b", record.get(1));
+		Assertions.assertEquals(2, record.size());
+
+		// The blank line is ignored, the line break of the quoted value is kept
+		Assertions.assertTrue(record.next());
+		Assertions.assertEquals("c\r\nd", record.get(0));
+		Assertions.assertEquals("e", record.get(1));
+		Assertions.assertTrue(record.next());
+		Assertions.assertEquals("f", record.get(0));
+		Assertions.assertEquals(1, record.size());
+		Assertions.assertTrue(record.next());
+		Assertions.assertEquals("g", record.get(0));
+		Assertions.assertEquals("h", record.get(1));
+		Assertions.assertFalse(record.next());
+	}
+
+	@Test
+	void nextSkipsQuotedColumns() throws IOException {
+		// The remaining columns are skipped without being delimited, including the quoted line breaks
+		final var record = new AwsCsvTokenizer(new StringReader("a,\"b\r\nc\",\"\"\"d\ne\"\"\"\nf,g\n"), ',');
+		Assertions.assertTrue(record.next());
+		Assertions.assertEquals("a", record.get(0));
+		Assertions.assertTrue(record.next());
+		Assertions.assertEquals("f", record.get(0));
+		Assertions.assertEquals("g", record.get(1));
+		Assertions.assertFalse(record.next());
+	}
+
+	@Test
+	void bufferGrowth() throws IOException {
+		// A record larger than the buffer, with more columns than the initial capacity
+		final var large = "x".repeat(200 * 1024);
+		final var columns = new StringBuilder();
+		for (var i = 0; i < 300; i++) {
+			columns.append(',').append(i);
+		}
+		final var csv = "first\n\"" + large + "\"" + columns + "\nlast," + large + "\n";
+		final var record = new AwsCsvTokenizer(newChunkedReader(csv, 1000), ',');
+		Assertions.assertTrue(record.next());
+		Assertions.assertEquals("first", record.get(0));
+		Assertions.assertTrue(record.next());
+		Assertions.assertEquals(large, record.get(0));
+		Assertions.assertEquals(301, record.size());
+		Assertions.assertEquals("299", record.get(300));
+		Assertions.assertTrue(record.next());
+		Assertions.assertEquals("last", record.get(0));
+		Assertions.assertTrue(record.equals(1, large));
+		Assertions.assertFalse(record.next());
+	}
+
+	@Test
+	void chunked() throws IOException {
+		// The records and the quoted values are split across the reads, and moved in the buffer
+		final var csv = new StringBuilder();
+		for (var i = 0; i < 10000; i++) {
+			csv.append("\"r").append(i).append("\"\"\",").append(i).append(".5,\"a\r\nb\"\r\n");
+		}
+		final var record = new AwsCsvTokenizer(newChunkedReader(csv.toString(), 7), ',');
+		for (var i = 0; i < 10000; i++) {
+			Assertions.assertTrue(record.next());
+			Assertions.assertEquals("r" + i + "\"", record.get(0));
+			Assertions.assertEquals(i + 0.5d, record.getDouble(1));
+			if (i % 2 == 0) {
+				Assertions.assertEquals("a\r\nb", record.get(2));
+			}
+		}
+		Assertions.assertFalse(record.next());
+	}
+
+	@Test
+	void getDoubleExact() throws IOException {
+		// The values parsed from the buffer are the ones of Double#parseDouble
+		final var random = new Random(42);
+		final var values = new String[20000];
+		for (var i = 0; i < values.length; i++) {
+			final var digits = new StringBuilder(random.nextBoolean() ? "-" : "");
+			final var length = 1 + random.nextInt(18);
+			final var point = random.nextInt(length + 1);
+			for (var j = 0; j < length; j++) {
+				if (j == point && j > 0) {
+					digits.append('.');
+				}
+				digits.append((char) ('0' + random.nextInt(10)));
+			}
+			values[i] = digits.toString();
+		}
+		final var record = newRecord(String.join(",", values), ',');
+		for (var i = 0; i < values.length; i++) {
+			Assertions.assertEquals(Double.parseDouble(values[i]), record.getDouble(i), values[i]);
+		}
+	}
+
+	@Test
+	void getDoubleNotPlain() throws IOException {
+		final var record = newRecord("1e3,0.1000000000000000055511151231257827,.5,5.,-0,\"2.5\",1.2.3,-,", ',');
+		Assertions.assertEquals(1000d, record.getDouble(0));
+		Assertions.assertEquals(0.1d, record.getDouble(1));
+		Assertions.assertEquals(0.5d, record.getDouble(2));
+		Assertions.assertEquals(5d, record.getDouble(3));
+		Assertions.assertEquals(-0d, record.getDouble(4));
+		Assertions.assertEquals(2.5d, record.getDouble(5));
+		Assertions.assertThrows(NumberFormatException.class, () -> record.getDouble(6));
+		Assertions.assertThrows(NumberFormatException.class, () -> record.getDouble(7));
+		Assertions.assertThrows(NumberFormatException.class, () -> record.getDouble(8));
+	}
+
+	@Test
+	void getDoubleDecimalComma() throws IOException {
+		final var record = newRecord("1,7;0,954913793;-2,5;42;\"1,25\"", ';');
+		Assertions.assertEquals(1.7d, record.getDouble(0));
+		Assertions.assertEquals(0.954913793d, record.getDouble(1));
+		Assertions.assertEquals(-2.5d, record.getDouble(2));
+		Assertions.assertEquals(42d, record.getDouble(3));
+		Assertions.assertEquals(1.25d, record.getDouble(4));
+	}
+
+	@Test
+	void getDoubleDecimalCommaSeparator() throws IOException {
+		final var record = newRecord("\"1,7\",\"1.7\"", ',');
+		Assertions.assertThrows(NumberFormatException.class, () -> record.getDouble(0));
+		Assertions.assertEquals(1.7d, record.getDouble(1));
+	}
+
+	@Test
+	void getDoubleMissing() throws IOException {
+		final var record = newRecord("1", ';');
+		Assertions.assertThrows(NumberFormatException.class, () -> record.getDouble(1));
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.aws.catalog.efs.AwsPriceImportEfs;
+import org.ligoj.app.plugin.aws.catalog.lambda.AwsPriceImportLambda;
+import org.ligoj.app.plugin.aws.catalog.s3.AwsPriceImportS3;
+import org.ligoj.app.plugin.aws.catalog.suppport.AwsPriceImportSupport;
+import org.ligoj.app.plugin.aws.catalog.vm.AwsPriceImportSavingsPlan;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.AwsPriceImportEc2;
+import org.ligoj.app.plugin.aws.catalog.vm.fargate.AwsPriceImportFargate;
+import org.ligoj.app.plugin.aws.catalog.vm.rds.AwsPriceImportRds;
+import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.app.plugin.prov.catalog.ImportCatalog;
+import org.ligoj.bootstrap.core.resource.TechnicalException;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.mockito.ArgumentMatchers;
+
+/**
+ * Test class of {@link AwsImportScheduler}
+ */
+class AwsImportSchedulerTest {
+
+	private final UpdateContext context = new UpdateContext();
+
+	/**
+	 * The start and end events of the imported services, in their order.
+	 */
+	private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+	private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+	private final AtomicInteger running = new AtomicInteger();
+
+	private final AtomicInteger maxRunning = new AtomicInteger();
+
+	private void run(final String name) {
+		threads.add(Thread.currentThread());
+		maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+		events.add("start:" + name);
+		try {
+			Thread.sleep(50);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			events.add("end:" + name);
+			running.decrementAndGet();
+		}
+	}
+
+	private <T extends ImportCatalog<UpdateContext>> T newService(final Class<T> type, final String name)
+			throws IOException {
+		final var service = mock(type);
+		doAnswer(i -> {
+			run(name);
+			return null;
+		}).when(service).install(context);
+		return service;
+	}
+
+	@SuppressWarnings("unchecked")
+	private ImportCatalog<UpdateContext> newService(final String name) throws IOException {
+		return newService((Class<ImportCatalog<UpdateContext>>) (Class<?>) ImportCatalog.class, name);
+	}
+
+	@SuppressWarnings("unchecked")
+	private ImportCatalog<UpdateContext> newFailingService(final Exception failure) throws IOException {
+		final ImportCatalog<UpdateContext> service = mock(ImportCatalog.class);
+		doThrow(failure).when(service).install(context);
+		return service;
+	}
+
+	private void assertBefore(final String event, final String next) {
+		Assertions.assertTrue(events.indexOf(event) != -1, event);
+		Assertions.assertTrue(events.indexOf(event) < events.indexOf(next), event + " before " + next);
+	}
+
+	@Test
+	void runServices() throws IOException {
+		final var resource = new AwsPriceImport();
+		resource.setBase(newService(AwsPriceImportBase.class, "base"));
+		resource.setEc2(newService(AwsPriceImportEc2.class, "ec2"));
+		resource.setFargate(newService(AwsPriceImportFargate.class, "fargate"));
+		resource.setRds(newService(AwsPriceImportRds.class, "rds"));
+		resource.setEfs(newService(AwsPriceImportEfs.class, "efs"));
+		resource.setS3(newService(AwsPriceImportS3.class, "s3"));
+		resource.setLambda(newService(AwsPriceImportLambda.class, "lambda"));
+		resource.setSavingsPlan(newService(AwsPriceImportSavingsPlan.class, "savingsPlan"));
+		resource.setSupport(newService(AwsPriceImportSupport.class, "support"));
+		resource.newScheduler().run(context, 4);
+
+		// All services are imported after the base one, concurrently within the budget
+		Assertions.assertEquals(18, events.size());
+		List.of("ec2", "fargate", "rds", "efs", "s3", "lambda", "savingsPlan", "support")
+				.forEach(s -> assertBefore("end:base", "start:" + s));
+		Assertions.assertEquals(4, maxRunning.get());
+
+		// The Savings Plan prices wait for the services sharing them
+		assertBefore("end:ec2", "start:savingsPlan");
+		assertBefore("end:fargate", "start:savingsPlan");
+		assertBefore("end:lambda", "start:savingsPlan");
+	}
+
+	@Test
+	void runFailure() throws IOException {
+		final var fargate = newService("fargate");
+		final var savingsPlan = newService("savingsPlan");
+		final var scheduler = new AwsImportScheduler().add("base", newService("base"))
+				.add("ec2", newFailingService(new IOException("ec2")), "base").add("fargate", fargate, "base")
+				.add("savingsPlan", savingsPlan, "ec2", "fargate")
+				.add("s3", newFailingService(new IllegalStateException("s3")), "base")
+				.add("support", newService("support"), "s3");
+
+		// The first failure in the declaration order is thrown once all started services are completed
+		Assertions.assertEquals("ec2",
+				Assertions.assertThrows(IOException.class, () -> scheduler.run(context, 4)).getMessage());
+		verify(fargate).install(context);
+		Assertions.assertTrue(events.contains("end:fargate"));
+
+		// The dependents of a failed service are not started
+		verify(savingsPlan, never()).install(context);
+		Assertions.assertFalse(events.contains("start:support"));
+		Assertions.assertEquals(0, running.get());
+	}
+
+	@Test
+	void runConcurrency() throws IOException {
+		final var scheduler = new AwsImportScheduler().add("base", newService("base"));
+		for (var i = 0; i < 6; i++) {
+			scheduler.add("service-" + i, newService("service-" + i), "base");
+		}
+		scheduler.run(context, 2);
+		Assertions.assertEquals(2, maxRunning.get());
+		Assertions.assertEquals(14, events.size());
+	}
+
+	@Test
+	void runSequential() throws IOException {
+		final var scheduler = new AwsImportScheduler().add("base", newService("base"))
+				.add("ec2", newService("ec2"), "base").add("s3", newService("s3"), "base")
+				.add("savingsPlan", newService("savingsPlan"), "ec2");
+		scheduler.run(context, 1);
+
+		// The declaration order, by the current thread
+		Assertions.assertEquals(List.of("start:base", "end:base", "start:ec2", "end:ec2", "start:s3", "end:s3",
+				"start:savingsPlan", "end:savingsPlan"), events);
+		Assertions.assertEquals(Set.of(Thread.currentThread()), threads);
+	}
+
+	@Test
+	void runSequentialFailure() throws IOException {
+		final var s3 = newService("s3");
+		final var scheduler = new AwsImportScheduler().add("base", newService("base"))
+				.add("ec2", newFailingService(new IOException("ec2")), "base").add("s3", s3, "base");
+
+		// The next services are not started
+		Assertions.assertEquals("ec2",
+				Assertions.assertThrows(IOException.class, () -> scheduler.run(context, 1)).getMessage());
+		verify(s3, never()).install(context);
+	}
+
+	@Test
+	void addUnknownDependency() throws IOException {
+		final var scheduler = new AwsImportScheduler().add("base", newService("base"));
+		final var ec2 = newService("ec2");
+		Assertions.assertEquals("Unknown dependency fargate of import step savingsPlan",
+				Assertions.assertThrows(TechnicalException.class,
+						() -> scheduler.add("savingsPlan", ec2, "base", "fargate")).getMessage());
+	}
+
+	@Test
+	void getConcurrency() {
+		final var configuration = mock(ConfigurationResource.class);
+		when(configuration.get(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()))
+				.thenAnswer(i -> i.getArgument(1));
+		Assertions.assertEquals(4, AwsPriceImport.getConcurrency(configuration));
+
+		when(configuration.get(AwsPriceImport.CONF_CONCURRENCY, 4)).thenReturn(6);
+		Assertions.assertEquals(6, AwsPriceImport.getConcurrency(configuration));
+
+		// The single transaction import is sequential
+		when(configuration.get(ProvResource.USE_PARALLEL, 1)).thenReturn(0);
+		Assertions.assertEquals(1, AwsPriceImport.getConcurrency(configuration));
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.AwsEc2Price;
+
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Test class of {@link AwsPartialCostPairer}
+ */
+class AwsPartialCostPairerTest {
+
+	private AwsEc2Price newPrice(final String sku, final double cost) {
+		final var price = new AwsEc2Price();
+		price.setSku(sku);
+		price.setPricePerUnit(cost);
+		price.setInstanceType("t2.micro");
+		return price;
+	}
+
+	private byte[] toBytes(final String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private void put(final AwsPartialCostPairer.SpillStore store, final long key, final String code) {
+		store.put(key, AwsPartialCostPairer.SpillStore.newEntry(toBytes(code), toBytes("value-" + code)));
+	}
+
+	private void assertRemove(final AwsPartialCostPairer.SpillStore store, final long key, final String code) {
+		final var entry = store.remove(key, toBytes(code));
+		Assertions.assertNotNull(entry, code);
+		Assertions.assertEquals("value-" + code,
+				new String(entry, 2 + code.length(), entry.length - 2 - code.length(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void pairAdjacent() {
+		final var pairer = new AwsPartialCostPairer<AwsEc2Price>(new ObjectMapper(), 2);
+		final var one = newPrice("A", 1);
+		Assertions.assertNull(pairer.pair("A", one));
+		Assertions.assertSame(one, pairer.pair("A", newPrice("A", 2)));
+		Assertions.assertEquals(0, pairer.getUnpaired());
+		Assertions.assertEquals(0, pairer.getSpills());
+	}
+
+	@Test
+	void pairSpilled() {
+		final var pairer = new AwsPartialCostPairer<AwsEc2Price>(new ObjectMapper(), 1);
+		for (var i = 0; i < 100; i++) {
+			Assertions.assertNull(pairer.pair("K" + i, newPrice("K" + i, i)));
+		}
+		Assertions.assertEquals(100, pairer.getUnpaired());
+		Assertions.assertEquals(99, pairer.getSpills());
+
+		// Siblings in the reverse order, read back from the spilled rows
+		for (var i = 99; i >= 0; i--) {
+			final var sibling = pairer.pair("K" + i, newPrice("K" + i, -1));
+			Assertions.assertEquals("K" + i, sibling.getSku());
+			Assertions.assertEquals(i, sibling.getPricePerUnit());
+			Assertions.assertEquals("t2.micro", sibling.getInstanceType());
+		}
+		Assertions.assertEquals(0, pairer.getUnpaired());
+	}
+
+	@Test
+	void clear() {
+		final var pairer = new AwsPartialCostPairer<AwsEc2Price>(new ObjectMapper(), 1);
+		pairer.pair("A", newPrice("A", 1));
+		pairer.pair("B", newPrice("B", 1));
+		Assertions.assertEquals(2, pairer.getUnpaired());
+		pairer.clear();
+		Assertions.assertEquals(0, pairer.getUnpaired());
+		Assertions.assertNull(pairer.pair("A", newPrice("A", 2)));
+	}
+
+	@Test
+	void pairReinsert() {
+		// A window of 0 row behaves as a window of 1 row
+		for (var size = 0; size <= 1; size++) {
+			final var pairer = new AwsPartialCostPairer<AwsEc2Price>(new ObjectMapper(), size);
+			Assertions.assertNull(pairer.pair("A", newPrice("A", 1)));
+			Assertions.assertNull(pairer.pair("B", newPrice("B", 1)));
+			Assertions.assertEquals(1, pairer.getSpills());
+			Assertions.assertEquals(1, pairer.pair("A", newPrice("A", 2)).getPricePerUnit());
+
+			// The same code is retained again once paired, not paired with the previous row
+			Assertions.assertNull(pairer.pair("A", newPrice("A", 3)));
+			Assertions.assertEquals(2, pairer.getUnpaired());
+			Assertions.assertEquals(3, pairer.pair("A", newPrice("A", 4)).getPricePerUnit());
+			Assertions.assertEquals(1, pairer.pair("B", newPrice("B", 2)).getPricePerUnit());
+			Assertions.assertEquals(0, pairer.getUnpaired());
+			Assertions.assertEquals(2, pairer.getSpills());
+		}
+	}
+
+	@Test
+	void spillStoreCollision() {
+		// Distinct codes sharing the same key
+		final var store = new AwsPartialCostPairer.SpillStore();
+		put(store, 7L, "A");
+		put(store, 7L, "B");
+		Assertions.assertNull(store.remove(7L, toBytes("C")));
+		Assertions.assertNull(store.remove(8L, toBytes("A")));
+		assertRemove(store, 7L, "B");
+		Assertions.assertEquals(1, store.size());
+		Assertions.assertNull(store.remove(7L, toBytes("B")));
+		assertRemove(store, 7L, "A");
+		Assertions.assertEquals(0, store.size());
+	}
+
+	@Test
+	void spillStoreDelete() {
+		// Keys 1, 17 and 33 share the slot 1, the key 2 is moved away from its slot 2
+		final var store = new AwsPartialCostPairer.SpillStore();
+		put(store, 1L, "K1");
+		put(store, 17L, "K17");
+		put(store, 33L, "K33");
+		put(store, 2L, "K2");
+
+		// The following entries are moved back, and still found
+		assertRemove(store, 17L, "K17");
+		Assertions.assertNull(store.remove(17L, toBytes("K17")));
+		Assertions.assertNull(store.remove(18L, toBytes("K18")));
+		assertRemove(store, 2L, "K2");
+		assertRemove(store, 33L, "K33");
+		assertRemove(store, 1L, "K1");
+		Assertions.assertEquals(0, store.size());
+	}
+
+	@Test
+	void spillStoreDeleteWrap() {
+		// Keys 15, 31 and 47 share the last slot, and wrap to the first slots
+		final var store = new AwsPartialCostPairer.SpillStore();
+		put(store, 15L, "K15");
+		put(store, 31L, "K31");
+		put(store, 47L, "K47");
+		assertRemove(store, 15L, "K15");
+		assertRemove(store, 47L, "K47");
+		put(store, 15L, "K15");
+		assertRemove(store, 31L, "K31");
+		assertRemove(store, 15L, "K15");
+		Assertions.assertEquals(0, store.size());
+	}
+
+	@Test
+	void spillStoreResize() {
+		final var store = new AwsPartialCostPairer.SpillStore();
+		for (var i = 0L; i < 100; i++) {
+			put(store, i * 16, "K" + i);
+		}
+		Assertions.assertEquals(100, store.size());
+		for (var i = 99L; i >= 0; i--) {
+			assertRemove(store, i * 16, "K" + i);
+		}
+		Assertions.assertEquals(0, store.size());
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hc.core5.http.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.mockito.ArgumentMatchers;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+
+/**
+ * Test class of {@link AwsPriceFetcher}
+ */
+class AwsPriceFetcherTest {
+
+	private static final String CONTENT = "\"SKU\",\"Description\"\n".repeat(10000);
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+	private final WireMockServer server = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+
+	private final AwsPriceFetcher fetcher = new AwsPriceFetcher();
+
+	@BeforeEach
+	void start() {
+		server.start();
+		fetcher.configuration = mock(ConfigurationResource.class);
+		when(fetcher.configuration.get(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()))
+				.thenAnswer(i -> i.getArgument(1));
+		when(fetcher.configuration.get(AwsPriceFetcher.CONF_HOST_PARALLELISM, 8)).thenReturn(1);
+	}
+
+	@AfterEach
+	void stop() {
+		server.stop();
+		fetcher.shutdown();
+	}
+
+	private URI toUri(final String path) {
+		return URI.create("http://localhost:" + server.port() + path);
+	}
+
+	private void stub(final String path, final int status) {
+		server.stubFor(get(urlEqualTo(path)).willReturn(aResponse().withStatus(status).withBody(CONTENT)));
+	}
+
+	private String read(final AwsPriceMirror.Response response) throws IOException {
+		try (var body = response.body()) {
+			return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	void getGzip() throws IOException {
+		final var bytes = new ByteArrayOutputStream();
+		try (var gzip = new GZIPOutputStream(bytes)) {
+			gzip.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+		}
+		server.stubFor(get(urlEqualTo("/gzip")).willReturn(aResponse().withStatus(HttpStatus.SC_OK)
+				.withHeader("Content-Encoding", "gzip").withHeader("ETag", "\"v1\"").withBody(bytes.toByteArray())));
+		final var response = fetcher.get(toUri("/gzip"), null, null);
+		Assertions.assertEquals(HttpStatus.SC_OK, response.status());
+		Assertions.assertEquals("\"v1\"", response.etag());
+
+		// The decoded length is unknown
+		Assertions.assertEquals(-1, response.length());
+		Assertions.assertEquals(CONTENT, read(response));
+		Assertions.assertTrue(fetcher.getBytesReceived() < CONTENT.length());
+		Assertions.assertEquals(CONTENT.length(), fetcher.getBytesRead());
+		Assertions.assertEquals(1, fetcher.getRequests());
+	}
+
+	@Test
+	void getGzipInvalid() throws Exception {
+		server.stubFor(get(urlEqualTo("/invalid")).willReturn(aResponse().withStatus(HttpStatus.SC_OK)
+				.withHeader("Content-Encoding", "gzip").withBody(CONTENT)));
+		stub("/file", HttpStatus.SC_OK);
+		Assertions.assertThrows(IOException.class, () -> fetcher.get(toUri("/invalid"), null, null));
+
+		// The single permit is released once: still available, but not twice
+		final var first = Assertions.assertTimeoutPreemptively(TIMEOUT, () -> fetcher.get(toUri("/file"), null, null));
+		final var second = CompletableFuture.supplyAsync(() -> {
+			try {
+				return read(fetcher.get(toUri("/file"), null, null));
+			} catch (final IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		Assertions.assertThrows(TimeoutException.class, () -> second.get(1, TimeUnit.SECONDS));
+		Assertions.assertEquals(CONTENT, read(first));
+		Assertions.assertEquals(CONTENT, second.get(TIMEOUT.toSeconds(), TimeUnit.SECONDS));
+	}
+
+	@Test
+	void getHostParallelism() throws Exception {
+		stub("/file", HttpStatus.SC_OK);
+		final var first = fetcher.get(toUri("/file"), null, null);
+
+		// The single permit of the host is held until the content is closed
+		final var second = CompletableFuture.supplyAsync(() -> {
+			try {
+				return read(fetcher.get(toUri("/file"), null, null));
+			} catch (final IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		Assertions.assertThrows(TimeoutException.class, () -> second.get(1, TimeUnit.SECONDS));
+		Assertions.assertEquals(CONTENT, read(first));
+		Assertions.assertEquals(CONTENT, second.get(TIMEOUT.toSeconds(), TimeUnit.SECONDS));
+		Assertions.assertEquals(2, fetcher.getRequests());
+	}
+
+	@Test
+	void getNotOk() {
+		stub("/missing", HttpStatus.SC_NOT_FOUND);
+		stub("/file", HttpStatus.SC_OK);
+
+		// The permit is released without reading the content
+		Assertions.assertTimeoutPreemptively(TIMEOUT, () -> {
+			for (var i = 0; i < 3; i++) {
+				final var response = fetcher.get(toUri("/missing"), "\"v1\"", null);
+				Assertions.assertEquals(HttpStatus.SC_NOT_FOUND, response.status());
+				Assertions.assertNull(response.body());
+			}
+			Assertions.assertEquals(CONTENT, read(fetcher.get(toUri("/file"), null, null)));
+		});
+	}
+
+	@Test
+	void getNotModified() {
+		server.stubFor(get(urlEqualTo("/file")).withHeader("If-None-Match", equalTo("\"v1\""))
+				.willReturn(aResponse().withStatus(HttpStatus.SC_NOT_MODIFIED)));
+		Assertions.assertTimeoutPreemptively(TIMEOUT, () -> {
+			Assertions.assertEquals(HttpStatus.SC_NOT_MODIFIED, fetcher.get(toUri("/file"), "\"v1\"", null).status());
+			Assertions.assertEquals(HttpStatus.SC_NOT_MODIFIED, fetcher.get(toUri("/file"), "\"v1\"", null).status());
+		});
+	}
+
+	@Test
+	void getEarlyClose() {
+		stub("/file", HttpStatus.SC_OK);
+
+		// The permit is released when the content is closed before its end
+		Assertions.assertTimeoutPreemptively(TIMEOUT, () -> {
+			for (var i = 0; i < 3; i++) {
+				try (var body = fetcher.get(toUri("/file"), null, null).body()) {
+					Assertions.assertEquals('"', body.read());
+				}
+			}
+			Assertions.assertEquals(CONTENT, read(fetcher.get(toUri("/file"), null, null)));
+		});
+	}
+
+	@Test
+	void getBodyTimeout() {
+		when(fetcher.configuration.get(AwsPriceFetcher.CONF_BODY_TIMEOUT, 60)).thenReturn(1);
+		server.stubFor(get(urlEqualTo("/stalled")).willReturn(
+				aResponse().withStatus(HttpStatus.SC_OK).withBody(CONTENT).withChunkedDribbleDelay(2, 6000)));
+		stub("/file", HttpStatus.SC_OK);
+
+		// The stalled content fails, and its permit is released
+		Assertions.assertTimeoutPreemptively(TIMEOUT, () -> {
+			final var response = fetcher.get(toUri("/stalled"), null, null);
+			Assertions.assertEquals(HttpStatus.SC_OK, response.status());
+			Assertions.assertThrows(IOException.class, () -> read(response));
+			Assertions.assertEquals(CONTENT, read(fetcher.get(toUri("/file"), null, null)));
+		});
+	}
+
+	@Test
+	void getBodyTimeoutSlowConsumer() throws Exception {
+		when(fetcher.configuration.get(AwsPriceFetcher.CONF_BODY_TIMEOUT, 60)).thenReturn(1);
+		stub("/file", HttpStatus.SC_OK);
+
+		// The content not requested by the consumer does not trigger the timeout
+		final var response = fetcher.get(toUri("/file"), null, null);
+		try (var body = response.body()) {
+			Assertions.assertEquals('"', body.read());
+			Thread.sleep(2500);
+			Assertions.assertEquals(CONTENT.substring(1), new String(body.readAllBytes(), StandardCharsets.UTF_8));
+		}
+	}
+}
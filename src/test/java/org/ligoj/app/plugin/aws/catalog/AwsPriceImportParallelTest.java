@@ -0,0 +1,248 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hc.core5.http.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.ligoj.app.AbstractServerTest;
+import org.ligoj.app.iam.model.CacheCompany;
+import org.ligoj.app.iam.model.CacheUser;
+import org.ligoj.app.model.DelegateNode;
+import org.ligoj.app.model.Node;
+import org.ligoj.app.model.Parameter;
+import org.ligoj.app.model.ParameterValue;
+import org.ligoj.app.model.Project;
+import org.ligoj.app.model.Subscription;
+import org.ligoj.app.plugin.aws.ProvAwsPluginResource;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.AwsPriceImportEc2;
+import org.ligoj.app.plugin.aws.catalog.vm.fargate.AwsPriceImportFargate;
+import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.app.plugin.prov.catalog.ImportCatalogResource;
+import org.ligoj.app.plugin.prov.model.ImportCatalogStatus;
+import org.ligoj.app.plugin.prov.model.ProvContainerPrice;
+import org.ligoj.app.plugin.prov.model.ProvContainerType;
+import org.ligoj.app.plugin.prov.model.ProvDatabasePrice;
+import org.ligoj.app.plugin.prov.model.ProvDatabaseType;
+import org.ligoj.app.plugin.prov.model.ProvFunctionPrice;
+import org.ligoj.app.plugin.prov.model.ProvFunctionType;
+import org.ligoj.app.plugin.prov.model.ProvInstancePrice;
+import org.ligoj.app.plugin.prov.model.ProvInstancePriceTerm;
+import org.ligoj.app.plugin.prov.model.ProvInstanceType;
+import org.ligoj.app.plugin.prov.model.ProvLocation;
+import org.ligoj.app.plugin.prov.model.ProvQuote;
+import org.ligoj.app.plugin.prov.model.ProvStoragePrice;
+import org.ligoj.app.plugin.prov.model.ProvStorageType;
+import org.ligoj.app.plugin.prov.model.ProvSupportPrice;
+import org.ligoj.app.plugin.prov.model.ProvSupportType;
+import org.ligoj.bootstrap.core.security.SecurityHelper;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Test class of {@link AwsPriceImport} with the parallel import: the regional imports run without enclosing
+ * transaction. The data are committed, since the parallel import runs its own transactions, and purged after each
+ * test.
+ */
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
+class AwsPriceImportParallelTest extends AbstractServerTest {
+
+	/**
+	 * The services having a file per region, and the ones having all regions in a single file.
+	 */
+	private static final List<String> SERVICES_REGION = List.of("AWSLambda", "AmazonEC2", "AmazonECS", "AmazonRDS");
+
+	private static final List<String> SERVICES_MULTI_REGION = List.of("AmazonS3", "AmazonEFS");
+
+	/**
+	 * The catalog entities, purged in this order.
+	 */
+	private static final List<Class<?>> CATALOG = List.of(ProvInstancePrice.class, ProvDatabasePrice.class,
+			ProvContainerPrice.class, ProvFunctionPrice.class, ProvStoragePrice.class, ProvSupportPrice.class,
+			ProvInstancePriceTerm.class, ProvInstanceType.class, ProvDatabaseType.class, ProvContainerType.class,
+			ProvFunctionType.class, ProvStorageType.class, ProvSupportType.class, ImportCatalogStatus.class);
+
+	@Autowired
+	private AwsPriceImport resource;
+
+	@Autowired
+	private ImportCatalogResource importCatalogResource;
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	@Autowired
+	private PlatformTransactionManager txManager;
+
+	@BeforeEach
+	void prepareData() throws IOException {
+		inTransaction(() -> {
+			purge();
+			try {
+				persistSystemEntities();
+				persistEntities("csv",
+						new Class<?>[] { Node.class, Project.class, CacheCompany.class, CacheUser.class,
+								DelegateNode.class, Parameter.class, ProvLocation.class, Subscription.class,
+								ParameterValue.class, ProvQuote.class },
+						StandardCharsets.UTF_8);
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		configuration.put(ProvResource.USE_PARALLEL, "1");
+		configuration.put(AwsPriceImportBase.CONF_URL_AWS_PRICES, "http://localhost:" + MOCK_PORT);
+		configure(AwsPriceImportBase.CONF_URL_CO2_INSTANCE, "/carbon-instance.csv");
+		configure(AwsPriceImportBase.CONF_URL_CO2_REGION, "/carbon-region.csv");
+		configure(AwsPriceImportEc2.CONF_URL_EC2_PRICES_SPOT, "/spot.js");
+		configure(AwsPriceImportFargate.CONF_URL_FARGATE_PRICES_SPOT, "/spot-fargate.json");
+		initSpringSecurityContext(DEFAULT_USER, new SimpleGrantedAuthority(SecurityHelper.ADMIN));
+		mockServices("");
+		mock("/carbon-instance.csv", "mock-server/aws/carbon-instance.csv");
+		mock("/carbon-region.csv", "mock-server/aws/carbon-region.csv");
+		mock("/spot.js", "mock-server/aws/spot.js");
+		mock("/spot-fargate.json", "mock-server/aws/spot-fargate.json");
+		mockSavingsPlan("/AWSComputeSavingsPlan/current/region_index.json");
+		mockSavingsPlan("/AWSComputeSavingsPlan/current/eu-west-1/index.json");
+		mockSavingsPlan("/AWSComputeSavingsPlan/current/default/empty.json");
+		mockSavingsPlan("/AWSDatabaseSavingsPlans/current/region_index.json");
+		mockSavingsPlan("/AWSDatabaseSavingsPlans/current/eu-west-1/index.json");
+		clearAllCache();
+		httpServer.start();
+	}
+
+	@AfterEach
+	void cleanData() {
+		List.of(ProvResource.USE_PARALLEL, AwsPriceImportBase.CONF_URL_AWS_PRICES,
+				AwsPriceImportBase.CONF_URL_CO2_INSTANCE, AwsPriceImportBase.CONF_URL_CO2_REGION,
+				AwsPriceImportEc2.CONF_URL_EC2_PRICES_SPOT, AwsPriceImportFargate.CONF_URL_FARGATE_PRICES_SPOT)
+				.forEach(configuration::delete);
+		inTransaction(this::purge);
+	}
+
+	/**
+	 * The prices written by the bulk writer, outside the enclosing transaction of the single transaction import, are
+	 * persisted.
+	 */
+	@Test
+	void installBulkWritten() throws IOException {
+		install();
+
+		// Reserved prices, from the paired up-front and hourly rows
+		Assertions.assertEquals(3, count(ProvInstancePrice.class, "term.code", "NQ3QZPMQV9"));
+
+		// Savings Plan prices of EC2 and Fargate
+		Assertions.assertEquals(1, count(ProvInstancePrice.class, "term.code", "8GU23DFTKP2N43SD"));
+		Assertions.assertEquals(74, count(ProvContainerPrice.class, "term.code", "ZGC49G7XS8QA54BQ"));
+
+		// Fargate ephemeral storage and Lambda prices
+		Assertions.assertEquals(1, count(ProvStoragePrice.class, "code", "eu-west-1-fargate-ephemeral"));
+		Assertions.assertTrue(count(ProvFunctionPrice.class, "location.name", "eu-west-1") > 0);
+	}
+
+	/**
+	 * The prices no more in the catalog are deleted, outside the enclosing transaction of the single transaction
+	 * import.
+	 */
+	@Test
+	void installPurgeStale() throws IOException {
+		install();
+		Assertions.assertEquals(1, count(ProvInstancePrice.class, "code", "OLD_____________.JRTCKXETXF.6YS6EN2CT7"));
+		Assertions.assertEquals(1, count(ProvDatabasePrice.class, "code", "OLD_____________.JRTCKXETXF.6YS6EN2CT7"));
+
+		// Point to another catalog without the v1 only prices
+		mockServices("-v2");
+		configure(AwsPriceImportEc2.CONF_URL_EC2_PRICES_SPOT, "/v2/spot.js");
+		configure(AwsPriceImportFargate.CONF_URL_FARGATE_PRICES_SPOT, "/v2/spot-fargate.json");
+		mock("/v2/spot.js", "mock-server/aws/v2/spot.js");
+		mock("/v2/spot-fargate.json", "mock-server/aws/v2/spot-fargate.json");
+		install();
+
+		Assertions.assertEquals(0, count(ProvInstancePrice.class, "code", "OLD_____________.JRTCKXETXF.6YS6EN2CT7"));
+		Assertions.assertEquals(0, count(ProvDatabasePrice.class, "code", "OLD_____________.JRTCKXETXF.6YS6EN2CT7"));
+		Assertions.assertEquals(1, count(ProvInstancePrice.class, "code", "NEW_____________.JRTCKXETXF.6YS6EN2CT7"));
+		Assertions.assertEquals(1, count(ProvDatabasePrice.class, "code", "NEW_____________.JRTCKXETXF.6YS6EN2CT7"));
+	}
+
+	private void install() throws IOException {
+		importCatalogResource.endTask(ProvAwsPluginResource.KEY, false);
+		importCatalogResource.startTask(ProvAwsPluginResource.KEY, t -> {
+			t.setLocation(null);
+			t.setNbPrices(null);
+			t.setNbTypes(null);
+			t.setWorkload(0);
+			t.setDone(0);
+			t.setPhase(null);
+		});
+		try {
+			resource.install(true);
+		} finally {
+			importCatalogResource.endTask(ProvAwsPluginResource.KEY, false);
+		}
+	}
+
+	private long count(final Class<?> entity, final String property, final String value) {
+		return new TransactionTemplate(txManager).execute(s -> em
+				.createQuery("SELECT COUNT(p) FROM " + entity.getName() + " p WHERE p." + property + " = :value",
+						Long.class)
+				.setParameter("value", value).getSingleResult());
+	}
+
+	private void mock(final String url, final String file) throws IOException {
+		httpServer.stubFor(get(urlEqualTo(url)).willReturn(aResponse().withStatus(HttpStatus.SC_OK)
+				.withBody(IOUtils.toString(new ClassPathResource(file).getInputStream(), StandardCharsets.UTF_8))));
+	}
+
+	private void configure(final String key, final String url) {
+		configuration.put(key, "http://localhost:" + MOCK_PORT + url);
+	}
+
+	private void mockOffer(final String url) throws IOException {
+		mock("/offers/v1.0/aws" + url, "mock-server/aws/offers/v1.0/aws" + url);
+	}
+
+	private void mockSavingsPlan(final String url) throws IOException {
+		mock("/savingsPlan/v1.0/aws" + url, "mock-server/aws/savingsPlan/v1.0/aws" + url);
+	}
+
+	private void mockServices(final String version) throws IOException {
+		mock("/offers/v1.0/aws/index.json", "mock-server/aws/offers/v1.0/aws/index" + version + ".json");
+		for (final var service : SERVICES_MULTI_REGION) {
+			mockOffer("/" + service + "/current/index" + version + ".csv");
+			mockOffer("/" + service + "/current/empty.csv");
+		}
+		for (final var service : SERVICES_REGION) {
+			mockOffer("/" + service + "/current/region_index" + version + ".json");
+			mockOffer("/" + service + "/current/default/empty.csv");
+			mockOffer("/" + service + "/current/eu-west-1/index" + version + ".csv");
+		}
+	}
+
+	private void purge() {
+		CATALOG.forEach(c -> em.createQuery("DELETE FROM " + c.getName()).executeUpdate());
+	}
+
+	private void inTransaction(final Runnable runnable) {
+		new TransactionTemplate(txManager).executeWithoutResult(s -> runnable.run());
+	}
+}
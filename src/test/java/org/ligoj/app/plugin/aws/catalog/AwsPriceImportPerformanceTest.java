@@ -0,0 +1,318 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.ligoj.app.AbstractServerTest;
+import org.ligoj.app.iam.model.CacheCompany;
+import org.ligoj.app.iam.model.CacheUser;
+import org.ligoj.app.model.DelegateNode;
+import org.ligoj.app.model.Node;
+import org.ligoj.app.model.Parameter;
+import org.ligoj.app.model.ParameterValue;
+import org.ligoj.app.model.Project;
+import org.ligoj.app.model.Subscription;
+import org.ligoj.app.plugin.aws.ProvAwsPluginResource;
+import org.ligoj.app.plugin.aws.catalog.fixture.AwsCatalogGenerator;
+import org.ligoj.app.plugin.aws.catalog.fixture.AwsPricingServer;
+import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.app.plugin.prov.catalog.ImportCatalogResource;
+import org.ligoj.app.plugin.prov.model.ImportCatalogStatus;
+import org.ligoj.app.plugin.prov.model.ProvContainerPrice;
+import org.ligoj.app.plugin.prov.model.ProvContainerType;
+import org.ligoj.app.plugin.prov.model.ProvDatabasePrice;
+import org.ligoj.app.plugin.prov.model.ProvDatabaseType;
+import org.ligoj.app.plugin.prov.model.ProvFunctionPrice;
+import org.ligoj.app.plugin.prov.model.ProvFunctionType;
+import org.ligoj.app.plugin.prov.model.ProvInstancePrice;
+import org.ligoj.app.plugin.prov.model.ProvInstancePriceTerm;
+import org.ligoj.app.plugin.prov.model.ProvInstanceType;
+import org.ligoj.app.plugin.prov.model.ProvLocation;
+import org.ligoj.app.plugin.prov.model.ProvQuote;
+import org.ligoj.app.plugin.prov.model.ProvStoragePrice;
+import org.ligoj.app.plugin.prov.model.ProvStorageType;
+import org.ligoj.app.plugin.prov.model.ProvSupportPrice;
+import org.ligoj.app.plugin.prov.model.ProvSupportType;
+import org.ligoj.bootstrap.core.security.SecurityHelper;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * End-to-end performance test of {@link AwsPriceImport}: the whole import of a generated catalog served locally, into
+ * the embedded database, with the single transaction and with the parallel import. The wall time, the heap peak, the
+ * JDBC statements and the read rows per second of each service are written to the <code>perf.result</code>
+ * directory, and checked against the budgets of <code>performance/budget.properties</code>.<br>
+ * Only run by the <code>perf</code> profile, providing the catalog size: <code>mvn -Pperf test</code>. The data are
+ * committed, since the parallel import runs its own transactions, and purged after each import.
+ */
+@Slf4j
+@Tag("performance")
+@EnabledIfSystemProperty(named = AwsPriceImportPerformanceTest.REGIONS, matches = "\\d+")
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(locations = "classpath:/META-INF/spring/application-context-test.xml")
+class AwsPriceImportPerformanceTest extends AbstractServerTest {
+
+	/**
+	 * System property of the amount of generated regions.
+	 */
+	static final String REGIONS = "perf.regions";
+
+	/**
+	 * System property of the amount of generated EC2 rows per region.
+	 */
+	private static final String ROWS = "perf.rows";
+
+	/**
+	 * System property of the tolerated budget overrun, a ratio of the budget.
+	 */
+	private static final String THRESHOLD = "perf.threshold";
+
+	/**
+	 * System property of the directory of the written measures.
+	 */
+	private static final String RESULT = "perf.result";
+
+	private static final String BUDGET = "performance/budget.properties";
+
+	private static final String RATE = ".rows-per-second";
+
+	private static final String RATIO = "-per-row";
+
+	private static final List<String> SERVICES = List.of("ec2", "rds", "fargate", "lambda", "s3", "efs");
+
+	/**
+	 * The catalog entities, purged in this order.
+	 */
+	private static final List<Class<?>> CATALOG = List.of(ProvInstancePrice.class, ProvDatabasePrice.class,
+			ProvContainerPrice.class, ProvFunctionPrice.class, ProvStoragePrice.class, ProvSupportPrice.class,
+			ProvInstancePriceTerm.class, ProvInstanceType.class, ProvDatabaseType.class, ProvContainerType.class,
+			ProvFunctionType.class, ProvStorageType.class, ProvSupportType.class, ImportCatalogStatus.class);
+
+	@TempDir
+	static Path catalog;
+
+	private static AwsPricingServer server;
+
+	@Autowired
+	private AwsPriceImport resource;
+
+	@Autowired
+	private ImportCatalogResource importCatalogResource;
+
+	@Autowired
+	private ConfigurationResource configuration;
+
+	@Autowired
+	private PlatformTransactionManager txManager;
+
+	@BeforeAll
+	static void generateCatalog() throws IOException {
+		new AwsCatalogGenerator(Integer.getInteger(REGIONS), Integer.getInteger(ROWS, AwsCatalogGenerator.MIN_ROWS))
+				.generate(catalog);
+		server = new AwsPricingServer(catalog, 0);
+	}
+
+	@AfterAll
+	static void stopServer() {
+		server.close();
+	}
+
+	@BeforeEach
+	void prepareData() {
+		inTransaction(() -> {
+			purge();
+			persistSystemEntities();
+			persistEntities("csv",
+					new Class<?>[] { Node.class, Project.class, CacheCompany.class, CacheUser.class,
+							DelegateNode.class, Parameter.class, ProvLocation.class, Subscription.class,
+							ParameterValue.class, ProvQuote.class },
+					StandardCharsets.UTF_8);
+		});
+		server.getConfiguration().forEach(configuration::put);
+		initSpringSecurityContext(DEFAULT_USER, new SimpleGrantedAuthority(SecurityHelper.ADMIN));
+	}
+
+	@AfterEach
+	void cleanData() {
+		server.getConfiguration().keySet().forEach(configuration::delete);
+		configuration.delete(ProvResource.USE_PARALLEL);
+		inTransaction(this::purge);
+	}
+
+	@Test
+	void installSequential() throws IOException {
+		check("sequential", measure("sequential", 0));
+	}
+
+	@Test
+	void installParallel() throws IOException {
+		check("parallel", measure("parallel", 1));
+	}
+
+	/**
+	 * Import the whole catalog and return the measures.
+	 */
+	private Map<String, Double> measure(final String mode, final int parallel) throws IOException {
+		configuration.put(ProvResource.USE_PARALLEL, String.valueOf(parallel));
+		importCatalogResource.endTask(ProvAwsPluginResource.KEY, false);
+		importCatalogResource.startTask(ProvAwsPluginResource.KEY, t -> {
+			t.setLocation(null);
+			t.setNbPrices(null);
+			t.setNbTypes(null);
+			t.setWorkload(0);
+			t.setDone(0);
+			t.setPhase(null);
+		});
+
+		final var meters = new SimpleMeterRegistry();
+		final var statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+		final var pools = ManagementFactory.getMemoryPoolMXBeans().stream()
+				.filter(p -> p.getType() == MemoryType.HEAP).toList();
+		Metrics.addRegistry(meters);
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+		System.gc();
+		pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+		final var start = System.nanoTime();
+		try {
+			resource.install(true);
+		} finally {
+			Metrics.removeRegistry(meters);
+			importCatalogResource.endTask(ProvAwsPluginResource.KEY, false);
+		}
+		final var wall = System.nanoTime() - start;
+
+		final var measures = new TreeMap<String, Double>();
+		measures.put(mode + ".wall.ms", (double) TimeUnit.NANOSECONDS.toMillis(wall));
+		measures.put(mode + ".heap.mb", pools.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum() / 1048576d);
+		measures.put(mode + ".statements", (double) statistics.getPrepareStatementCount());
+		var accepted = 0d;
+		for (final var service : SERVICES) {
+			final var rows = count(meters, service, "read");
+			final var seconds = meters.find(AwsImportMetrics.PREFIX + ".import.duration")
+					.tags("service", service, "phase", "prices").timers().stream()
+					.mapToDouble(t -> t.totalTime(TimeUnit.SECONDS)).sum();
+			measures.put(mode + "." + service + ".rows", rows);
+			measures.put(mode + "." + service + RATE, seconds == 0 ? 0 : rows / seconds);
+			accepted += count(meters, service, "accepted");
+		}
+		measures.put(mode + ".statements" + RATIO, accepted == 0 ? 0 : statistics.getPrepareStatementCount() / accepted);
+		measures.put(mode + ".failures", meters.find(AwsImportMetrics.PREFIX + ".import.failures").counters().stream()
+				.mapToDouble(Counter::count).sum());
+		statistics.setStatisticsEnabled(false);
+		log.info("AWS import performance, {} regions of {} rows: {}", Integer.getInteger(REGIONS),
+				Integer.getInteger(ROWS, AwsCatalogGenerator.MIN_ROWS), measures);
+		write(mode, measures);
+		Assertions.assertTrue(measures.get(mode + ".ec2.rows") > 0);
+		// A failed region is skipped without stopping the import: the measures would be meaningless
+		Assertions.assertEquals(0, measures.get(mode + ".failures"), "Failed regional imports");
+		return measures;
+	}
+
+	private double count(final SimpleMeterRegistry meters, final String service, final String state) {
+		return meters.find(AwsImportMetrics.PREFIX + ".import.rows").tags("service", service, "phase", "prices",
+				"state", state).counters().stream().mapToDouble(Counter::count).sum();
+	}
+
+	/**
+	 * Write the measures, with the keys of the budgets.
+	 */
+	private void write(final String mode, final Map<String, Double> measures) throws IOException {
+		final var directory = Path.of(System.getProperty(RESULT, "target/performance"));
+		Files.createDirectories(directory);
+		final var properties = new Properties();
+		properties.setProperty("regions", System.getProperty(REGIONS));
+		properties.setProperty("rows", String.valueOf(Integer.getInteger(ROWS, AwsCatalogGenerator.MIN_ROWS)));
+		measures.forEach((k, v) -> properties.setProperty(k, String.format(Locale.ROOT, "%.3f", v)));
+		try (var out = Files.newBufferedWriter(directory.resolve(mode + ".properties"))) {
+			properties.store(out, "AWS import performance, " + mode);
+		}
+	}
+
+	/**
+	 * Check the measures against the budgets. The absolute budgets are only checked for the catalog size they were
+	 * recorded with.
+	 */
+	private void check(final String mode, final Map<String, Double> measures) throws IOException {
+		final var budgets = new Properties();
+		try (InputStream in = getClass().getClassLoader().getResourceAsStream(BUDGET)) {
+			budgets.load(in);
+		}
+		final var sameSize = System.getProperty(REGIONS).equals(budgets.getProperty("regions"))
+				&& String.valueOf(Integer.getInteger(ROWS, AwsCatalogGenerator.MIN_ROWS))
+						.equals(budgets.getProperty("rows"));
+		final var threshold = Double.parseDouble(System.getProperty(THRESHOLD, "0.2"));
+		final var regressions = new ArrayList<String>();
+		measures.forEach((key, measure) -> {
+			final var budget = budgets.getProperty(key);
+			if (budget == null || budget.isBlank() || !sameSize && !key.endsWith(RATIO)) {
+				return;
+			}
+			final var limit = Double.parseDouble(budget);
+			if (key.endsWith(RATE) ? measure < limit * (1 - threshold) : measure > limit * (1 + threshold)) {
+				regressions.add(String.format(Locale.ROOT, "%s=%.3f (budget %s)", key, measure, budget));
+			}
+		});
+		Assertions.assertTrue(regressions.isEmpty(), () -> "Performance budget regressions: " + regressions);
+	}
+
+	private void purge() {
+		CATALOG.forEach(c -> em.createQuery("DELETE FROM " + c.getName()).executeUpdate());
+	}
+
+	private void inTransaction(final IORunnable runnable) {
+		new TransactionTemplate(txManager).executeWithoutResult(s -> {
+			try {
+				runnable.run();
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * A runnable throwing {@link IOException}.
+	 */
+	@FunctionalInterface
+	private interface IORunnable {
+		void run() throws IOException;
+	}
+}
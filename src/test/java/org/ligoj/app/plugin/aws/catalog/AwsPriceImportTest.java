@@ -3,6 +3,7 @@
  */
 package org.ligoj.app.plugin.aws.catalog;
 
+import io.micrometer.core.instrument.Counter;
 import jakarta.annotation.PostConstruct;
 import jakarta.transaction.Transactional;
 import org.apache.commons.io.IOUtils;
@@ -12,6 +13,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.ligoj.app.AbstractServerTest;
 import org.ligoj.app.iam.model.CacheCompany;
 import org.ligoj.app.iam.model.CacheUser;
@@ -21,6 +23,7 @@ import org.ligoj.app.plugin.aws.catalog.efs.AwsPriceImportEfs;
 import org.ligoj.app.plugin.aws.catalog.lambda.AwsPriceImportLambda;
 import org.ligoj.app.plugin.aws.catalog.s3.AwsPriceImportS3;
 import org.ligoj.app.plugin.aws.catalog.suppport.AwsPriceImportSupport;
+import org.ligoj.app.plugin.aws.catalog.vm.AwsPriceImportSavingsPlan;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.AwsEc2Price;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.AwsPriceImportEc2;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.CsvForBeanEc2;
@@ -60,6 +63,11 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -132,6 +140,9 @@ class AwsPriceImportTest extends AbstractServerTest {
 	@Autowired
 	private ConfigurationResource configuration;
 
+	@Autowired
+	private AwsImportMetrics metrics;
+
 	protected int subscription;
 
 	private static final Properties initialProperties = (Properties) System.getProperties().clone();
@@ -208,6 +219,12 @@ class AwsPriceImportTest extends AbstractServerTest {
 				return this;
 			}
 		}));
+		this.resource.setSavingsPlan(initCatalog(helper, new AwsPriceImportSavingsPlan() {
+			@Override
+			public AwsPriceImportSavingsPlan newProxy() {
+				return this;
+			}
+		}));
 		this.resource.setS3(initCatalog(helper, new AwsPriceImportS3()));
 		this.resource.setEfs(initCatalog(helper, new AwsPriceImportEfs()));
 		this.resource.setSupport(initCatalog(helper, new AwsPriceImportSupport()));
@@ -255,6 +272,7 @@ class AwsPriceImportTest extends AbstractServerTest {
 		new AwsPriceImportRds().newProxy();
 		new AwsPriceImportFargate().newProxy();
 		new AwsPriceImportLambda().newProxy();
+		new AwsPriceImportSavingsPlan().newProxy();
 	}
 
 	/**
@@ -403,6 +421,10 @@ class AwsPriceImportTest extends AbstractServerTest {
 		Assertions.assertEquals(148, cpRepository.findAllBy("term.code", "spot").size()); // Fargate Spot x 2 regions
 		Assertions.assertEquals(21, bpRepository.findAll().size()); // RDS, including 1 Database Savings Plan
 
+		// The Compute Savings Plan file shared by EC2, Fargate and Lambda is fetched once
+		httpServer.verify(1, getRequestedFor(
+				urlEqualTo("/savingsPlan/v1.0/aws/AWSComputeSavingsPlan/current/eu-west-1/index.json")));
+
 		Assertions.assertEquals(148, ctRepository.findAll().size()); // Fargate type
 
 		checkImportStatus(563, 258);
@@ -527,12 +549,23 @@ class AwsPriceImportTest extends AbstractServerTest {
 		em.flush();
 		em.clear();
 
-		// Install again to check the update without change
+		// Check the imported versions
+		Assertions.assertTrue(configuration.get(AbstractAwsImport.CONF_VERSION
+						+ ":service:prov:aws:AmazonEC2:eu-west-1:OnDemand")
+				.startsWith("/offers/v1.0/aws/AmazonEC2/current/eu-west-1/index.json;"));
+
+		// Install again to check the update without change: the unchanged regions are skipped
+		final var skipped = countSkipped();
+		final var downloads = countDownloads();
 		resetImportTask();
 		resource.install(false);
 		checkImportStatus(563 /* same */, 258);
 		checkType();
 
+		// The unchanged price files are counted, and not downloaded again
+		Assertions.assertTrue(countSkipped() > skipped);
+		Assertions.assertEquals(downloads, countDownloads());
+
 		provResource.updateCost(subscription);
 		check(provResource.getConfiguration(subscription), 448.793d, 46.667d);
 
@@ -846,6 +879,201 @@ class AwsPriceImportTest extends AbstractServerTest {
 		checkNoSavingsPlan(4);
 	}
 
+	/**
+	 * Parallel chunked parsing of the regional CSV files
+	 */
+	@Test
+	void installChunked() throws Exception {
+		// Install a new configuration
+		applicationContext.getBean(SystemConfigurationRepository.class).findAll();
+		initSpringSecurityContext(DEFAULT_USER, new org.springframework.security.core.authority.SimpleGrantedAuthority(org.ligoj.bootstrap.core.security.SecurityHelper.ADMIN));
+
+		mockAll();
+		mock404("/savingsPlan/v1.0/aws/AWSComputeSavingsPlan/current/eu-west-1/index.json");
+
+		configuration.put(AwsPriceImportBase.CONF_REGIONS, "eu-west-1"); // Only one region for UTs
+		configuration.put(AbstractAwsImport.CONF_CSV_CHUNK, "1");
+		startMockServer();
+
+		// Same prices as the sequential parsing
+		checkNoSavingsPlan(4);
+	}
+
+	/**
+	 * Parallel chunked parsing of the regional CSV files split into several chunks: the reserved prices split into two
+	 * rows are paired across the chunks
+	 */
+	@Test
+	void installChunkedSeveral() throws Exception {
+		// Install a new configuration
+		applicationContext.getBean(SystemConfigurationRepository.class).findAll();
+		initSpringSecurityContext(DEFAULT_USER, new org.springframework.security.core.authority.SimpleGrantedAuthority(org.ligoj.bootstrap.core.security.SecurityHelper.ADMIN));
+
+		mockAll();
+
+		// About 4KB, so about 12 EC2 chunks and 8 RDS chunks
+		configuration.put(AbstractAwsImport.CONF_CSV_CHUNK, "0.004");
+		startMockServer();
+
+		// Same prices as the sequential parsing
+		resource.install(false);
+		em.flush();
+		em.clear();
+		Assertions.assertEquals(83, ipRepository.findAllBy("term.code", "JRTCKXETXF").size()); // EC2 OD
+		Assertions.assertEquals(3, ipRepository.findAllBy("term.code", "NQ3QZPMQV9").size()); // EC2 Reserved 3y
+		Assertions.assertEquals(191, cpRepository.findAllBy("term.code", "JRTCKXETXF").size()); // Fargate OD
+		Assertions.assertEquals(76, itRepository.findAll().size());
+	}
+
+	/**
+	 * Sequential CSV parsing with a single reused record: same prices as with a new record per row, including the
+	 * paired up-front prices and the Fargate prices built from several rows.
+	 */
+	@Test
+	void installReuse() throws Exception {
+		mockAll();
+		startMockServer();
+		resource.install(false);
+		em.flush();
+		em.clear();
+		final var instances = toCosts(ipRepository.findAll());
+		final var containers = toCosts(cpRepository.findAll());
+
+		// Install again all prices from the reused records
+		configuration.put(AbstractAwsImport.CONF_CSV_REUSE, "1");
+		resetImportTask();
+		resource.install(true);
+		em.flush();
+		em.clear();
+		Assertions.assertEquals(3, ipRepository.findAllBy("term.code", "NQ3QZPMQV9").size()); // EC2 Reserved 3y
+		Assertions.assertEquals(191, cpRepository.findAllBy("term.code", "JRTCKXETXF").size()); // Fargate OD
+		Assertions.assertEquals(instances, toCosts(ipRepository.findAll()));
+		Assertions.assertEquals(containers, toCosts(cpRepository.findAll()));
+	}
+
+	/**
+	 * Return the costs of the prices. Key is the price code.
+	 */
+	private Map<String, List<Double>> toCosts(final List<? extends AbstractTermPriceVm<?>> prices) {
+		return prices.stream().collect(Collectors.toMap(AbstractTermPriceVm::getCode,
+				p -> Arrays.asList(p.getCost(), p.getCostPeriod(), p.getInitialCost())));
+	}
+
+	/**
+	 * Price files fetched through the local mirror, and split in place
+	 */
+	@Test
+	void installMirror() throws Exception {
+		// Install a new configuration
+		applicationContext.getBean(SystemConfigurationRepository.class).findAll();
+		initSpringSecurityContext(DEFAULT_USER, new org.springframework.security.core.authority.SimpleGrantedAuthority(org.ligoj.bootstrap.core.security.SecurityHelper.ADMIN));
+
+		mockAll();
+		mock404("/savingsPlan/v1.0/aws/AWSComputeSavingsPlan/current/eu-west-1/index.json");
+
+		final var mirror = Files.createTempDirectory("ligoj-aws-mirror");
+		configuration.put(AwsPriceImportBase.CONF_REGIONS, "eu-west-1"); // Only one region for UTs
+		configuration.put(AwsPriceMirror.CONF_MIRROR_PATH, mirror.toString());
+		configuration.put(AbstractAwsImport.CONF_CSV_CHUNK, "1");
+		startMockServer();
+
+		// Same prices as the direct download
+		checkNoSavingsPlan(4);
+		try (var files = Files.list(mirror)) {
+			Assertions.assertTrue(files.anyMatch(f -> f.toString().endsWith(".data")));
+		}
+	}
+
+	/**
+	 * Price fingerprints saved once the regional prices are installed, then used to skip the unchanged prices.
+	 */
+	@Test
+	void installFingerprint(@TempDir final Path fingerprints) throws Exception {
+		mockAll();
+		mock404("/savingsPlan/v1.0/aws/AWSComputeSavingsPlan/current/eu-west-1/index.json");
+		configuration.put(AwsFingerprintStore.CONF_FINGERPRINT_PATH, fingerprints.toString());
+		startMockServer();
+
+		// Same prices as without fingerprint
+		final var unchanged = countUnchanged();
+		final var created = countPrices("ec2", "created");
+		checkNoSavingsPlan(4);
+
+		// The prices saved one by one and the bulk written ones are counted
+		Assertions.assertTrue(countPrices("ec2", "created") - created >= ipRepository.count());
+		try (var files = Files.list(fingerprints)) {
+			Assertions.assertTrue(files.anyMatch(f -> f.toString().endsWith(".fp")));
+		}
+		Assertions.assertEquals(unchanged, countUnchanged());
+
+		// Install again the same price files, without the region skip: the prices are skipped by their fingerprint
+		final var price = ipRepository.findByExpected("code", "OLD_____________.JRTCKXETXF.6YS6EN2CT7");
+		deleteVersions();
+		resetImportTask();
+		checkNoSavingsPlan(4);
+		final var unchanged2 = countUnchanged();
+		Assertions.assertTrue(unchanged2 > unchanged);
+		Assertions.assertEquals(price.getId(),
+				ipRepository.findByExpected("code", "OLD_____________.JRTCKXETXF.6YS6EN2CT7").getId());
+
+		// Install again with a new CO2 dataset, keeping the versions: no price file and no price is skipped
+		configuration.put(AwsPriceImportBase.CONF_URL_CO2_INSTANCE,
+				"http://localhost:" + MOCK_PORT + "/carbon-instance.csv");
+		mock("/carbon-instance.csv", "mock-server/aws/carbon-instance.csv");
+		final var skipped = countSkipped();
+		resetImportTask();
+		checkNoSavingsPlan(4);
+		Assertions.assertEquals(skipped, countSkipped());
+		Assertions.assertEquals(unchanged2, countUnchanged());
+	}
+
+	/**
+	 * Forget the imported price file versions, so the unchanged regions are not skipped.
+	 */
+	private void deleteVersions() {
+		applicationContext.getBean(SystemConfigurationRepository.class).findAll().stream().map(c -> c.getName())
+				.filter(n -> n.startsWith(AbstractAwsImport.CONF_VERSION)).toList().forEach(configuration::delete);
+	}
+
+	/**
+	 * Return the amount of prices skipped by their fingerprint, of all imports.
+	 */
+	private double countUnchanged() {
+		return countPrices(null, "unchanged");
+	}
+
+	/**
+	 * Return the amount of price files skipped because unchanged, of all imports.
+	 */
+	private double countSkipped() {
+		return metrics.getMeters().getRegistry().find(AwsImportMetrics.PREFIX + ".import.files")
+				.tag("state", "skipped").counters().stream().mapToDouble(Counter::count).sum();
+	}
+
+	/**
+	 * Return the amount of regional EC2 and RDS price files downloaded.
+	 */
+	private int countDownloads() {
+		return countRequests("/offers/v1.0/aws/AmazonEC2/current/eu-west-1/index.csv")
+				+ countRequests("/offers/v1.0/aws/AmazonRDS/current/eu-west-1/index.csv");
+	}
+
+	private int countRequests(final String url) {
+		return httpServer.findAll(getRequestedFor(urlEqualTo(url))).size();
+	}
+
+	/**
+	 * Return the amount of prices of a state, of all imports.
+	 */
+	private double countPrices(final String service, final String state) {
+		var search = metrics.getMeters().getRegistry().find(AwsImportMetrics.PREFIX + ".import.prices")
+				.tag("state", state);
+		if (service != null) {
+			search = search.tag("service", service);
+		}
+		return search.counters().stream().mapToDouble(Counter::count).sum();
+	}
+
 	private void startMockServer() {
 		clearAllCache();
 		httpServer.start();
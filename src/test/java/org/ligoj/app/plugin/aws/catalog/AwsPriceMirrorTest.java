@@ -0,0 +1,202 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.mockito.ArgumentMatchers;
+
+/**
+ * Test class of {@link AwsPriceMirror}
+ */
+class AwsPriceMirrorTest {
+
+	private static final String URL = "https://pricing.us-east-1.amazonaws.com/offers/v1.0/aws/AmazonEC2/index.csv";
+
+	@TempDir
+	private Path directory;
+
+	private final AwsPriceMirror mirror = new AwsPriceMirror();
+
+	/**
+	 * Content of each URL served by the transport.
+	 */
+	private final Map<String, byte[]> contents = new HashMap<>();
+
+	/**
+	 * Requests received by the transport: URL, entity tag and last modification date.
+	 */
+	private final List<List<String>> requests = new ArrayList<>();
+
+	/**
+	 * When not negative, the content length announced by the transport.
+	 */
+	private long length = -1;
+
+	@BeforeEach
+	void configure() {
+		mirror.configuration = mock(ConfigurationResource.class);
+		when(mirror.configuration.get(AwsPriceMirror.CONF_MIRROR_PATH)).thenReturn(directory.toString());
+		when(mirror.configuration.get(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()))
+				.thenAnswer(i -> i.getArgument(1));
+		mirror.setTransport((uri, etag, lastModified) -> {
+			requests.add(Arrays.asList(uri.toString(), etag, lastModified));
+			final var content = contents.get(uri.toString());
+			if (content == null) {
+				return new AwsPriceMirror.Response(HttpURLConnection.HTTP_NOT_FOUND, null, null, -1, null);
+			}
+			final var current = toEtag(content);
+			if (current.equals(etag)) {
+				return new AwsPriceMirror.Response(HttpURLConnection.HTTP_NOT_MODIFIED, null, null, -1, null);
+			}
+			return new AwsPriceMirror.Response(HttpURLConnection.HTTP_OK, current, "Wed, 01 Jan 2025 00:00:00 GMT",
+					length, new ByteArrayInputStream(content));
+		});
+	}
+
+	private String toEtag(final byte[] content) {
+		return "\"" + Arrays.hashCode(content) + "\"";
+	}
+
+	private byte[] newContent(final String name, final int size) {
+		final var content = new byte[size];
+		Arrays.fill(content, (byte) name.charAt(0));
+		return content;
+	}
+
+	private String read(final String url) throws IOException {
+		try (var input = Channels.newInputStream(mirror.openChannel(url))) {
+			return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private Path toData(final String url) throws NoSuchAlgorithmException {
+		final var key = HexFormat.of()
+				.formatHex(MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8)));
+		return directory.resolve(key + ".data");
+	}
+
+	private Path toMeta(final String url) throws NoSuchAlgorithmException {
+		final var data = toData(url).getFileName().toString();
+		return directory.resolve(data.replace(".data", ".properties"));
+	}
+
+	@Test
+	void openChannelNotModified() throws Exception {
+		contents.put(URL, "SKU,Description\nA,one\n".getBytes(StandardCharsets.UTF_8));
+		Assertions.assertEquals("SKU,Description\nA,one\n", read(URL));
+		Assertions.assertEquals(Arrays.asList(URL, null, null), requests.get(0));
+
+		// Conditional request, the mirrored file is reused
+		Assertions.assertEquals("SKU,Description\nA,one\n", read(URL));
+		Assertions.assertEquals(
+				Arrays.asList(URL, toEtag(contents.get(URL)), "Wed, 01 Jan 2025 00:00:00 GMT"), requests.get(1));
+		Assertions.assertEquals(2, requests.size());
+
+		// Changed content, downloaded again
+		contents.put(URL, "SKU,Description\nB,two\n".getBytes(StandardCharsets.UTF_8));
+		Assertions.assertEquals("SKU,Description\nB,two\n", read(URL));
+		Assertions.assertEquals(3, requests.size());
+	}
+
+	@Test
+	void openChannelChecksum() throws Exception {
+		contents.put(URL, "SKU,Description\nA,one\n".getBytes(StandardCharsets.UTF_8));
+		read(URL);
+
+		// Corrupted mirrored file of the same size: not reused although not modified
+		Files.writeString(toData(URL), "SKU,Description\nX,one\n");
+		Assertions.assertEquals("SKU,Description\nA,one\n", read(URL));
+		Assertions.assertEquals(3, requests.size());
+		Assertions.assertNotNull(requests.get(1).get(1));
+		Assertions.assertEquals(Arrays.asList(URL, null, null), requests.get(2));
+
+		// Truncated mirrored file
+		Files.writeString(toData(URL), "SKU");
+		Assertions.assertEquals("SKU,Description\nA,one\n", read(URL));
+		Assertions.assertEquals(5, requests.size());
+		Assertions.assertEquals(Arrays.asList(URL, null, null), requests.get(4));
+	}
+
+	@Test
+	void openChannelTruncatedDownload() throws Exception {
+		contents.put(URL, "SKU,Description\nA,one\n".getBytes(StandardCharsets.UTF_8));
+		length = 1000;
+		Assertions.assertTrue(Assertions.assertThrows(IOException.class, () -> mirror.openChannel(URL)).getMessage()
+				.startsWith("Truncated price file"));
+		try (var files = Files.list(directory)) {
+			Assertions.assertEquals(0, files.count());
+		}
+	}
+
+	@Test
+	void openChannelNotFound() {
+		Assertions.assertThrows(IOException.class, () -> mirror.openChannel(URL));
+	}
+
+	@Test
+	void openChannelDisabled() throws IOException {
+		Assertions.assertNull(mirror.openChannel("file:///tmp/index.csv"));
+		when(mirror.configuration.get(AwsPriceMirror.CONF_MIRROR_PATH)).thenReturn(null);
+		Assertions.assertNull(mirror.openChannel(URL));
+		Assertions.assertTrue(requests.isEmpty());
+	}
+
+	@Test
+	void openChannelEvict() throws Exception {
+		when(mirror.configuration.get(ArgumentMatchers.eq(AwsPriceMirror.CONF_MIRROR_SIZE), ArgumentMatchers.anyInt()))
+				.thenReturn(1);
+		final var urlA = URL.replace("index", "a");
+		final var urlB = URL.replace("index", "b");
+		final var urlC = URL.replace("index", "c");
+		contents.put(urlA, newContent("a", 400 * 1024));
+		contents.put(urlB, newContent("b", 400 * 1024));
+		contents.put(urlC, newContent("c", 400 * 1024));
+		read(urlA);
+		read(urlB);
+		Files.setLastModifiedTime(toMeta(urlA), FileTime.fromMillis(1000));
+		Files.setLastModifiedTime(toMeta(urlB), FileTime.fromMillis(2000));
+
+		// The reused file is the most recently used one
+		read(urlA);
+		Assertions.assertTrue(Files.getLastModifiedTime(toMeta(urlA)).toMillis() > 2000);
+
+		// The least recently used file is evicted, not the mirrored one
+		read(urlC);
+		Assertions.assertTrue(Files.exists(toData(urlA)));
+		Assertions.assertFalse(Files.exists(toData(urlB)));
+		Assertions.assertFalse(Files.exists(toMeta(urlB)));
+		Assertions.assertTrue(Files.exists(toData(urlC)));
+
+		// The evicted file is downloaded again, and evicts the least recently used one
+		Files.setLastModifiedTime(toMeta(urlC), FileTime.fromMillis(1000));
+		Assertions.assertEquals(400 * 1024, read(urlB).length());
+		Assertions.assertTrue(Files.exists(toData(urlB)));
+		Assertions.assertFalse(Files.exists(toData(urlC)));
+		Assertions.assertTrue(Files.exists(toData(urlA)));
+	}
+}
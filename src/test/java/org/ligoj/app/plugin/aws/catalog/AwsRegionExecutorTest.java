@@ -0,0 +1,157 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.prov.ProvResource;
+import org.ligoj.bootstrap.resource.system.configuration.ConfigurationResource;
+import org.mockito.ArgumentMatchers;
+
+/**
+ * Test class of {@link AwsRegionExecutor}
+ */
+class AwsRegionExecutorTest {
+
+	private final AwsRegionExecutor executor = new AwsRegionExecutor();
+
+	private final AtomicInteger running = new AtomicInteger();
+
+	private final AtomicInteger maxRunning = new AtomicInteger();
+
+	@BeforeEach
+	void configure() {
+		executor.configuration = mock(ConfigurationResource.class);
+		when(executor.configuration.get(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()))
+				.thenAnswer(i -> i.getArgument(1));
+	}
+
+	@AfterEach
+	void shutdown() {
+		executor.shutdown();
+	}
+
+	private void configure(final String key, final int value) {
+		when(executor.configuration.get(ArgumentMatchers.eq(key), ArgumentMatchers.anyInt())).thenReturn(value);
+	}
+
+	private void run(final Integer item) {
+		final var current = running.incrementAndGet();
+		maxRunning.accumulateAndGet(current, Math::max);
+		try {
+			Thread.sleep(50);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			running.decrementAndGet();
+		}
+	}
+
+	private List<Integer> newItems(final int count) {
+		return IntStream.range(0, count).boxed().toList();
+	}
+
+	@Test
+	void forEachThreads() {
+		configure(AwsRegionExecutor.CONF_THREADS, 3);
+		configure(AwsRegionExecutor.CONF_REGION_PERMITS, 10);
+		executor.forEach(newItems(20), i -> "region-" + i, this::run);
+		Assertions.assertEquals(3, maxRunning.get());
+		Assertions.assertEquals(0, executor.getQueueDepth());
+		Assertions.assertEquals(0, executor.getRunning());
+
+		// The bound follows the configuration
+		maxRunning.set(0);
+		configure(AwsRegionExecutor.CONF_THREADS, 5);
+		executor.forEach(newItems(20), i -> "region-" + i, this::run);
+		Assertions.assertEquals(5, maxRunning.get());
+	}
+
+	@Test
+	void forEachRegionPermits() {
+		configure(AwsRegionExecutor.CONF_THREADS, 8);
+		configure(AwsRegionExecutor.CONF_REGION_PERMITS, 2);
+		executor.forEach(newItems(10), i -> "eu-west-1", this::run);
+		Assertions.assertEquals(2, maxRunning.get());
+		Assertions.assertEquals(0, executor.getRegionWaiting());
+	}
+
+	@Test
+	void forEachFailure() {
+		final var done = Collections.synchronizedList(new ArrayList<Integer>());
+		final var items = newItems(10);
+
+		// All tasks are completed, then the first failure in the item order is rethrown
+		Assertions.assertEquals("2", Assertions.assertThrows(IllegalStateException.class,
+				() -> executor.forEach(items, i -> "region-" + i, i -> {
+					if (i == 2 || i == 7) {
+						throw new IllegalStateException(String.valueOf(i));
+					}
+					done.add(i);
+				})).getMessage());
+		Assertions.assertEquals(8, done.size());
+		Assertions.assertEquals(0, executor.getRunning());
+	}
+
+	@Test
+	void forEachSource() throws IOException {
+		configure(AwsRegionExecutor.CONF_THREADS, 3);
+		configure(AwsRegionExecutor.CONF_REGION_PERMITS, 10);
+		final var submitted = new AtomicInteger();
+		final var maxSubmitted = new AtomicInteger();
+		executor.forEach((Consumer<Integer> consumer) -> newItems(20).forEach(i -> {
+			consumer.accept(i);
+			maxSubmitted.accumulateAndGet(submitted.incrementAndGet(), Math::max);
+		}), i -> "region-" + i, i -> {
+			run(i);
+			submitted.decrementAndGet();
+		});
+
+		// The source is blocked while all slots are taken: only the items of the running tasks are held
+		Assertions.assertEquals(3, maxRunning.get());
+		Assertions.assertTrue(maxSubmitted.get() <= 4);
+		Assertions.assertEquals(0, executor.getRunning());
+	}
+
+	@Test
+	void forEachSourceFailure() {
+		final var done = Collections.synchronizedList(new ArrayList<Integer>());
+
+		// The submitted tasks are completed, then the source failure is thrown
+		Assertions.assertEquals("Broken stream", Assertions.assertThrows(IOException.class,
+				() -> executor.forEach((Consumer<Integer> consumer) -> {
+					newItems(5).forEach(consumer);
+					throw new IOException("Broken stream");
+				}, i -> "region-" + i, i -> {
+					run(i);
+					done.add(i);
+				})).getMessage());
+		Assertions.assertEquals(5, done.size());
+		Assertions.assertEquals(0, executor.getRunning());
+	}
+
+	@Test
+	void forEachSequential() {
+		configure(ProvResource.USE_PARALLEL, 0);
+		final var thread = Thread.currentThread();
+		executor.forEach(newItems(5), i -> "region-" + i, i -> {
+			Assertions.assertSame(thread, Thread.currentThread());
+			run(i);
+		});
+		Assertions.assertEquals(1, maxRunning.get());
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Test class of {@link AwsRegionPricesReader}
+ */
+class AwsRegionPricesReaderTest {
+
+	private final AwsRegionPricesReader<AwsRegionPrices> reader = new AwsRegionPricesReader<>(new ObjectMapper(),
+			AwsRegionPrices.class);
+
+	private InputStream toStream(final String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private List<String> read(final String content) throws IOException {
+		final var regions = new ArrayList<String>();
+		reader.read(toStream(content), r -> regions.add(r.getRegion()));
+		return regions;
+	}
+
+	@Test
+	void readJson() throws IOException {
+		Assertions.assertEquals(List.of("us-east-1", "eu-west-1"),
+				read("{\"vers\":0.01,\"config\":{\"rate\":\"perhr\",\"currencies\":[\"USD\"],\"regions\":["
+						+ "{\"region\":\"us-east-1\",\"instanceTypes\":[{\"type\":\"a\"}]},{\"region\":\"eu-west-1\"}],"
+						+ "\"other\":{\"regions\":[{\"region\":\"ignored\"}]}},\"regions\":[{\"region\":\"ignored\"}]}"));
+	}
+
+	@Test
+	void readJsonp() throws IOException {
+		// The prefix is skipped up to the first object, the suffix is never read
+		Assertions.assertEquals(List.of("us-east-1"), read(
+				"/*\n * Comment (with) \"quotes\"\n */\ncallback({\"config\":{\"regions\":[{\"region\":\"us-east-1\"}]}});"
+						+ "garbage"));
+	}
+
+	@Test
+	void readNoObject() throws IOException {
+		Assertions.assertEquals(List.of(), read("callback();"));
+		Assertions.assertEquals(List.of(), read(""));
+	}
+
+	@Test
+	void readNoRegions() throws IOException {
+		Assertions.assertEquals(List.of(), read("{\"config\":{\"regions\":{}}}"));
+		Assertions.assertEquals(List.of(), read("{\"config\":[{\"regions\":[{\"region\":\"ignored\"}]}]}"));
+	}
+
+	@Test
+	void readStreaming() {
+		// The regions are emitted before the end of the stream is read
+		final var regions = new ArrayList<String>();
+		final var input = new SequenceInputStream(
+				toStream("callback({\"config\":{\"regions\":[{\"region\":\"us-east-1\"},{\"region\":\"eu-west-1\"},"),
+				new InputStream() {
+					@Override
+					public int read() throws IOException {
+						throw new IOException("Broken stream");
+					}
+				});
+		Assertions.assertThrows(IOException.class, () -> reader.read(input, r -> regions.add(r.getRegion())));
+		Assertions.assertEquals(List.of("us-east-1", "eu-west-1"), regions);
+	}
+}
@@ -6,7 +6,11 @@ package org.ligoj.app.plugin.aws.catalog;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.ligoj.app.plugin.aws.catalog.vm.ec2.CsvForBeanEc2;
@@ -33,6 +37,18 @@ class CsvForBeanEc2Test {
 		assertReadNull("mock-server/aws/index-ec2-small-too-few.csv");
 	}
 
+	@Test
+	void readTruncated() throws IOException {
+		// The row is truncated after the filtered columns
+		final var csv = IOUtils.toString(
+				new ClassPathResource("mock-server/aws/index-ec2-small-ok.csv").getInputStream(),
+				StandardCharsets.UTF_8);
+		final var row = csv.lastIndexOf("HB5V2X8TXQUTDZBV");
+		final var columns = Arrays.copyOf(csv.substring(row).split(",", -1), 45);
+		final var reader = new BufferedReader(new StringReader(csv.substring(0, row) + String.join(",", columns)));
+		Assertions.assertNull(new CsvForBeanEc2(reader).read());
+	}
+
 	@Test
 	void readDedicatedHost() throws IOException {
 		assertReadNull("mock-server/aws/index-ec2-small-dedicated-host.csv");
@@ -47,6 +63,37 @@ class CsvForBeanEc2Test {
 		Assertions.assertEquals("HB5V2X8TXQUTDZBW", beanEc2.read().getSku());
 	}
 
+	@Test
+	void readReuse() throws IOException {
+		// The second row has no vCPU and no processor
+		final var csv = IOUtils.toString(
+				new ClassPathResource("mock-server/aws/index-ec2-small-compute.csv").getInputStream(),
+				StandardCharsets.UTF_8);
+		final var last = csv.lastIndexOf("HB5V2X8TXQUTDZBW");
+		final var reader = new BufferedReader(new StringReader(csv.substring(0, last)
+				+ csv.substring(last).replace(",Compute optimized,2,Intel Xeon Family,", ",Compute optimized,,,")));
+		final var beanEc2 = new CsvForBeanEc2(reader);
+		beanEc2.setReuse(true);
+		final var first = beanEc2.read();
+		Assertions.assertEquals("HB5V2X8TXQUTDZBV", first.getSku());
+		Assertions.assertEquals(2d, first.getCpu());
+		Assertions.assertEquals("Intel Xeon Family", first.getPhysicalProcessor());
+		final var snapshot = AwsCsvBinder.copy(first);
+		final var second = beanEc2.read();
+		Assertions.assertSame(first, second);
+		Assertions.assertEquals("HB5V2X8TXQUTDZBW", second.getSku());
+
+		// The empty values of the second row are reset, not kept from the first one
+		Assertions.assertEquals(0d, second.getCpu());
+		Assertions.assertNull(second.getPhysicalProcessor());
+
+		// The snapshot keeps the first row
+		Assertions.assertEquals("HB5V2X8TXQUTDZBV", snapshot.getSku());
+		Assertions.assertEquals(2d, snapshot.getCpu());
+		Assertions.assertEquals("Intel Xeon Family", snapshot.getPhysicalProcessor());
+		Assertions.assertEquals(first.getInstanceType(), snapshot.getInstanceType());
+	}
+
 	@Test
 	void read() throws IOException {
 		final var reader = new BufferedReader(new InputStreamReader(
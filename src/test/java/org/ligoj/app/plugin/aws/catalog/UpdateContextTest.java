@@ -0,0 +1,126 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.prov.model.ProvInstancePriceTerm;
+import org.ligoj.app.plugin.prov.model.ProvInstanceType;
+
+/**
+ * Test class of {@link UpdateContext}
+ */
+class UpdateContextTest {
+
+	private static final int REGIONS = 8;
+
+	private final UpdateContext context = new UpdateContext();
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private final AtomicInteger creations = new AtomicInteger();
+
+	private List<ProvInstancePriceTerm> loadTerms() {
+		loads.incrementAndGet();
+		final var term = new ProvInstancePriceTerm();
+		term.setCode("JRTCKXETXF");
+		return List.of(term);
+	}
+
+	/**
+	 * Run the given task in concurrent regions, released at the same time, and return their results.
+	 */
+	private <T> List<T> runRegions(final Callable<T> task) throws InterruptedException, ExecutionException {
+		final var start = new CountDownLatch(1);
+		try (var executor = Executors.newFixedThreadPool(REGIONS)) {
+			final var futures = new ArrayList<Future<T>>();
+			for (var i = 0; i < REGIONS; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					return task.call();
+				}));
+			}
+			start.countDown();
+			final var results = new ArrayList<T>();
+			for (final var future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		}
+	}
+
+	/**
+	 * Create a term as the regional imports do, counting the actual creations.
+	 */
+	private ProvInstancePriceTerm newTermAsNeeded(final Map<String, ProvInstancePriceTerm> registry,
+			final String code) {
+		return registry.computeIfAbsent(code, c -> {
+			creations.incrementAndGet();
+			final var term = new ProvInstancePriceTerm();
+			term.setCode(c);
+			return term;
+		});
+	}
+
+	@Test
+	void getRegistryConcurrentLoad() throws Exception {
+		final var registries = runRegions(() -> context.getRegistry(ProvInstancePriceTerm.class, () -> {
+			try {
+				Thread.sleep(50);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return loadTerms();
+		}));
+
+		// Loaded once, then shared by all regions
+		Assertions.assertEquals(1, loads.get());
+		registries.forEach(r -> Assertions.assertSame(registries.getFirst(), r));
+		Assertions.assertEquals("JRTCKXETXF", registries.getFirst().get("JRTCKXETXF").getCode());
+	}
+
+	@Test
+	void getRegistryConcurrentCreate() throws Exception {
+		final var terms = runRegions(
+				() -> newTermAsNeeded(context.getRegistry(ProvInstancePriceTerm.class, this::loadTerms), "NEW"));
+
+		// Created once, all regions share the same new term
+		Assertions.assertEquals(1, creations.get());
+		terms.forEach(t -> Assertions.assertSame(terms.getFirst(), t));
+		Assertions.assertSame(terms.getFirst(),
+				context.getRegistry(ProvInstancePriceTerm.class, this::loadTerms).get("NEW"));
+
+		// The persisted term is reused
+		Assertions.assertEquals("JRTCKXETXF", runRegions(() -> newTermAsNeeded(
+				context.getRegistry(ProvInstancePriceTerm.class, this::loadTerms), "JRTCKXETXF")).getFirst().getCode());
+		Assertions.assertEquals(1, creations.get());
+		Assertions.assertEquals(1, loads.get());
+	}
+
+	@Test
+	void getRegistryType() throws Exception {
+		// Each entity type has its own registry
+		final var types = runRegions(() -> context.getRegistry(ProvInstanceType.class, List::<ProvInstanceType>of)
+				.computeIfAbsent("m5.large", c -> {
+					creations.incrementAndGet();
+					final var type = new ProvInstanceType();
+					type.setCode(c);
+					return type;
+				}));
+		Assertions.assertEquals(1, creations.get());
+		types.forEach(t -> Assertions.assertSame(types.getFirst(), t));
+		final var terms = context.getRegistry(ProvInstancePriceTerm.class, this::loadTerms);
+		Assertions.assertFalse(terms.containsKey("m5.large"));
+	}
+}
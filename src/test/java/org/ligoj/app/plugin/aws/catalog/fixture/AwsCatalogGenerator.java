@@ -0,0 +1,533 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog.fixture;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Deterministic generator of a production sized AWS price catalog, with the layout of the AWS price list API. The
+ * CSV price files repeat the data rows of the mock server fixtures: each repetition has its own SKUs, shifts the
+ * instance type generations and scales the prices. So the rows keep the fixture order, including the partial
+ * up-front pairs, and the same filtered ratio. The Savings Plan, spot and CO2 files are derived from the generated
+ * OnDemand prices and instance types.<br>
+ * The size of the catalog is driven by the amount of regions, from {@value #MIN_REGIONS} to {@value #MAX_REGIONS},
+ * and by the amount of rows of each regional EC2 price file, from {@value #MIN_ROWS} to {@value #MAX_ROWS}. The
+ * other price files are sized from this amount, with the ratios of the real catalog. A region with 2M EC2 rows weighs
+ * about 1.5 GB on disk.
+ */
+public class AwsCatalogGenerator {
+
+	/**
+	 * Minimal amount of regions.
+	 */
+	public static final int MIN_REGIONS = 1;
+
+	/**
+	 * Maximal amount of regions.
+	 */
+	public static final int MAX_REGIONS = 30;
+
+	/**
+	 * Minimal amount of rows of a regional EC2 price file.
+	 */
+	public static final int MIN_ROWS = 10_000;
+
+	/**
+	 * Maximal amount of rows of a regional EC2 price file.
+	 */
+	public static final int MAX_ROWS = 2_000_000;
+
+	private static final String FIXTURES = "mock-server/aws/";
+
+	private static final String OFFERS = "offers/v1.0/aws/";
+
+	private static final String SAVINGS_PLAN = "savingsPlan/v1.0/aws/";
+
+	private static final String COMPUTE_SP = "AWSComputeSavingsPlan";
+
+	private static final String DATABASE_SP = "AWSDatabaseSavingsPlans";
+
+	/**
+	 * The known regions, then the synthetic ones. Code and human name.
+	 */
+	private static final String[][] KNOWN_REGIONS = { { "us-east-1", "US East (N. Virginia)" },
+			{ "eu-west-1", "EU (Ireland)" }, { "us-east-2", "US East (Ohio)" }, { "us-west-1", "US West (N. California)" },
+			{ "us-west-2", "US West (Oregon)" }, { "eu-central-1", "EU (Frankfurt)" }, { "eu-west-2", "EU (London)" },
+			{ "eu-west-3", "EU (Paris)" }, { "ap-northeast-1", "Asia Pacific (Tokyo)" },
+			{ "ap-northeast-2", "Asia Pacific (Seoul)" }, { "ap-southeast-1", "Asia Pacific (Singapore)" },
+			{ "ap-southeast-2", "Asia Pacific (Sydney)" }, { "ap-south-1", "Asia Pacific (Mumbai)" },
+			{ "ca-central-1", "Canada (Central)" }, { "sa-east-1", "South America (São Paulo)" },
+			{ "eu-north-1", "EU (Stockholm)" }, { "eu-south-1", "Europe (Milan)" },
+			{ "af-south-1", "Africa (Cape Town)" }, { "ap-east-1", "Asia Pacific (Hong Kong)" },
+			{ "me-south-1", "Middle East (Bahrain)" }, { "ap-northeast-3", "Asia Pacific (Osaka-Local)" },
+			{ "cn-north-1", "China (Beijing)" }, { "cn-northwest-1", "China (Ningxia)" },
+			{ "us-gov-west-1", "US Gov West 1" }, { "us-gov-east-1", "GovCloud (US-East)" } };
+
+	/**
+	 * The Savings Plan offers: duration in years and purchase option.
+	 */
+	private static final String[][] SP_OFFERS = { { "1", "No" }, { "1", "Partial" }, { "1", "All" }, { "3", "No" },
+			{ "3", "Partial" }, { "3", "All" } };
+
+	/**
+	 * Instance type code: optional "db." prefix, family, generation, attributes and size.
+	 */
+	private static final Pattern TYPE = Pattern.compile("(db\\.)?([a-z]+)(\\d+)([a-z-]*)(\\..+)");
+
+	/**
+	 * The amount of instance type generations produced from a fixture type.
+	 */
+	private static final int GENERATIONS = 8;
+
+	private final int regions;
+
+	private final int rows;
+
+	/**
+	 * The generated EC2 instance types, with their fixture type.
+	 */
+	private final Map<String, String> ec2Types = new LinkedHashMap<>();
+
+	/**
+	 * An OnDemand price of a regional price file, discounted by the Savings Plans.
+	 */
+	private record OnDemand(String sku, String service, String usageType, double price) {
+	}
+
+	/**
+	 * Constructor with the size of the catalog.
+	 *
+	 * @param regions The amount of regions, from {@value #MIN_REGIONS} to {@value #MAX_REGIONS}.
+	 * @param rows    The amount of rows of each regional EC2 price file, from {@value #MIN_ROWS} to
+	 *                {@value #MAX_ROWS}. Rounded up to entire fixture repetitions.
+	 */
+	public AwsCatalogGenerator(final int regions, final int rows) {
+		if (regions < MIN_REGIONS || regions > MAX_REGIONS) {
+			throw new IllegalArgumentException("Regions must be within [" + MIN_REGIONS + "," + MAX_REGIONS + "]");
+		}
+		if (rows < MIN_ROWS || rows > MAX_ROWS) {
+			throw new IllegalArgumentException("Rows must be within [" + MIN_ROWS + "," + MAX_ROWS + "]");
+		}
+		this.regions = regions;
+		this.rows = rows;
+	}
+
+	/**
+	 * Return the generated region codes.
+	 *
+	 * @return The generated region codes.
+	 */
+	public List<String> getRegions() {
+		final var codes = new ArrayList<String>();
+		for (var r = 0; r < regions; r++) {
+			codes.add(toRegion(r));
+		}
+		return codes;
+	}
+
+	private String toRegion(final int region) {
+		return region < KNOWN_REGIONS.length ? KNOWN_REGIONS[region][0]
+				: String.format(Locale.ENGLISH, "xx-synthetic-%d", region - KNOWN_REGIONS.length + 1);
+	}
+
+	private String toRegionName(final int region) {
+		return region < KNOWN_REGIONS.length ? KNOWN_REGIONS[region][1]
+				: "Synthetic " + (region - KNOWN_REGIONS.length + 1);
+	}
+
+	/**
+	 * Generate the catalog.
+	 *
+	 * @param root The root directory, as the root of the AWS price list API.
+	 * @throws IOException When a file cannot be written.
+	 */
+	public void generate(final Path root) throws IOException {
+		final var ec2 = new Template("AmazonEC2/current/eu-west-1/index.csv");
+		final var rds = new Template("AmazonRDS/current/eu-west-1/index.csv");
+		final var ecs = new Template("AmazonECS/current/eu-west-1/index.csv");
+		final var lambda = new Template("AWSLambda/current/eu-west-1/index.csv");
+		writeOfferIndex(root);
+		for (final var service : List.of("AmazonEC2", "AmazonRDS", "AmazonECS", "AWSLambda")) {
+			writeRegionIndex(root, service);
+		}
+		writeSavingsPlanIndex(root, COMPUTE_SP);
+		writeSavingsPlanIndex(root, DATABASE_SP);
+		for (var r = 0; r < regions; r++) {
+			final var computeRates = new ArrayList<OnDemand>();
+			final var databaseRates = new ArrayList<OnDemand>();
+			writeRegion(root, "AmazonEC2", ec2, 'E', r, rows, computeRates);
+			writeRegion(root, "AmazonRDS", rds, 'R', r, rows / 2, databaseRates);
+			writeRegion(root, "AmazonECS", ecs, 'F', r, rows / 500, computeRates);
+			writeRegion(root, "AWSLambda", lambda, 'L', r, rows / 500, computeRates);
+			writeSavingsPlan(root, COMPUTE_SP, r, "Compute", computeRates);
+			writeSavingsPlan(root, DATABASE_SP, r, "Database", databaseRates);
+		}
+		writeGlobal(root, "AmazonS3", new Template("AmazonS3/current/index.csv"), 'S', rows / 100);
+		writeGlobal(root, "AmazonEFS", new Template("AmazonEFS/current/index.csv"), 'N', rows / 100);
+		writeSpot(root);
+		writeCo2(root);
+	}
+
+	private void writeOfferIndex(final Path root) throws IOException {
+		final var json = new StringBuilder("{\"formatVersion\":\"v1.0\",\"offers\":{");
+		var first = true;
+		for (final var service : List.of("AmazonEC2", "AmazonRDS", "AmazonECS", "AWSLambda", "AmazonS3", "AmazonEFS")) {
+			final var current = "/" + OFFERS + service + "/current/";
+			json.append(first ? "" : ",").append('"').append(service).append("\":{\"offerCode\":\"").append(service)
+					.append("\",\"currentVersionUrl\":\"").append(current).append("index.json\"")
+					.append(",\"currentRegionIndexUrl\":\"").append(current).append("region_index.json\"");
+			if (!service.startsWith("AmazonS3") && !"AmazonEFS".equals(service)) {
+				json.append(",\"currentSavingsPlanIndexUrl\":\"/").append(SAVINGS_PLAN)
+						.append("AmazonRDS".equals(service) ? DATABASE_SP : COMPUTE_SP)
+						.append("/current/region_index.json\"");
+			}
+			json.append('}');
+			first = false;
+		}
+		write(root.resolve(OFFERS + "index.json"), json.append("}}").toString());
+	}
+
+	private void writeRegionIndex(final Path root, final String service) throws IOException {
+		final var json = new StringBuilder("{\"formatVersion\":\"v1.0\",\"regions\":{");
+		for (var r = 0; r < regions; r++) {
+			json.append(r == 0 ? "" : ",").append('"').append(toRegion(r)).append("\":{\"regionCode\":\"")
+					.append(toRegion(r)).append("\",\"currentVersionUrl\":\"/").append(OFFERS).append(service)
+					.append("/current/").append(toRegion(r)).append("/index.json\"}");
+		}
+		write(root.resolve(OFFERS + service + "/current/region_index.json"), json.append("}}").toString());
+	}
+
+	private void writeSavingsPlanIndex(final Path root, final String plan) throws IOException {
+		final var json = new StringBuilder("{\"regions\":[");
+		for (var r = 0; r < regions; r++) {
+			json.append(r == 0 ? "" : ",").append("{\"regionCode\":\"").append(toRegion(r))
+					.append("\",\"versionUrl\":\"/").append(SAVINGS_PLAN).append(plan).append("/current/")
+					.append(toRegion(r)).append("/index.json\"}");
+		}
+		write(root.resolve(SAVINGS_PLAN + plan + "/current/region_index.json"), json.append("]}").toString());
+	}
+
+	/**
+	 * Write a regional price file, and collect its OnDemand prices.
+	 */
+	private void writeRegion(final Path root, final String service, final Template template, final char prefix,
+			final int region, final int size, final List<OnDemand> onDemands) throws IOException {
+		final var file = root.resolve(OFFERS + service + "/current/" + toRegion(region) + "/index.csv");
+		try (var writer = template.open(file)) {
+			for (var k = 0; k * template.rows.size() < Math.max(1, size); k++) {
+				template.writeReplica(writer, prefix, region, k, toRegionName(region), onDemands);
+			}
+		}
+	}
+
+	/**
+	 * Write a global price file, with the replicas spread over the regions.
+	 */
+	private void writeGlobal(final Path root, final String service, final Template template, final char prefix,
+			final int size) throws IOException {
+		try (var writer = template.open(root.resolve(OFFERS + service + "/current/index.csv"))) {
+			for (var k = 0; k * template.rows.size() < Math.max(1, size); k++) {
+				template.writeReplica(writer, prefix, k % regions, k / regions, toRegionName(k % regions), null);
+			}
+		}
+	}
+
+	/**
+	 * Write a regional Savings Plan price file discounting the given OnDemand prices.
+	 */
+	private void writeSavingsPlan(final Path root, final String plan, final int region, final String kind,
+			final List<OnDemand> onDemands) throws IOException {
+		final var file = root.resolve(SAVINGS_PLAN + plan + "/current/" + toRegion(region) + "/index.json");
+		Files.createDirectories(file.getParent());
+		try (var writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write("{\"version\":\"20200220220300\",\"products\":[");
+			for (var o = 0; o < SP_OFFERS.length; o++) {
+				writer.write(String.format(Locale.ENGLISH, "%s{\"sku\":\"%s\",\"productFamily\":\"%sSavingsPlans\","
+						+ "\"serviceCode\":\"%sSavingsPlans\",\"usageType\":\"%sSP:%syr%sUpfront\",\"attributes\":{"
+						+ "\"purchaseOption\":\"%s Upfront\",\"purchaseTerm\":\"%syr\",\"location\":\"Any\"}}",
+						o == 0 ? "" : ",", toSpSku(kind, region, o), kind, kind, kind, SP_OFFERS[o][0],
+						SP_OFFERS[o][1], SP_OFFERS[o][1], SP_OFFERS[o][0]));
+			}
+			writer.write("],\"terms\":{\"savingsPlan\":[");
+			for (var o = 0; o < SP_OFFERS.length; o++) {
+				final var sku = toSpSku(kind, region, o);
+				writer.write(String.format(Locale.ENGLISH, "%s{\"sku\":\"%s\",\"description\":\"%s year %s Upfront %s"
+						+ " Savings Plan\",\"leaseContractLength\":{\"duration\":%s,\"unit\":\"year\"},\"rates\":[",
+						o == 0 ? "" : ",", sku, SP_OFFERS[o][0], SP_OFFERS[o][1], kind, SP_OFFERS[o][0]));
+				// The longer and the more up-front, the higher the discount
+				final var discount = 0.9 - 0.1 * o;
+				for (var i = 0; i < onDemands.size(); i++) {
+					final var od = onDemands.get(i);
+					writer.write(String.format(Locale.ENGLISH, "%s{\"discountedSku\":\"%s\",\"discountedServiceCode\":"
+							+ "\"%s\",\"discountedUsageType\":\"%s\",\"rateCode\":\"%s.%s\",\"discountedRate\":"
+							+ "{\"price\":\"%.8f\",\"currency\":\"USD\"}}", i == 0 ? "" : ",", od.sku(), od.service(),
+							od.usageType(), sku, od.sku(), od.price() * discount));
+				}
+				writer.write("]}");
+			}
+			writer.write("]}}");
+		}
+	}
+
+	private String toSpSku(final String kind, final int region, final int offer) {
+		return String.format(Locale.ENGLISH, "%sSP%02d%010d", kind.substring(0, 2).toUpperCase(Locale.ENGLISH),
+				region, offer);
+	}
+
+	/**
+	 * Write the EC2 and the Fargate spot price files.
+	 */
+	private void writeSpot(final Path root) throws IOException {
+		final var json = new StringBuilder("callback({\"vers\":0.01,\"config\":{\"rate\":\"perhr\",")
+				.append("\"valueColumns\":[\"linux\",\"mswin\"],\"currencies\":[\"USD\"],\"regions\":[");
+		for (var r = 0; r < regions; r++) {
+			json.append(r == 0 ? "" : ",").append("{\"region\":\"").append(toRegion(r))
+					.append("\",\"instanceTypes\":[{\"type\":\"generalCurrentGen\",\"sizes\":[");
+			var first = true;
+			for (final var type : ec2Types.keySet()) {
+				json.append(first ? "" : ",").append("{\"size\":\"").append(type).append("\",\"valueColumns\":[")
+						.append(String.format(Locale.ENGLISH, "{\"name\":\"linux\",\"prices\":{\"USD\":\"%.4f\"}},",
+								0.01 + 0.001 * (type.length() + r)))
+						.append("{\"name\":\"mswin\",\"prices\":{\"USD\":\"N/A*\"}}]}");
+				first = false;
+			}
+			json.append("]}]}");
+		}
+		write(root.resolve("spot.js"), json.append("]}});").toString());
+
+		final var fargate = new StringBuilder("{\"prices\":[");
+		for (var r = 0; r < regions; r++) {
+			fargate.append(r == 0 ? "" : ",").append(String.format(Locale.ENGLISH,
+					"{\"unit\":\"vCPU-Hours\",\"price\":{\"USD\":\"%.8f\"},\"attributes\":{\"aws:region\":\"%s\"}},"
+							+ "{\"unit\":\"GB-Hours\",\"price\":{\"USD\":\"%.8f\"},\"attributes\":{\"aws:region\":"
+							+ "\"%s\"}}",
+					0.0138 + 0.0001 * r, toRegion(r), 0.0015 + 0.00001 * r, toRegion(r)));
+		}
+		write(root.resolve("spot-fargate.json"), fargate.append("]}").toString());
+	}
+
+	/**
+	 * Write the CO2 data of the generated instance types and regions.
+	 */
+	private void writeCo2(final Path root) throws IOException {
+		final var co2 = new HashMap<String, String>();
+		String header = null;
+		try (var reader = newReader(FIXTURES + "carbon-instance.csv")) {
+			for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (header == null) {
+					header = line;
+				} else {
+					co2.put(line.substring(0, line.indexOf(';')), line.substring(line.indexOf(';')));
+				}
+			}
+		}
+		try (var writer = Files.newBufferedWriter(root.resolve("carbon-instance.csv"), StandardCharsets.UTF_8)) {
+			writer.write(header);
+			for (final var type : ec2Types.entrySet()) {
+				final var data = co2.get(type.getValue());
+				if (data != null) {
+					writer.write("\n" + type.getKey() + data);
+				}
+			}
+		}
+		final var regionCo2 = new StringBuilder("Region;CO2e (metric gram/kWh);PUE");
+		for (var r = 0; r < regions; r++) {
+			regionCo2.append('\n').append(toRegion(r)).append(';').append(50 + 10 * r).append(";1,2");
+		}
+		write(root.resolve("carbon-region.csv"), regionCo2.toString());
+	}
+
+	private void write(final Path file, final String content) throws IOException {
+		Files.createDirectories(file.getParent());
+		Files.writeString(file, content, StandardCharsets.UTF_8);
+	}
+
+	private static BufferedReader newReader(final String resource) throws IOException {
+		return new BufferedReader(
+				new InputStreamReader(new ClassPathResource(resource).getInputStream(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Split a CSV line.
+	 */
+	private static String[] split(final String line) {
+		final var fields = new ArrayList<String>();
+		final var field = new StringBuilder();
+		var quoted = false;
+		for (var i = 0; i < line.length(); i++) {
+			final var c = line.charAt(i);
+			if (c == '"') {
+				if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append(c);
+					i++;
+				} else {
+					quoted = !quoted;
+				}
+			} else if (c == ',' && !quoted) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields.toArray(String[]::new);
+	}
+
+	/**
+	 * A fixture price file: the lines before the header, the header and the data rows.
+	 */
+	private class Template {
+
+		private final String head;
+
+		private final List<String[]> rows = new ArrayList<>();
+
+		/**
+		 * The index of each fixture SKU, in the order of their first row.
+		 */
+		private final Map<String, Integer> skus = new HashMap<>();
+
+		private final boolean quoted;
+
+		private final int sku;
+		private final int rateCode;
+		private final int termType;
+		private final int price;
+		private final int location;
+		private final int type;
+		private final int usageType;
+		private final int serviceCode;
+
+		private Template(final String resource) throws IOException {
+			final var lines = new StringBuilder();
+			String[] header = null;
+			var quotes = false;
+			try (var reader = newReader(FIXTURES + OFFERS + resource)) {
+				for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+					if (header == null) {
+						lines.append(line).append('\n');
+						if (line.startsWith("SKU,") || line.startsWith("\"SKU\",")) {
+							header = split(line);
+							quotes = line.startsWith("\"");
+						}
+					} else {
+						final var row = split(line);
+						if (row.length >= header.length && !"SKU".equals(row[0])) {
+							rows.add(row);
+						}
+					}
+				}
+			}
+			this.head = lines.toString();
+			this.quoted = quotes;
+			final var columns = List.of(header);
+			this.sku = columns.indexOf("SKU");
+			this.rateCode = columns.indexOf("RateCode");
+			this.termType = columns.indexOf("TermType");
+			this.price = columns.indexOf("PricePerUnit");
+			this.location = columns.indexOf("Location");
+			this.type = columns.indexOf("Instance Type");
+			this.usageType = Math.max(columns.indexOf("usageType"), columns.indexOf("Usage Type"));
+			this.serviceCode = columns.indexOf("serviceCode");
+			rows.forEach(r -> skus.putIfAbsent(r[sku], skus.size()));
+		}
+
+		private Writer open(final Path file) throws IOException {
+			Files.createDirectories(file.getParent());
+			final var writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+			writer.write(head);
+			return writer;
+		}
+
+		/**
+		 * Write a replica of the fixture rows.
+		 */
+		private void writeReplica(final Writer writer, final char prefix, final int region, final int replica,
+				final String regionName, final List<OnDemand> onDemands) throws IOException {
+			final var factor = 1 + 0.01 * region + 0.001 * (replica % 100);
+			final var generation = replica % GENERATIONS;
+			for (final var fixture : rows) {
+				final var row = fixture.clone();
+				row[sku] = String.format(Locale.ENGLISH, "%c%02d%07d%06d", prefix, region, replica,
+						skus.get(fixture[sku]));
+				if (rateCode >= 0 && row[rateCode].indexOf('.') > 0) {
+					row[rateCode] = row[sku] + row[rateCode].substring(row[rateCode].indexOf('.'));
+				}
+				if (location >= 0) {
+					row[location] = regionName;
+				}
+				if (type >= 0) {
+					final var newType = shift(row[type], generation);
+					if (usageType >= 0) {
+						row[usageType] = row[usageType].replace(row[type], newType);
+					}
+					if (prefix == 'E' && newType.indexOf('.') > 0) {
+						ec2Types.putIfAbsent(newType, row[type]);
+					}
+					row[type] = newType;
+				}
+				if (price >= 0 && !row[price].isEmpty()) {
+					try {
+						row[price] = String.format(Locale.ENGLISH, "%.10f", Double.parseDouble(row[price]) * factor);
+					} catch (final NumberFormatException e) {
+						// Invalid fixture price, kept as is
+					}
+				}
+				if (onDemands != null && "OnDemand".equals(row[termType]) && usageType >= 0) {
+					try {
+						onDemands.add(new OnDemand(row[sku], row[serviceCode], row[usageType],
+								Double.parseDouble(row[price])));
+					} catch (final NumberFormatException e) {
+						// Invalid fixture price, not discounted
+					}
+				}
+				writeRow(writer, row);
+			}
+		}
+
+		private void writeRow(final Writer writer, final String[] row) throws IOException {
+			for (var i = 0; i < row.length; i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				if (quoted || row[i].indexOf(',') >= 0 || row[i].indexOf('"') >= 0) {
+					writer.write('"');
+					writer.write(row[i].replace("\"", "\"\""));
+					writer.write('"');
+				} else {
+					writer.write(row[i]);
+				}
+			}
+			writer.write('\n');
+		}
+	}
+
+	/**
+	 * Shift the generation of an instance type, such as "c1.medium" to "c4.medium" for a shift of 3.
+	 */
+	private static String shift(final String type, final int generation) {
+		final var matcher = TYPE.matcher(type);
+		if (generation == 0 || !matcher.matches()) {
+			return type;
+		}
+		return (matcher.group(1) == null ? "" : matcher.group(1)) + matcher.group(2)
+				+ (Integer.parseInt(matcher.group(3)) + generation) + matcher.group(4) + matcher.group(5);
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog.fixture;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import org.ligoj.app.plugin.aws.catalog.AwsPriceImportBase;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.AwsPriceImportEc2;
+import org.ligoj.app.plugin.aws.catalog.vm.fargate.AwsPriceImportFargate;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local stand-in of the AWS price list API, serving the files of a directory, such as a catalog generated by
+ * {@link AwsCatalogGenerator}. The price file URLs ending with <code>.json</code> are served from the
+ * <code>.csv</code> file when only this one exists, as AWS does. The files are streamed with their length and an
+ * entity tag, and the conditional requests are supported, so the price mirror can be load-tested too.<br>
+ * Standalone usage, generating then serving a catalog:
+ * <code>AwsPricingServer &lt;directory&gt; &lt;port&gt; [&lt;regions&gt; &lt;rows&gt;]</code>.
+ */
+@Slf4j
+public class AwsPricingServer implements AutoCloseable {
+
+	private final Path root;
+
+	private final HttpServer server;
+
+	/**
+	 * Start a server on the given directory.
+	 *
+	 * @param root The served directory.
+	 * @param port The listening port. When <code>0</code>, an ephemeral port is used.
+	 * @throws IOException When the server cannot be started.
+	 */
+	public AwsPricingServer(final Path root, final int port) throws IOException {
+		this.root = root.toAbsolutePath().normalize();
+		this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	/**
+	 * Return the base URL of this server.
+	 *
+	 * @return The base URL, without trailing slash.
+	 */
+	public String getUrl() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Return the configuration pointing the import to this server.
+	 *
+	 * @return The configuration values. Key is the configuration name.
+	 */
+	public Map<String, String> getConfiguration() {
+		final var configuration = new LinkedHashMap<String, String>();
+		configuration.put(AwsPriceImportBase.CONF_URL_AWS_PRICES, getUrl());
+		configuration.put(AwsPriceImportEc2.CONF_URL_EC2_PRICES_SPOT, getUrl() + "/spot.js");
+		configuration.put(AwsPriceImportFargate.CONF_URL_FARGATE_PRICES_SPOT, getUrl() + "/spot-fargate.json");
+		configuration.put(AwsPriceImportBase.CONF_URL_CO2_INSTANCE, getUrl() + "/carbon-instance.csv");
+		configuration.put(AwsPriceImportBase.CONF_URL_CO2_REGION, getUrl() + "/carbon-region.csv");
+		return configuration;
+	}
+
+	private void handle(final HttpExchange exchange) throws IOException {
+		try (exchange) {
+			final var file = resolve(exchange.getRequestURI().getPath());
+			if (file == null || !"GET".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_FOUND, -1);
+				return;
+			}
+			final var length = Files.size(file);
+			final var etag = "\"" + Long.toHexString(length) + "-"
+					+ Long.toHexString(Files.getLastModifiedTime(file).toMillis()) + "\"";
+			exchange.getResponseHeaders().set("ETag", etag);
+			if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, length == 0 ? -1 : length);
+			Files.copy(file, exchange.getResponseBody());
+		}
+	}
+
+	/**
+	 * Return the served file of a path, <code>null</code> when not found or outside of the served directory.
+	 */
+	private Path resolve(final String path) {
+		final var file = root.resolve(path.replaceFirst("^/+", "")).normalize();
+		if (!file.startsWith(root)) {
+			return null;
+		}
+		if (Files.isRegularFile(file)) {
+			return file;
+		}
+		final var csv = file.resolveSibling(file.getFileName().toString().replaceAll("\\.json$", ".csv"));
+		return Files.isRegularFile(csv) ? csv : null;
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+
+	/**
+	 * Serve a directory until the process is stopped, after an optional catalog generation.
+	 *
+	 * @param args The served directory, the port, then the optional amounts of regions and rows to generate.
+	 * @throws IOException When the catalog cannot be generated or the server cannot be started.
+	 */
+	@SuppressWarnings("resource")
+	public static void main(final String[] args) throws IOException {
+		final var root = Path.of(args[0]);
+		if (args.length > 3) {
+			new AwsCatalogGenerator(Integer.parseInt(args[2]), Integer.parseInt(args[3])).generate(root);
+		}
+		final var server = new AwsPricingServer(root, Integer.parseInt(args[1]));
+		log.info("AWS price list API served on {}", server.getUrl());
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed under MIT (https://github.com/ligoj/ligoj/blob/master/LICENSE)
+ */
+package org.ligoj.app.plugin.aws.catalog.vm;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.ligoj.app.plugin.aws.catalog.AwsPriceMirror;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanProduct;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanRate;
+import org.ligoj.app.plugin.aws.catalog.vm.ec2.SavingsPlanPrice.SavingsPlanTerm;
+
+import tools.jackson.databind.ObjectMapper;
+
+/**
+ * Test class of {@link SavingsPlanReader}
+ */
+class SavingsPlanReaderTest {
+
+	private static final String URL = "https://localhost/savingsPlan/index.json";
+
+	private static final String PRODUCTS = "\"products\":["
+			+ "{\"sku\":\"SP1\",\"productFamily\":\"ComputeSavingsPlans\"},"
+			+ "{\"sku\":\"SP2\",\"productFamily\":\"MachineLearningSavingsPlans\",\"attributes\":{\"a\":\"b\"}},"
+			+ "{\"sku\":\"SP3\",\"productFamily\":\"ComputeSavingsPlans\"}]";
+
+	private static final String TERMS = "\"terms\":{\"onDemand\":{\"x\":[1]},\"savingsPlan\":["
+			+ "{\"sku\":\"SP1\",\"description\":\"3 year All Upfront\",\"effectiveDate\":\"2025-01-01\","
+			+ "\"leaseContractLength\":{\"duration\":3,\"unit\":\"year\"},\"rates\":["
+			+ "{\"discountedSku\":\"A\",\"discountedServiceCode\":\"AmazonEC2\",\"rateCode\":\"SP1.A\","
+			+ "\"discountedRate\":{\"price\":\"0.1\",\"currency\":\"USD\"}},"
+			+ "{\"discountedSku\":\"B\",\"discountedServiceCode\":\"AWSLambda\",\"rateCode\":\"SP1.B\","
+			+ "\"discountedRate\":{\"price\":\"0.2\"}},"
+			+ "{\"discountedSku\":\"C\",\"discountedServiceCode\":\"AmazonRDS\",\"rateCode\":\"SP1.C\"}]},"
+			+ "{\"rates\":[{\"discountedSku\":\"D\",\"discountedServiceCode\":\"AmazonEC2\",\"rateCode\":\"SP2.D\"}],"
+			+ "\"sku\":\"SP2\",\"leaseContractLength\":{\"duration\":1}},"
+			+ "{\"rates\":[{\"discountedSku\":\"E\",\"discountedServiceCode\":\"AWSLambda\",\"rateCode\":\"SP3.E\"}],"
+			+ "\"sku\":\"SP3\",\"leaseContractLength\":{\"duration\":1}}]}";
+
+	/**
+	 * Installer accepting the compute products and the rates of a service.
+	 */
+	private static class Installer implements SavingsPlanInstaller {
+
+		private final String service;
+
+		private final List<SavingsPlanTerm> terms = new ArrayList<>();
+
+		private Installer(final String service) {
+			this.service = service;
+		}
+
+		@Override
+		public String getEndpoint() {
+			return URL;
+		}
+
+		@Override
+		public boolean accept(final SavingsPlanProduct product) {
+			return "ComputeSavingsPlans".equals(product.getProductFamily());
+		}
+
+		@Override
+		public boolean accept(final SavingsPlanRate rate) {
+			return service.equals(rate.getDiscountedServiceCode());
+		}
+
+		@Override
+		public void install(final SavingsPlanTerm term) {
+			terms.add(term);
+		}
+
+		@Override
+		public void complete() {
+			// Nothing to do
+		}
+
+		@Override
+		public void fail(final Exception e) {
+			// Nothing to do
+		}
+	}
+
+	private AwsPriceMirror newMirror(final String json) throws IOException {
+		final var mirror = mock(AwsPriceMirror.class);
+		when(mirror.open(URL)).thenAnswer(i -> new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+		return mirror;
+	}
+
+	private List<String> toRateCodes(final SavingsPlanTerm term) {
+		return term.getRates().stream().map(SavingsPlanRate::getRateCode).toList();
+	}
+
+	private void assertTerms(final Installer ec2, final Installer lambda) {
+		// Only the terms of the accepted products, with the accepted rates
+		Assertions.assertEquals(2, ec2.terms.size());
+		final var term = ec2.terms.getFirst();
+		Assertions.assertEquals("SP1", term.getSku());
+		Assertions.assertEquals("3 year All Upfront", term.getDescription());
+		Assertions.assertEquals(3, term.getLeaseContractLength().getDuration());
+		Assertions.assertEquals(List.of("SP1.A"), toRateCodes(term));
+		Assertions.assertEquals(0.1d, term.getRates().iterator().next().getDiscountedRate().getPrice());
+		Assertions.assertEquals("SP3", ec2.terms.get(1).getSku());
+		Assertions.assertEquals(List.of(), toRateCodes(ec2.terms.get(1)));
+
+		// Each installer receives its own term, the rates listed before the SKU are filtered too
+		Assertions.assertEquals(2, lambda.terms.size());
+		Assertions.assertNotSame(term, lambda.terms.getFirst());
+		Assertions.assertEquals(List.of("SP1.B"), toRateCodes(lambda.terms.getFirst()));
+		Assertions.assertEquals("SP3", lambda.terms.get(1).getSku());
+		Assertions.assertEquals(List.of("SP3.E"), toRateCodes(lambda.terms.get(1)));
+	}
+
+	@Test
+	void read() throws IOException {
+		final var ec2 = new Installer("AmazonEC2");
+		final var lambda = new Installer("AWSLambda");
+		final var mirror = newMirror("{\"formatVersion\":\"v1.0\"," + PRODUCTS + "," + TERMS + "}");
+		new SavingsPlanReader(new ObjectMapper(), List.of(ec2, lambda)).read(URL, mirror);
+		assertTerms(ec2, lambda);
+		verify(mirror, times(1)).open(URL);
+	}
+
+	@Test
+	void readTermsFirst() throws IOException {
+		final var ec2 = new Installer("AmazonEC2");
+		final var lambda = new Installer("AWSLambda");
+		final var mirror = newMirror("{" + TERMS + "," + PRODUCTS + ",\"version\":\"1\"}");
+		new SavingsPlanReader(new ObjectMapper(), List.of(ec2, lambda)).read(URL, mirror);
+
+		// The second pass only reads the terms
+		assertTerms(ec2, lambda);
+		verify(mirror, times(2)).open(URL);
+	}
+
+	@Test
+	void readNoTerms() throws IOException {
+		// Without terms, the file is not read again
+		final var ec2 = new Installer("AmazonEC2");
+		final var mirror = newMirror("{" + PRODUCTS + ",\"version\":\"1\"}");
+		new SavingsPlanReader(new ObjectMapper(), List.of(ec2)).read(URL, mirror);
+		Assertions.assertEquals(0, ec2.terms.size());
+		verify(mirror, times(1)).open(URL);
+	}
+
+	@Test
+	void readTermsNoProducts() throws IOException {
+		// Without products, the terms listed first are not read again
+		final var ec2 = new Installer("AmazonEC2");
+		final var mirror = newMirror("{" + TERMS + "}");
+		new SavingsPlanReader(new ObjectMapper(), List.of(ec2)).read(URL, mirror);
+		Assertions.assertEquals(0, ec2.terms.size());
+		verify(mirror, times(1)).open(URL);
+	}
+
+	@Test
+	void readNoRate() throws IOException {
+		// The accepted product is installed even without accepted rate
+		final var rds = new Installer("AmazonRDS");
+		final var mirror = newMirror("{" + PRODUCTS + "," + TERMS + "}");
+		new SavingsPlanReader(new ObjectMapper(), List.of(rds)).read(URL, mirror);
+		Assertions.assertEquals(2, rds.terms.size());
+		Assertions.assertEquals(List.of("SP1.C"), toRateCodes(rds.terms.getFirst()));
+		Assertions.assertEquals(List.of(), toRateCodes(rds.terms.get(1)));
+	}
+
+	@Test
+	void readNotObject() throws IOException {
+		final var reader = new SavingsPlanReader(new ObjectMapper(), List.of(new Installer("AmazonEC2")));
+		final var mirror = newMirror("[]");
+		Assertions.assertThrows(IllegalArgumentException.class, () -> reader.read(URL, mirror));
+	}
+}